@@ -0,0 +1,35 @@
+package com.rocket.chat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Loads benchmark fixtures from {@code src/jmh/resources}. DDP frames live under
+ * {@code frames/} and are captured from a Rocket.Chat 6.x server.
+ */
+public final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    public static String frame(String name) {
+        return text("frames/" + name + ".json").strip();
+    }
+
+    public static byte[] bytes(String path) {
+        try (InputStream in = Fixtures.class.getClassLoader().getResourceAsStream(path)) {
+            if (in == null) {
+                throw new IllegalArgumentException("Missing benchmark fixture: " + path);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static String text(String path) {
+        return new String(bytes(path), StandardCharsets.UTF_8);
+    }
+}
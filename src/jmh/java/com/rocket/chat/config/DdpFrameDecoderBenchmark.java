@@ -0,0 +1,61 @@
+package com.rocket.chat.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rocket.chat.Fixtures;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the previous readTree-based frame handling with the streaming
+ * {@link DdpFrameDecoder}. Run with {@code -prof gc} and compare
+ * {@code gc.alloc.rate.norm} (bytes allocated per frame).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DdpFrameDecoderBenchmark {
+
+    @Param({"changed-room-message", "ping", "changed-rooms-changed", "added-user"})
+    public String fixture;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final DdpFrameDecoder decoder = new DdpFrameDecoder(objectMapper);
+    private String frame;
+
+    @Setup
+    public void setUp() {
+        frame = Fixtures.frame(fixture);
+    }
+
+    /** Mirrors the previous onMessage path: readTree, path lookups and the eager toPrettyString in the default branch. */
+    @Benchmark
+    public void tree(Blackhole bh) throws Exception {
+        JsonNode json = objectMapper.readTree(frame);
+        String msgType = json.path("msg").asText();
+        switch (msgType) {
+            case "changed" -> {
+                String collection = json.path("collection").asText();
+                bh.consume(collection);
+                if ("stream-room-messages".equals(collection)) {
+                    JsonNode messageData = json.path("fields").path("args").get(0);
+                    bh.consume(messageData.path("msg").asText(null));
+                    bh.consume(messageData.path("rid").asText(null));
+                    bh.consume(messageData.path("u").path("username").asText(null));
+                }
+            }
+            case "ping" -> bh.consume(msgType);
+            default -> bh.consume(json.toPrettyString());
+        }
+    }
+
+    @Benchmark
+    public DdpFrame streaming() throws Exception {
+        return decoder.decode(frame);
+    }
+}
@@ -0,0 +1,96 @@
+package com.rocket.chat.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outgoing payloads written by {@link DdpFrameEncoder} against the
+ * {@code String.format} text blocks they replaced (kept here as the baseline).
+ * The formatted variants do not escape anything; the message text contains a
+ * quote and a newline, which the baseline turns into invalid JSON.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DdpFrameEncoderBenchmark {
+
+    private static final String USERNAME = "admin";
+    private static final String DIGEST = "5e884898da28047151d0e56f8dc6292773603d0d6aabbdd62a11ef721d1542d8";
+    private static final String SUB_ID = "0b2f8c4e-4f1e-4d1a-9d3e-1f6b2a7c9e10";
+    private static final String ROOM_ID = "GENERAL";
+    private static final String TEXT = "Thank you for your message! An admin will respond \"shortly\".\nRegards";
+
+    private final DdpFrameEncoder encoder = new DdpFrameEncoder(new ObjectMapper());
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Benchmark
+    public String loginFormatted() {
+        return String.format("""
+            {
+              "msg": "method",
+              "method": "login",
+              "id": "login",
+              "params": [
+                {
+                  "user": { "username": "%s" },
+                  "password": { "digest": "%s", "algorithm": "sha-256" }
+                }
+              ]
+            }
+            """, USERNAME, DIGEST);
+    }
+
+    @Benchmark
+    public String loginEncoded() {
+        return encoder.login(USERNAME, DIGEST);
+    }
+
+    @Benchmark
+    public String subscribeFormatted() {
+        return String.format("""
+            {
+              "msg": "sub",
+              "id": "%s",
+              "name": "stream-room-messages",
+              "params": [ "%s", false ]
+            }
+            """, SUB_ID, ROOM_ID);
+    }
+
+    @Benchmark
+    public String subscribeEncoded() {
+        return encoder.subscribe(SUB_ID, "stream-room-messages", ROOM_ID);
+    }
+
+    @Benchmark
+    public String postMessageFormatted() {
+        return String.format("{\"roomId\": \"%s\", \"text\": \"%s\"}", ROOM_ID, TEXT);
+    }
+
+    @Benchmark
+    public String postMessageEncoded() {
+        return encoder.fields("roomId", ROOM_ID, "text", TEXT);
+    }
+
+    /** The previous method-frame path: build an ObjectNode tree, then serialize it. */
+    @Benchmark
+    public String sendMessageMethodTree() throws Exception {
+        var payload = objectMapper.createObjectNode();
+        payload.put("msg", "method");
+        payload.put("method", "sendMessage");
+        payload.put("id", "42");
+        payload.set("params", objectMapper.valueToTree(new Object[] {Map.of("_id", "aB3dE5fG7hJ9kL1mN", "rid", ROOM_ID, "msg", TEXT)}));
+        return objectMapper.writeValueAsString(payload);
+    }
+
+    @Benchmark
+    public String sendMessageMethodEncoded() {
+        return encoder.method("42", "sendMessage", Map.of("_id", "aB3dE5fG7hJ9kL1mN", "rid", ROOM_ID, "msg", TEXT));
+    }
+}
@@ -0,0 +1,100 @@
+package com.rocket.chat.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rocket.chat.Fixtures;
+import com.rocket.chat.dto.RoomMessage;
+import com.rocket.chat.service.InboundMessagePipeline;
+import com.rocket.chat.service.LiveMessageFanout;
+import com.rocket.chat.service.MessageDedupFilter;
+import com.rocket.chat.service.MissedMessageBackfill;
+import com.rocket.chat.service.ReadResponseCache;
+import com.rocket.chat.service.RoomIdCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inbound frame handling on the WebSocket client: full {@code onMessage} dispatch
+ * per DDP message type and {@code handleChangedMessage} on an already decoded
+ * frame (outgoing frame encoding is covered by {@link DdpFrameEncoderBenchmark}).
+ * Outgoing frames and pipeline submissions are swallowed, and the backfill tracker
+ * accepts every message so the repeated frame is not dropped as a duplicate, so
+ * only client-side work is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RocketChatWebSocketClientBenchmark {
+
+    private RocketChatWebSocketClient client;
+    private DdpFrame changedFrame;
+    private String changedRaw;
+
+    @Setup
+    public void setUp() throws Exception {
+        InboundMessagePipeline pipeline = new InboundMessagePipeline(null, null) {
+            @Override
+            public void submit(RoomMessage message) {
+            }
+        };
+        MissedMessageBackfill backfill = new MissedMessageBackfill(null, pipeline, null, null, null, 1) {
+            @Override
+            public MessageDedupFilter.Verdict classify(RoomMessage message) {
+                return MessageDedupFilter.Verdict.NEW;
+            }
+        };
+        RocketChatMetrics metrics = new RocketChatMetrics(new SimpleMeterRegistry());
+        RoomIdCache roomIdCache = new RoomIdCache(Duration.ofMinutes(10), Duration.ofSeconds(30), 10_000);
+        RocketChatWebSocketClient.ConnectionListener listener = new RocketChatWebSocketClient.ConnectionListener() {
+            @Override
+            public void onReady(RocketChatWebSocketClient c) {
+            }
+
+            @Override
+            public void onLost(RocketChatWebSocketClient c) {
+            }
+        };
+        // Never started and without subscribers, so publishing is a no-op
+        LiveMessageFanout fanout = new LiveMessageFanout(new ObjectMapper(), 0, 1, LiveMessageFanout.OverflowPolicy.DROP_OLDEST,
+                Duration.ofSeconds(30), Duration.ofSeconds(15), 1, 1);
+        client = new RocketChatWebSocketClient("ws://localhost:3000/websocket", 0, pipeline, backfill, roomIdCache,
+                new ReadResponseCache(null, new ObjectMapper(), null), fanout, metrics, new ConnectionSupervisor(metrics, Duration.ofSeconds(15), 2), "admin", "admin_password", 50, Duration.ofSeconds(10), 1000, listener) {
+            @Override
+            public void send(String text) {
+            }
+        };
+        changedRaw = Fixtures.frame("changed-room-message");
+        changedFrame = new DdpFrameDecoder(new ObjectMapper()).decode(changedRaw);
+    }
+
+    /** One raw frame per DDP message type the server sends us. */
+    @State(Scope.Benchmark)
+    public static class Frame {
+
+        @Param({"changed-room-message", "changed-rooms-changed", "changed-notify-message",
+                "result-login", "connected", "ping", "added-user", "ready", "updated"})
+        public String fixture;
+
+        String text;
+
+        @Setup
+        public void setUp() {
+            text = Fixtures.frame(fixture);
+        }
+    }
+
+    @Benchmark
+    public void onMessage(Frame frame) {
+        client.onMessage(frame.text);
+    }
+
+    @Benchmark
+    public void handleChangedMessage() {
+        client.handleChangedMessage(changedFrame, changedRaw);
+    }
+}
@@ -0,0 +1,181 @@
+package com.rocket.chat.controller;
+
+import com.rocket.chat.config.AdaptiveTokenBucket;
+import com.rocket.chat.config.ConcurrencyLimitInterceptor;
+import com.rocket.chat.config.RestCallExecutor;
+import com.rocket.chat.config.RocketChatConfig;
+import com.rocket.chat.config.RocketChatMetrics;
+import com.rocket.chat.dto.UserSession;
+import com.rocket.chat.exception.GlobalExceptionHandler;
+import com.rocket.chat.service.AdminService;
+import com.rocket.chat.service.BulkUserProvisioner;
+import com.rocket.chat.service.InactivityTracker;
+import com.rocket.chat.service.LiveMessageFanout;
+import com.rocket.chat.service.MessageBroadcaster;
+import com.rocket.chat.service.MessageJournal;
+import com.rocket.chat.service.MessageSearchIndex;
+import com.rocket.chat.service.OutboundMessageScheduler;
+import com.rocket.chat.service.ReadResponseCache;
+import com.rocket.chat.service.RoomIdCache;
+import com.rocket.chat.service.UserService;
+import com.rocket.chat.service.UserSessionCache;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.startup.Tomcat;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Import;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the async {@code /chat} endpoints: the real controller and services in
+ * an embedded Tomcat with {@code servletThreads} workers, in front of a stub
+ * Rocket.Chat (a second Tomcat with an async servlet, so the stub itself never
+ * runs out of threads) that answers {@code im.list} after {@code upstreamLatencyMs}.
+ * Each invocation keeps {@value #CONCURRENCY} requests in flight at once and waits
+ * for all of them; the score is requests per second. A handler that held its worker
+ * for the whole upstream call could not exceed servletThreads / latency, e.g.
+ * 400 req/s with 20 workers at 50 ms; the async handlers should not depend on it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class ChatControllerLoadBenchmark {
+
+    private static final int CONCURRENCY = 1000;
+    private static final byte[] IM_LIST = "{\"ims\":[],\"count\":0,\"offset\":0,\"total\":0,\"success\":true}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @Import({ChatController.class, GlobalExceptionHandler.class, AdminService.class, UserService.class,
+            InactivityTracker.class, RoomIdCache.class, MessageJournal.class, MessageSearchIndex.class,
+            RocketChatMetrics.class, OutboundMessageScheduler.class, AdaptiveTokenBucket.class,
+            UserSessionCache.class, RestCallExecutor.class, ConcurrencyLimitInterceptor.class, BulkUserProvisioner.class, MessageBroadcaster.class,
+            ReadResponseCache.class, LiveMessageFanout.class, RocketChatConfig.class})
+    static class LoadTestApplication {
+    }
+
+    @Param({"50"})
+    private long upstreamLatencyMs;
+
+    @Param({"200", "20"})
+    private int servletThreads;
+
+    private Tomcat stub;
+    private ScheduledExecutorService stubTimer;
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private HttpRequest request;
+
+    @Setup
+    public void setUp() throws IOException, LifecycleException {
+        stubTimer = Executors.newSingleThreadScheduledExecutor();
+        stub = new Tomcat();
+        stub.setBaseDir(Files.createTempDirectory("stub-rocketchat").toString());
+        stub.setPort(0);
+        stub.getConnector().setProperty("maxConnections", "-1");
+        stub.getConnector().setProperty("acceptCount", Integer.toString(2 * CONCURRENCY));
+        Context root = stub.addContext("", null);
+        Tomcat.addServlet(root, "im.list", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) {
+                AsyncContext async = request.startAsync();
+                stubTimer.schedule(() -> {
+                    try {
+                        response.setContentType("application/json");
+                        response.setContentLength(IM_LIST.length);
+                        response.getOutputStream().write(IM_LIST);
+                    } catch (IOException e) {
+                        response.setStatus(500);
+                    }
+                    async.complete();
+                }, upstreamLatencyMs, TimeUnit.MILLISECONDS);
+            }
+        }).setAsyncSupported(true);
+        root.addServletMappingDecoded("/api/v1/im.list", "im.list");
+        stub.start();
+        int stubPort = stub.getConnector().getLocalPort();
+
+        context = new SpringApplicationBuilder(LoadTestApplication.class)
+                .web(WebApplicationType.SERVLET)
+                // As command-line arguments, so they win over the application.properties on the classpath
+                .run(
+                        "--server.port=0",
+                        "--server.tomcat.threads.max=" + servletThreads,
+                        // A backlog below the burst drops SYNs, and each retransmit costs a second
+                        "--server.tomcat.accept-count=" + 2 * CONCURRENCY,
+                        "--spring.main.banner-mode=off",
+                        "--logging.level.root=WARN",
+                        "--rocketchat.base-url=http://127.0.0.1:" + stubPort + "/api/v1",
+                        "--rocketchat.admin-username=admin",
+                        "--rocketchat.admin-password=admin",
+                        "--rocketchat.journal.enabled=false",
+                        // Every call should reach the stub, not the response cache
+                        "--rocketchat.read-cache.enabled=false",
+                        "--rocketchat.http.max-connections=" + CONCURRENCY,
+                        "--rocketchat.http.max-connections-per-route=" + CONCURRENCY,
+                        "--rocketchat.async.max-in-flight=" + CONCURRENCY,
+                        // The stub's latency is fixed, so let the read limit start where it would grow to
+                        "--rocketchat.rest-limit.read.initial=" + CONCURRENCY,
+                        "--rocketchat.rest-limit.read.max=" + CONCURRENCY,
+                        "--rocketchat.rest-limit.read.latency-threshold=5s");
+        context.getBean(UserService.class).setServiceSession(new UserSession("aobEdbYhXfu5hkeqG", "9HqLlyZOugoStsXCUfD_0YdwnNnunAJF8V47U3QHXSq"));
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/chat/get-direct-messages")).GET().build();
+    }
+
+    @TearDown
+    public void tearDown() throws LifecycleException {
+        client.close();
+        context.close();
+        stub.stop();
+        stub.destroy();
+        stubTimer.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CONCURRENCY)
+    public int directMessages() {
+        @SuppressWarnings("unchecked")
+        CompletableFuture<HttpResponse<Void>>[] responses = new CompletableFuture[CONCURRENCY];
+        for (int i = 0; i < CONCURRENCY; i++) {
+            responses[i] = client.sendAsync(request, HttpResponse.BodyHandlers.discarding());
+        }
+        int ok = 0;
+        for (CompletableFuture<HttpResponse<Void>> response : responses) {
+            if (response.join().statusCode() == 200) {
+                ok++;
+            }
+        }
+        if (ok != CONCURRENCY) {
+            throw new IllegalStateException((CONCURRENCY - ok) + " of " + CONCURRENCY + " requests failed");
+        }
+        return ok;
+    }
+}
@@ -0,0 +1,126 @@
+package com.rocket.chat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rocket.chat.dto.RoomMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time for one room message to reach every matching subscriber of
+ * {@link LiveMessageFanout} with 10k connected: all of them following every room,
+ * or each following one of {@value #ROOMS} rooms. With {@code stalledPercent} set,
+ * that share of subscribers never finishes a write, as a client that stopped
+ * reading would, to show it costs the others nothing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LiveMessageFanoutBenchmark {
+
+    private static final int ROOMS = 100;
+
+    @Param({"10000"})
+    public int subscribers;
+
+    @Param({"all", "room"})
+    public String filter;
+
+    @Param({"0", "1"})
+    public int stalledPercent;
+
+    private LiveMessageFanout fanout;
+    private final AtomicLong delivered = new AtomicLong();
+    private final CountDownLatch unstall = new CountDownLatch(1);
+    private long[] expectedPerRoom;
+    private long expected;
+    private int nextRoom;
+    private long nextId;
+
+    @Setup
+    public void setUp() {
+        fanout = new LiveMessageFanout(new ObjectMapper(), subscribers, 256, LiveMessageFanout.OverflowPolicy.DROP_OLDEST,
+                Duration.ofMinutes(10), Duration.ofMinutes(10), 4, 4096);
+        fanout.start();
+        expectedPerRoom = new long[ROOMS];
+        int stalledEvery = stalledPercent == 0 ? Integer.MAX_VALUE : 100 / stalledPercent;
+        for (int i = 0; i < subscribers; i++) {
+            boolean stalled = i % stalledEvery == 0;
+            int room = i % ROOMS;
+            Set<String> rooms = "all".equals(filter) ? Set.of() : Set.of("room-" + room);
+            fanout.subscribe(rooms, stalled ? new StalledSink() : new CountingSink());
+            if (!stalled) {
+                if ("all".equals(filter)) {
+                    for (int r = 0; r < ROOMS; r++) {
+                        expectedPerRoom[r]++;
+                    }
+                } else {
+                    expectedPerRoom[room]++;
+                }
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        unstall.countDown();
+        fanout.stop();
+    }
+
+    @Benchmark
+    public long fanOut() {
+        int room = nextRoom++ % ROOMS;
+        expected += expectedPerRoom[room];
+        fanout.publish(new RoomMessage("m-" + nextId++, "room-" + room, "customer.one", "hello", 1718009834212L, "c"), true);
+        while (delivered.get() < expected) {
+            // Give the dispatchers and delivery threads the CPU
+            Thread.yield();
+        }
+        return expected;
+    }
+
+    private final class CountingSink implements LiveMessageFanout.Sink {
+
+        @Override
+        public void send(LiveMessageFanout.Event event) {
+            if (event.getType() != LiveMessageFanout.Event.Type.DROPPED) {
+                delivered.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void heartbeat() {
+        }
+
+        @Override
+        public void close(String reason) {
+        }
+    }
+
+    private final class StalledSink implements LiveMessageFanout.Sink {
+
+        @Override
+        public void send(LiveMessageFanout.Event event) {
+            try {
+                unstall.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void heartbeat() {
+        }
+
+        @Override
+        public void close(String reason) {
+        }
+    }
+}
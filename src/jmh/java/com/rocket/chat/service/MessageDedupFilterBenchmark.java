@@ -0,0 +1,59 @@
+package com.rocket.chat.service;
+
+import com.rocket.chat.dto.RoomMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-message cost of {@link MessageDedupFilter#classify}: a stream of new IDs
+ * (LRU churn and Bloom inserts, rotating generations), replays of IDs that are
+ * still in the LRU, and replays of IDs only the Bloom filter remembers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageDedupFilterBenchmark {
+
+    private static final int SEEN = 100_000;
+    private static final int LRU = 10_000;
+
+    private MessageDedupFilter filter;
+    private RoomMessage[] seen;
+    private long nextId;
+    private int nextRecent;
+    private int nextOld;
+
+    @Setup
+    public void setUp() {
+        filter = new MessageDedupFilter(500_000, 0.001, LRU);
+        seen = new RoomMessage[SEEN];
+        for (int i = 0; i < SEEN; i++) {
+            seen[i] = message("seen-" + i);
+            filter.classify(seen[i]);
+        }
+    }
+
+    private static RoomMessage message(String id) {
+        return new RoomMessage(id, "GENERAL", "customer.one", "hello", 1718009834212L, "c", 0L, 1718009834300L);
+    }
+
+    @Benchmark
+    public MessageDedupFilter.Verdict newMessage() {
+        return filter.classify(message("new-" + nextId++));
+    }
+
+    @Benchmark
+    public MessageDedupFilter.Verdict replayFromLru() {
+        return filter.classify(seen[SEEN - 1 - (nextRecent++ % (LRU / 2))]);
+    }
+
+    @Benchmark
+    public MessageDedupFilter.Verdict replayFromBloom() {
+        // The oldest half of the seen IDs fell out of the LRU long ago; re-reading keeps them out
+        return filter.classify(seen[nextOld++ % (SEEN / 2)]);
+    }
+}
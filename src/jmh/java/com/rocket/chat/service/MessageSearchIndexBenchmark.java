@@ -0,0 +1,111 @@
+package com.rocket.chat.service;
+
+import com.rocket.chat.dto.RoomMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Index rate and query latency of {@link MessageSearchIndex} over a synthetic
+ * corpus with a Zipf-like vocabulary. The query benchmarks run against an index
+ * pre-loaded with {@code docs} messages.
+ */
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class MessageSearchIndexBenchmark {
+
+    private static final int VOCABULARY = 20_000;
+    private static final int ROOMS = 2_000;
+    private static final int SENDERS = 5_000;
+    private static final int CORPUS = 100_000;
+
+    static RoomMessage[] corpus(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        RoomMessage[] messages = new RoomMessage[CORPUS];
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < CORPUS; i++) {
+            StringBuilder text = new StringBuilder();
+            int words = 4 + random.nextInt(16);
+            for (int w = 0; w < words; w++) {
+                text.append(word(random)).append(' ');
+            }
+            messages[i] = new RoomMessage("m" + i, "room-" + random.nextInt(ROOMS), "user-" + random.nextInt(SENDERS),
+                    text.toString(), now, "c");
+        }
+        return messages;
+    }
+
+    /** Roughly Zipfian: low word IDs are far more frequent than high ones. */
+    static String word(SplittableRandom random) {
+        double u = random.nextDouble();
+        int id = (int) Math.floor(Math.pow(VOCABULARY, u)) - 1;
+        return "w" + id;
+    }
+
+    static MessageSearchIndex newIndex() {
+        return new MessageSearchIndex(65536, Integer.MAX_VALUE, 16, Duration.ofDays(7), 256);
+    }
+
+    @State(Scope.Benchmark)
+    public static class IndexState {
+        MessageSearchIndex index;
+        RoomMessage[] messages;
+        int next;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            index = newIndex();
+            messages = corpus(42);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class QueryState {
+        @Param({"1000000", "3000000"})
+        public int docs;
+
+        MessageSearchIndex index;
+        String[] queries;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            index = newIndex();
+            RoomMessage[] messages = corpus(42);
+            for (int i = 0; i < docs; i++) {
+                index.index(messages[i % messages.length]);
+            }
+            index.maintain();
+            SplittableRandom random = new SplittableRandom(7);
+            queries = new String[1024];
+            for (int i = 0; i < queries.length; i++) {
+                queries[i] = word(random) + " " + word(random);
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void indexMessage(IndexState state) {
+        state.index.index(state.messages[state.next++ % state.messages.length]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<?> queryTop10(QueryState state) {
+        return state.index.search(state.queries[state.next++ & 1023], null, null, 10);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<?> queryTop10InRoom(QueryState state) {
+        return state.index.search(state.queries[state.next++ & 1023], "room-17", null, 10);
+    }
+}
@@ -0,0 +1,137 @@
+package com.rocket.chat.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rocket.chat.Fixtures;
+import com.rocket.chat.config.AdaptiveTokenBucket;
+import com.rocket.chat.config.RestCallExecutor;
+import com.rocket.chat.config.RocketChatMetrics;
+import com.rocket.chat.config.WebSocketMessageTransport;
+import com.rocket.chat.dto.RoomMessage;
+import com.rocket.chat.dto.UserSession;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link UserService} hot paths against a stubbed {@link RestTemplate}:
+ * steady-state inbound message processing (auto-reply already sent), the
+ * outgoing {@code chat.postMessage} call through the outbound scheduler (with a
+ * bucket too large to ever throttle), and parsing a {@code channels.messages}
+ * page with the streaming reader versus a full tree (both parse the ISO timestamps).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserServiceBenchmark {
+
+    private static final String POST_MESSAGE_RESPONSE = "{\"success\":true}";
+    private static final int ROOMS = 64;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final MessageHistoryReader historyReader = new MessageHistoryReader(objectMapper);
+
+    private InactivityTracker tracker;
+    private MessageSearchIndex searchIndex;
+    private OutboundMessageScheduler outboundScheduler;
+    private UserService userService;
+    private RoomMessage[] messages;
+    private byte[] historyPage;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        RestTemplate restTemplate = new RestTemplate() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <T> ResponseEntity<T> postForEntity(String url, Object request, Class<T> responseType, Object... uriVariables) {
+                return (ResponseEntity<T>) ResponseEntity.ok(POST_MESSAGE_RESPONSE);
+            }
+        };
+        tracker = new InactivityTracker();
+        ReflectionTestUtils.setField(tracker, "defaultTimeout", Duration.ofMinutes(10));
+        ReflectionTestUtils.setField(tracker, "tick", Duration.ofSeconds(1));
+        ReflectionTestUtils.setField(tracker, "wheelSize", 512);
+        ReflectionTestUtils.setField(tracker, "roomTypeTimeoutConfig", Map.of());
+        ReflectionTestUtils.setField(tracker, "roomTimeoutConfig", Map.of());
+        tracker.start();
+        MessageJournal journal = new MessageJournal();
+        ReflectionTestUtils.setField(journal, "enabled", false);
+        searchIndex = new MessageSearchIndex(8192, 200_000, 16, Duration.ofDays(7), 256);
+        RoomIdCache roomIdCache = new RoomIdCache(Duration.ofMinutes(10), Duration.ofSeconds(30), 10_000);
+
+        outboundScheduler = new OutboundMessageScheduler(new AdaptiveTokenBucket(1e9, 1_000_000));
+        ReflectionTestUtils.setField(outboundScheduler, "maxConcurrency", 8);
+        ReflectionTestUtils.setField(outboundScheduler, "maxRetries", 5);
+        ReflectionTestUtils.setField(outboundScheduler, "maxQueued", 10_000);
+        outboundScheduler.start();
+
+        userService = new UserService(restTemplate, tracker, roomIdCache, journal, searchIndex,
+                new RocketChatMetrics(new SimpleMeterRegistry()),
+                new DefaultListableBeanFactory().getBeanProvider(WebSocketMessageTransport.class),
+                outboundScheduler,
+                new UserSessionCache(Duration.ofDays(90), Duration.ofDays(1), Duration.ofHours(12), Duration.ofMinutes(1), 10_000),
+                new RestCallExecutor(50, 10_000));
+        ReflectionTestUtils.setField(userService, "baseUrl", "http://localhost:3000/api/v1");
+        userService.setServiceSession(new UserSession("aobEdbYhXfu5hkeqG", "9HqLlyZOugoStsXCUfD_0YdwnNnunAJF8V47U3QHXSq"));
+
+        historyPage = Fixtures.bytes("channels-messages.json");
+        JsonNode page = objectMapper.readTree(historyPage).path("messages");
+        messages = new RoomMessage[page.size()];
+        for (int i = 0; i < messages.length; i++) {
+            JsonNode node = page.get(i);
+            messages[i] = new RoomMessage(node.path("_id").asText(), "room-" + (i % ROOMS),
+                    node.path("u").path("username").asText(), node.path("msg").asText(), System.currentTimeMillis(), "c");
+        }
+        // Auto-replies go out once per room; warm every room so the benchmark measures the steady state
+        for (RoomMessage message : messages) {
+            userService.processReceivedMessage(message);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        tracker.stop();
+        outboundScheduler.stop();
+        searchIndex.stop();
+    }
+
+    @Benchmark
+    public void processReceivedMessage() {
+        userService.processReceivedMessage(messages[next++ % messages.length]);
+    }
+
+    @Benchmark
+    public String sendMessage() {
+        return userService.sendMessage(userService.getServiceSession(), "GENERAL", "Thank you for your message! An admin will respond shortly.");
+    }
+
+    @Benchmark
+    public int parseHistoryStreaming(Blackhole bh) throws Exception {
+        return historyReader.read(new ByteArrayInputStream(historyPage), "GENERAL", bh::consume);
+    }
+
+    @Benchmark
+    public int parseHistoryTree(Blackhole bh) throws Exception {
+        JsonNode page = objectMapper.readTree(new ByteArrayInputStream(historyPage)).path("messages");
+        for (JsonNode node : page) {
+            bh.consume(node.path("msg").asText(null));
+            bh.consume(node.path("u").path("username").asText(null));
+            bh.consume(Instant.parse(node.path("ts").asText()).toEpochMilli());
+        }
+        return page.size();
+    }
+}
@@ -0,0 +1,141 @@
+package com.rocket.chat.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Token bucket for outgoing message posts. It refills at the configured rate up
+ * to {@code burst} tokens, and tightens itself from Rocket.Chat's rate-limit
+ * headers: the tokens left are capped at {@code X-RateLimit-Remaining}, spread
+ * evenly until {@code X-RateLimit-Reset}, and an exhausted window (or a 429)
+ * pauses the bucket until the reset.
+ */
+@Component
+public class AdaptiveTokenBucket {
+
+    private final double configuredRate;
+    private final double burst;
+
+    private double tokens;
+    private double rate;
+    private long lastRefillNanos = System.nanoTime();
+    private long pausedUntilNanos;
+    private long windowEndsNanos;
+    private long serverRemaining = -1;
+    private long pauses;
+    private long waitedNanos;
+
+    public AdaptiveTokenBucket(@Value("${rocketchat.outbound.rate:20}") double ratePerSecond,
+                               @Value("${rocketchat.outbound.burst:20}") int burst) {
+        this.configuredRate = ratePerSecond;
+        this.burst = Math.max(burst, 1);
+        this.rate = ratePerSecond;
+        this.tokens = this.burst;
+    }
+
+    /** Blocks until a token is available. */
+    public void acquire() throws InterruptedException {
+        long start = System.nanoTime();
+        while (true) {
+            long waitNanos = tryAcquire();
+            if (waitNanos == 0) {
+                synchronized (this) {
+                    waitedNanos += System.nanoTime() - start;
+                }
+                return;
+            }
+            LockSupport.parkNanos(this, Math.min(waitNanos, TimeUnit.MILLISECONDS.toNanos(250)));
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    /** Takes a token and returns 0, or returns how long to wait before trying again. */
+    synchronized long tryAcquire() {
+        long now = System.nanoTime();
+        if (now < pausedUntilNanos) {
+            return pausedUntilNanos - now;
+        }
+        refill(now);
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return (long) ((1 - tokens) / rate * 1_000_000_000L) + 1;
+    }
+
+    /**
+     * Applies the server's view of the current window. {@code remaining} is the number
+     * of calls left and {@code resetEpochMillis} when the window resets; either may be -1.
+     */
+    public synchronized void observe(long remaining, long resetEpochMillis) {
+        long now = System.nanoTime();
+        refill(now);
+        long untilResetNanos = resetEpochMillis > 0
+                ? TimeUnit.MILLISECONDS.toNanos(resetEpochMillis - System.currentTimeMillis())
+                : -1;
+        if (remaining < 0) {
+            return;
+        }
+        serverRemaining = remaining;
+        tokens = Math.min(tokens, remaining);
+        if (untilResetNanos <= 0) {
+            return;
+        }
+        windowEndsNanos = now + untilResetNanos;
+        if (remaining == 0) {
+            pauseUntil(windowEndsNanos);
+        } else {
+            double windowRate = remaining / (untilResetNanos / 1e9);
+            rate = Math.max(Math.min(configuredRate, windowRate), 0.01);
+        }
+    }
+
+    /** Stops handing out tokens for the given time, e.g. after a 429. */
+    public synchronized void pause(Duration duration) {
+        pauseUntil(System.nanoTime() + duration.toNanos());
+    }
+
+    private void pauseUntil(long nanos) {
+        if (nanos > pausedUntilNanos) {
+            pausedUntilNanos = nanos;
+            tokens = 0;
+            pauses++;
+        }
+    }
+
+    private void refill(long now) {
+        if (windowEndsNanos != 0 && now >= windowEndsNanos) {
+            // The server window is over; go back to the configured rate
+            rate = configuredRate;
+            windowEndsNanos = 0;
+            serverRemaining = -1;
+        }
+        long from = Math.max(lastRefillNanos, pausedUntilNanos);
+        if (now > from) {
+            tokens = Math.min(burst, tokens + (now - from) / 1e9 * rate);
+        }
+        lastRefillNanos = now;
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        refill(System.nanoTime());
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("configuredRate", configuredRate);
+        snapshot.put("currentRate", rate);
+        snapshot.put("burst", (int) burst);
+        snapshot.put("tokens", Math.floor(tokens * 100) / 100);
+        snapshot.put("serverRemaining", serverRemaining);
+        snapshot.put("pausedForMs", Math.max(0, TimeUnit.NANOSECONDS.toMillis(pausedUntilNanos - System.nanoTime())));
+        snapshot.put("pauses", pauses);
+        snapshot.put("waitedMs", TimeUnit.NANOSECONDS.toMillis(waitedNanos));
+        return snapshot;
+    }
+}
@@ -0,0 +1,162 @@
+package com.rocket.chat.config;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limit that adapts by additive increase / multiplicative decrease.
+ * Each call that completes within {@code latencyThreshold} grows the limit by
+ * {@code 1/limit}, i.e. by about one per round of calls; a call that fails or takes
+ * longer shrinks it by {@code backoffRatio}. Only calls started after the last
+ * decrease can trigger another, so one slow round halves the limit once rather
+ * than once per call in it.
+ *
+ * <p>Waiting uses a lock rather than a monitor so virtual-thread callers do not pin
+ * their carrier while queued.
+ */
+public class AimdLimit {
+
+    private final double minLimit;
+    private final double maxLimit;
+    private final double backoffRatio;
+    private final long latencyThresholdNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+
+    private double limit;
+    private int inFlight;
+    private int waiting;
+    private long lastDecreaseNanos;
+    private long increases;
+    private long decreases;
+    private long rejected;
+    private long waitedNanos;
+    private long maxWaitNanos;
+
+    public AimdLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio, Duration latencyThreshold) {
+        this.minLimit = Math.max(minLimit, 1);
+        this.maxLimit = Math.max(maxLimit, this.minLimit);
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+        this.limit = Math.min(Math.max(initialLimit, this.minLimit), this.maxLimit);
+        this.lastDecreaseNanos = System.nanoTime();
+    }
+
+    /** Blocks until fewer than {@link #limit()} calls are in flight; returns the call's start time for {@link #release}. */
+    public long acquire() throws InterruptedException {
+        return acquire(Long.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * As {@link #acquire()}, but gives up and returns -1 when {@code maxWaiting} callers
+     * are already queued or no slot frees up within {@code timeoutNanos}.
+     */
+    public long acquire(long timeoutNanos, int maxWaiting) throws InterruptedException {
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return start;
+            }
+            if (waiting >= maxWaiting) {
+                rejected++;
+                return -1;
+            }
+            waiting++;
+            try {
+                long remaining = timeoutNanos;
+                while (inFlight >= (int) limit) {
+                    if (remaining <= 0) {
+                        rejected++;
+                        return -1;
+                    }
+                    remaining = released.awaitNanos(remaining);
+                }
+            } finally {
+                waiting--;
+            }
+            inFlight++;
+            long now = System.nanoTime();
+            waitedNanos += now - start;
+            maxWaitNanos = Math.max(maxWaitNanos, now - start);
+            return now;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Ends a call started at {@code startNanos}; {@code failed} counts as a congestion signal like a slow call. */
+    public void release(long startNanos, boolean failed) {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            inFlight--;
+            if (failed || now - startNanos > latencyThresholdNanos) {
+                if (startNanos - lastDecreaseNanos >= 0) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    lastDecreaseNanos = now;
+                    decreases++;
+                }
+            } else if (limit < maxLimit) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+                increases++;
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int limit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int waiting() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        lock.lock();
+        try {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("limit", (int) limit);
+            snapshot.put("inFlight", inFlight);
+            snapshot.put("waiting", waiting);
+            snapshot.put("minLimit", (int) minLimit);
+            snapshot.put("maxLimit", (int) maxLimit);
+            snapshot.put("latencyThresholdMs", TimeUnit.NANOSECONDS.toMillis(latencyThresholdNanos));
+            snapshot.put("increases", increases);
+            snapshot.put("decreases", decreases);
+            snapshot.put("rejected", rejected);
+            snapshot.put("waitedMs", TimeUnit.NANOSECONDS.toMillis(waitedNanos));
+            snapshot.put("maxWaitMs", TimeUnit.NANOSECONDS.toMillis(maxWaitNanos));
+            return snapshot;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.rocket.chat.config;
+
+import java.io.IOException;
+
+/**
+ * A Rocket.Chat REST call turned away by the {@link ConcurrencyLimitInterceptor}
+ * without being sent. Like a 429, the call can be retried after a backoff.
+ */
+public class ConcurrencyLimitException extends IOException {
+
+    public ConcurrencyLimitException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,115 @@
+package com.rocket.chat.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps concurrent Rocket.Chat REST calls with an {@link AimdLimit} per kind of call:
+ * reads ({@code GET}, e.g. {@code channels.messages}, {@code channels.info},
+ * {@code im.list}) and writes (everything else, e.g. {@code chat.postMessage},
+ * {@code channels.create}), so slow writes do not starve reads or the other way
+ * round. A call that fails, gets a 5xx or 429, or takes longer than its kind's
+ * latency threshold shrinks the limit. When the limit is reached a call waits at
+ * most {@code max-queue-wait} behind at most {@code max-queued} others, and is
+ * otherwise rejected at once with a {@link ConcurrencyLimitException}.
+ *
+ * <p>The slot is held until the response headers arrive, so a streamed body is
+ * read outside the limit.
+ */
+@Component
+public class ConcurrencyLimitInterceptor implements ClientHttpRequestInterceptor {
+
+    public enum Kind {
+        READ, WRITE
+    }
+
+    private final Map<Kind, AimdLimit> limits = new LinkedHashMap<>();
+    private final Map<Kind, Timer> queueTimers = new LinkedHashMap<>();
+    private final long maxQueueWaitNanos;
+    private final int maxQueued;
+
+    public ConcurrencyLimitInterceptor(MeterRegistry registry,
+                                       @Value("${rocketchat.rest-limit.read.initial:20}") int readInitial,
+                                       @Value("${rocketchat.rest-limit.read.min:2}") int readMin,
+                                       @Value("${rocketchat.rest-limit.read.max:${rocketchat.http.max-connections-per-route:50}}") int readMax,
+                                       @Value("${rocketchat.rest-limit.read.latency-threshold:500ms}") Duration readThreshold,
+                                       @Value("${rocketchat.rest-limit.write.initial:10}") int writeInitial,
+                                       @Value("${rocketchat.rest-limit.write.min:1}") int writeMin,
+                                       @Value("${rocketchat.rest-limit.write.max:${rocketchat.http.max-connections-per-route:50}}") int writeMax,
+                                       @Value("${rocketchat.rest-limit.write.latency-threshold:1s}") Duration writeThreshold,
+                                       @Value("${rocketchat.rest-limit.max-queue-wait:500ms}") Duration maxQueueWait,
+                                       @Value("${rocketchat.rest-limit.max-queued:200}") int maxQueued) {
+        limits.put(Kind.READ, new AimdLimit(readInitial, readMin, readMax, 0.5, readThreshold));
+        limits.put(Kind.WRITE, new AimdLimit(writeInitial, writeMin, writeMax, 0.5, writeThreshold));
+        this.maxQueueWaitNanos = maxQueueWait.toNanos();
+        this.maxQueued = maxQueued;
+        for (Kind kind : Kind.values()) {
+            queueTimers.put(kind, Timer.builder("rocketchat.rest.limit.queue")
+                    .description("Time a Rocket.Chat REST call waited for a concurrency slot")
+                    .tag("kind", kind.name().toLowerCase())
+                    .register(registry));
+        }
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        Kind kind = kind(request.getMethod());
+        AimdLimit limit = limits.get(kind);
+        long queuedAt = System.nanoTime();
+        long start;
+        try {
+            start = limit.acquire(maxQueueWaitNanos, maxQueued);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for a Rocket.Chat " + kind + " slot", e);
+        }
+        queueTimers.get(kind).record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+        if (start < 0) {
+            throw new ConcurrencyLimitException(kind + " limit of " + limit.limit() + " concurrent Rocket.Chat calls reached, "
+                    + RestCallMetricsInterceptor.endpoint(request.getURI().getPath()) + " rejected");
+        }
+        boolean failed = true;
+        try {
+            ClientHttpResponse response = execution.execute(request, body);
+            int status = response.getStatusCode().value();
+            failed = status >= 500 || status == 429;
+            return response;
+        } finally {
+            limit.release(start, failed);
+        }
+    }
+
+    static Kind kind(HttpMethod method) {
+        return HttpMethod.GET.equals(method) || HttpMethod.HEAD.equals(method) ? Kind.READ : Kind.WRITE;
+    }
+
+    public AimdLimit limit(Kind kind) {
+        return limits.get(kind);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("maxQueued", maxQueued);
+        snapshot.put("maxQueueWaitMs", TimeUnit.NANOSECONDS.toMillis(maxQueueWaitNanos));
+        limits.forEach((kind, limit) -> {
+            Map<String, Object> stats = limit.snapshot();
+            Timer queue = queueTimers.get(kind);
+            stats.put("meanQueueMs", queue.mean(TimeUnit.MILLISECONDS));
+            snapshot.put(kind.name().toLowerCase(), stats);
+        });
+        return snapshot;
+    }
+}
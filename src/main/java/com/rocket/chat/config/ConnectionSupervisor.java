@@ -0,0 +1,215 @@
+package com.rocket.chat.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import jakarta.annotation.PreDestroy;
+import org.java_websocket.framing.CloseFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns the timers of every {@link RocketChatWebSocketClient}: the DDP heartbeat,
+ * the subscription outbox drain and reconnect delays all run on one scheduler
+ * thread. Each heartbeat sends a {@code ping} when none is outstanding and times
+ * the matching {@code pong}; a connection that misses {@code max-missed-pongs}
+ * heartbeats in a row is treated as half-open and closed, which hands it to the
+ * client's reconnect and the manager's failover. Unregistering a client cancels
+ * its tasks.
+ */
+@Component
+public class ConnectionSupervisor {
+
+    private static final Logger log = LoggerFactory.getLogger(ConnectionSupervisor.class);
+    /** Weight of the newest sample in the smoothed round-trip time. */
+    private static final double RTT_SMOOTHING = 0.2;
+
+    private final RocketChatMetrics metrics;
+    private final Duration heartbeatInterval;
+    private final int maxMissedPongs;
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final Map<RocketChatWebSocketClient, Heartbeat> heartbeats = new ConcurrentHashMap<>();
+
+    public ConnectionSupervisor(RocketChatMetrics metrics,
+                                @Value("${rocketchat.ws.heartbeat-interval:15s}") Duration heartbeatInterval,
+                                @Value("${rocketchat.ws.max-missed-pongs:2}") int maxMissedPongs) {
+        this.metrics = metrics;
+        this.heartbeatInterval = heartbeatInterval;
+        this.maxMissedPongs = Math.max(maxMissedPongs, 1);
+        this.scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "ws-supervisor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Cancelled heartbeats of closed clients must not linger in the queue
+        scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    /** Starts the client's heartbeat and outbox drain. */
+    public void register(RocketChatWebSocketClient client) {
+        Heartbeat heartbeat = new Heartbeat(client);
+        if (heartbeats.putIfAbsent(client, heartbeat) != null) {
+            return;
+        }
+        long interval = heartbeatInterval.toMillis();
+        heartbeat.tasks.add(scheduler.scheduleAtFixedRate(() -> beat(heartbeat), interval, interval, TimeUnit.MILLISECONDS));
+        heartbeat.tasks.add(scheduler.scheduleAtFixedRate(client::drainOutbox,
+                RocketChatWebSocketClient.OUTBOX_TICK_MS, RocketChatWebSocketClient.OUTBOX_TICK_MS, TimeUnit.MILLISECONDS));
+        String shard = Integer.toString(client.getShard());
+        heartbeat.meters.add(Gauge.builder("rocketchat.ws.connection.rtt", heartbeat, Heartbeat::smoothedRttMillis)
+                .description("Smoothed ping/pong round-trip time")
+                .baseUnit("milliseconds")
+                .tag("shard", shard)
+                .register(metrics.registry()));
+        heartbeat.meters.add(Gauge.builder("rocketchat.ws.connection.missed.pongs", heartbeat, h -> h.missed)
+                .description("Heartbeats in a row without a pong")
+                .tag("shard", shard)
+                .register(metrics.registry()));
+    }
+
+    /** Cancels the client's tasks and drops its meters. */
+    public void unregister(RocketChatWebSocketClient client) {
+        Heartbeat heartbeat = heartbeats.remove(client);
+        if (heartbeat == null) {
+            return;
+        }
+        heartbeat.tasks.forEach(task -> task.cancel(false));
+        heartbeat.meters.forEach(metrics.registry()::remove);
+    }
+
+    /** Runs {@code task} once after the delay on the supervisor thread. */
+    public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        return scheduler.schedule(task, delay, unit);
+    }
+
+    /** Called by the client for every {@code pong} frame. */
+    public void pongReceived(RocketChatWebSocketClient client) {
+        Heartbeat heartbeat = heartbeats.get(client);
+        if (heartbeat == null) {
+            return;
+        }
+        long sentAt;
+        synchronized (heartbeat) {
+            sentAt = heartbeat.pingSentAtNanos;
+            if (sentAt == 0) {
+                return;
+            }
+            heartbeat.recordPong(System.nanoTime() - sentAt);
+        }
+        metrics.pingRoundTrip(sentAt);
+    }
+
+    private void beat(Heartbeat heartbeat) {
+        RocketChatWebSocketClient client = heartbeat.client;
+        try {
+            if (!client.isOpen()) {
+                synchronized (heartbeat) {
+                    heartbeat.pingSentAtNanos = 0;
+                    heartbeat.missed = 0;
+                }
+                // Covers a connection that never opened; a no-op while a reconnect is pending
+                client.reconnectIfClosed();
+                return;
+            }
+            synchronized (heartbeat) {
+                if (heartbeat.pingSentAtNanos != 0) {
+                    heartbeat.missed++;
+                    heartbeat.missedTotal++;
+                    if (heartbeat.missed < maxMissedPongs) {
+                        return;
+                    }
+                    heartbeat.deaths++;
+                    heartbeat.pingSentAtNanos = 0;
+                    heartbeat.missed = 0;
+                } else {
+                    heartbeat.pingSentAtNanos = System.nanoTime();
+                    heartbeat.pings++;
+                    client.sendHeartbeat();
+                    return;
+                }
+            }
+            log.warn("Connection {} missed {} pongs; closing it as dead", client.getShard(), maxMissedPongs);
+            client.closeConnection(CloseFrame.ABNORMAL_CLOSE, "Heartbeat timeout");
+        } catch (Exception e) {
+            log.error("Heartbeat failed on connection {}", client.getShard(), e);
+        }
+    }
+
+    public List<Map<String, Object>> snapshot() {
+        List<Map<String, Object>> snapshot = new ArrayList<>(heartbeats.size());
+        for (Heartbeat heartbeat : heartbeats.values()) {
+            snapshot.add(heartbeat.snapshot());
+        }
+        snapshot.sort((a, b) -> Integer.compare((int) a.get("shard"), (int) b.get("shard")));
+        return snapshot;
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    private static final class Heartbeat {
+        private final RocketChatWebSocketClient client;
+        private final List<ScheduledFuture<?>> tasks = new ArrayList<>(2);
+        private final List<Meter> meters = new ArrayList<>(2);
+        private long pingSentAtNanos;
+        private long lastPongAtNanos;
+        private long lastRttNanos = -1;
+        private double smoothedRttNanos = -1;
+        private long maxRttNanos;
+        private volatile int missed;
+        private long missedTotal;
+        private long pings;
+        private long pongs;
+        private long deaths;
+
+        Heartbeat(RocketChatWebSocketClient client) {
+            this.client = client;
+        }
+
+        void recordPong(long rttNanos) {
+            pingSentAtNanos = 0;
+            missed = 0;
+            pongs++;
+            lastPongAtNanos = System.nanoTime();
+            lastRttNanos = rttNanos;
+            maxRttNanos = Math.max(maxRttNanos, rttNanos);
+            smoothedRttNanos = smoothedRttNanos < 0 ? rttNanos : smoothedRttNanos + RTT_SMOOTHING * (rttNanos - smoothedRttNanos);
+        }
+
+        synchronized double smoothedRttMillis() {
+            return smoothedRttNanos < 0 ? Double.NaN : smoothedRttNanos / 1e6;
+        }
+
+        synchronized Map<String, Object> snapshot() {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("shard", client.getShard());
+            snapshot.put("healthy", client.isLoggedIn() && missed == 0);
+            snapshot.put("open", client.isOpen());
+            snapshot.put("loggedIn", client.isLoggedIn());
+            snapshot.put("lastRttMs", lastRttNanos < 0 ? null : lastRttNanos / 1e6);
+            snapshot.put("smoothedRttMs", smoothedRttNanos < 0 ? null : smoothedRttNanos / 1e6);
+            snapshot.put("maxRttMs", maxRttNanos / 1e6);
+            snapshot.put("lastPongAgoMs", lastPongAtNanos == 0 ? null : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastPongAtNanos));
+            snapshot.put("awaitingPong", pingSentAtNanos != 0);
+            snapshot.put("missedPongs", missed);
+            snapshot.put("missedPongsTotal", missedTotal);
+            snapshot.put("pings", pings);
+            snapshot.put("pongs", pongs);
+            snapshot.put("declaredDead", deaths);
+            return snapshot;
+        }
+    }
+}
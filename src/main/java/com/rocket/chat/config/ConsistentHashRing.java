@@ -0,0 +1,64 @@
+package com.rocket.chat.config;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring mapping room IDs to connection shards. Each shard owns
+ * {@code virtualNodes} points on the ring, so removing a shard only moves the
+ * rooms it owned, spread evenly over the remaining shards.
+ */
+class ConsistentHashRing {
+
+    private final int virtualNodes;
+    private final TreeMap<Long, Integer> ring = new TreeMap<>();
+
+    ConsistentHashRing(int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+    }
+
+    void add(int shard) {
+        for (int i = 0; i < virtualNodes; i++) {
+            ring.put(hash("shard-" + shard + "#" + i), shard);
+        }
+    }
+
+    void remove(int shard) {
+        for (int i = 0; i < virtualNodes; i++) {
+            ring.remove(hash("shard-" + shard + "#" + i), shard);
+        }
+    }
+
+    boolean contains(int shard) {
+        return ring.containsKey(hash("shard-" + shard + "#0"));
+    }
+
+    boolean isEmpty() {
+        return ring.isEmpty();
+    }
+
+    /** Returns the shard owning the key, or -1 when the ring is empty. */
+    int shardFor(String key) {
+        if (ring.isEmpty()) {
+            return -1;
+        }
+        Map.Entry<Long, Integer> owner = ring.ceilingEntry(hash(key));
+        return owner != null ? owner.getValue() : ring.firstEntry().getValue();
+    }
+
+    /** FNV-1a over the UTF-8 bytes, finished with the murmur3 mixer for a uniform spread. */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,73 @@
+package com.rocket.chat.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.rocket.chat.dto.RoomMessage;
+
+import java.util.List;
+
+/**
+ * The parts of a DDP frame the client acts on. Only the fields relevant to
+ * the frame's {@code msg} type are populated; everything else is skipped
+ * while decoding.
+ */
+public class DdpFrame {
+    private final String type;
+    private final String id;
+    private final String session;
+    private final String collection;
+    private final RoomMessage roomMessage;
+    private final RoomChangeEvent roomChange;
+    private final JsonNode result;
+    private final JsonNode error;
+    private final List<String> subs;
+
+    DdpFrame(String type, String id, String session, String collection,
+             RoomMessage roomMessage, RoomChangeEvent roomChange, JsonNode result, JsonNode error, List<String> subs) {
+        this.type = type;
+        this.id = id;
+        this.session = session;
+        this.collection = collection;
+        this.roomMessage = roomMessage;
+        this.roomChange = roomChange;
+        this.result = result;
+        this.error = error;
+        this.subs = subs;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getSession() {
+        return session;
+    }
+
+    public String getCollection() {
+        return collection;
+    }
+
+    public RoomMessage getRoomMessage() {
+        return roomMessage;
+    }
+
+    public RoomChangeEvent getRoomChange() {
+        return roomChange;
+    }
+
+    public JsonNode getResult() {
+        return result;
+    }
+
+    public JsonNode getError() {
+        return error;
+    }
+
+    /** Subscription IDs acknowledged by a {@code ready} frame; empty for other types. */
+    public List<String> getSubs() {
+        return subs;
+    }
+}
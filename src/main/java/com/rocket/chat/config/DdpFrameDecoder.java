@@ -0,0 +1,275 @@
+package com.rocket.chat.config;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rocket.chat.dto.RoomMessage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Streaming decoder for DDP frames. Reads {@code msg} and {@code collection}
+ * first and stops as soon as a frame is known to be uninteresting, so pings,
+ * subscription noise and foreign collections never build a tree. Room message
+ * frames are bound straight into a {@link RoomMessage}, and rooms-changed
+ * notifications into a {@link RoomChangeEvent}.
+ */
+public class DdpFrameDecoder {
+
+    static final String ROOM_MESSAGES_COLLECTION = "stream-room-messages";
+    static final String NOTIFY_USER_COLLECTION = "stream-notify-user";
+    static final String ROOMS_CHANGED_EVENT = "/rooms-changed";
+
+    private static final Set<String> HANDLED_TYPES = Set.of("connected", "result", "changed", "ping", "pong", "ready", "nosub");
+
+    private final ObjectMapper objectMapper;
+
+    public DdpFrameDecoder(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public DdpFrame decode(String text) throws IOException {
+        long receivedAtNanos = System.nanoTime();
+        try (JsonParser parser = objectMapper.createParser(text)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("DDP frame is not a JSON object");
+            }
+            String type = null;
+            String id = null;
+            String session = null;
+            String collection = null;
+            RoomMessage roomMessage = null;
+            RoomChangeEvent roomChange = null;
+            JsonNode result = null;
+            JsonNode error = null;
+            List<String> subs = List.of();
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "msg" -> {
+                        type = parser.getText();
+                        if (!HANDLED_TYPES.contains(type)) {
+                            return new DdpFrame(type, null, null, null, null, null, null, null, List.of());
+                        }
+                        if (collection != null && !isHandledCollection(collection)) {
+                            return new DdpFrame(type, id, null, collection, null, null, null, null, List.of());
+                        }
+                    }
+                    case "collection" -> {
+                        collection = parser.getText();
+                        // Stop early only once msg is known, so the frame never comes back without a type
+                        if (type != null && !isHandledCollection(collection)) {
+                            return new DdpFrame(type, id, null, collection, null, null, null, null, List.of());
+                        }
+                    }
+                    case "id" -> id = parser.getValueAsString();
+                    case "session" -> session = parser.getText();
+                    case "fields" -> {
+                        if (collection != null && !isHandledCollection(collection)) {
+                            parser.skipChildren();
+                        } else if (NOTIFY_USER_COLLECTION.equals(collection)) {
+                            roomChange = readRoomChangeFields(parser);
+                        } else {
+                            // Rocket.Chat sends msg/collection first, but tolerate any field order
+                            roomMessage = readRoomMessageFields(parser, receivedAtNanos);
+                        }
+                    }
+                    case "result" -> result = parser.readValueAsTree();
+                    case "error" -> error = parser.readValueAsTree();
+                    case "subs" -> subs = readStringArray(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+            if (!ROOM_MESSAGES_COLLECTION.equals(collection)) {
+                roomMessage = null;
+            }
+            return new DdpFrame(type, id, session, collection, roomMessage, roomChange, result, error, subs);
+        }
+    }
+
+    private static boolean isHandledCollection(String collection) {
+        return ROOM_MESSAGES_COLLECTION.equals(collection) || NOTIFY_USER_COLLECTION.equals(collection);
+    }
+
+    /**
+     * Binds {@code fields.args[0]} of a stream-room-messages change, plus the room type
+     * Rocket.Chat sends in {@code args[1]}; returns null when no message is present.
+     */
+    private RoomMessage readRoomMessageFields(JsonParser parser, long receivedAtNanos) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        MessageFields message = null;
+        String roomType = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if ("args".equals(field) && parser.currentToken() == JsonToken.START_ARRAY) {
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.START_OBJECT) {
+                    message = readMessageFields(parser);
+                    token = parser.nextToken();
+                } else if (token != JsonToken.END_ARRAY) {
+                    parser.skipChildren();
+                    token = parser.nextToken();
+                }
+                if (token == JsonToken.START_OBJECT) {
+                    roomType = readStringField(parser, "roomType");
+                    token = parser.nextToken();
+                }
+                while (token != JsonToken.END_ARRAY) {
+                    parser.skipChildren();
+                    token = parser.nextToken();
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (message == null) {
+            return null;
+        }
+        long timestamp = message.timestamp > 0 ? message.timestamp : System.currentTimeMillis();
+        return new RoomMessage(message.id, message.roomId, message.sender, message.text, timestamp, roomType,
+                receivedAtNanos, message.updatedAt);
+    }
+
+    /**
+     * Binds {@code fields} of a stream-notify-user change when its event is
+     * {@code <userId>/rooms-changed}, i.e. {@code args: [action, {_id, name}]}.
+     */
+    private RoomChangeEvent readRoomChangeFields(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        boolean roomsChanged = false;
+        String action = null;
+        String roomId = null;
+        String roomName = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if ("eventName".equals(field)) {
+                String eventName = parser.getValueAsString();
+                roomsChanged = eventName != null && eventName.endsWith(ROOMS_CHANGED_EVENT);
+            } else if ("args".equals(field) && parser.currentToken() == JsonToken.START_ARRAY) {
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.VALUE_STRING) {
+                    action = parser.getText();
+                    token = parser.nextToken();
+                }
+                if (token == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String roomField = parser.currentName();
+                        parser.nextToken();
+                        switch (roomField) {
+                            case "_id" -> roomId = parser.getValueAsString();
+                            case "name" -> roomName = parser.getValueAsString();
+                            default -> parser.skipChildren();
+                        }
+                    }
+                    token = parser.nextToken();
+                }
+                while (token != JsonToken.END_ARRAY) {
+                    parser.skipChildren();
+                    token = parser.nextToken();
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return roomsChanged && action != null ? new RoomChangeEvent(action, roomId, roomName) : null;
+    }
+
+    private MessageFields readMessageFields(JsonParser parser) throws IOException {
+        MessageFields message = new MessageFields();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            switch (field) {
+                case "_id" -> message.id = parser.getValueAsString();
+                case "rid" -> message.roomId = parser.getValueAsString();
+                case "msg" -> message.text = parser.getValueAsString();
+                case "u" -> message.sender = readStringField(parser, "username");
+                case "ts" -> message.timestamp = readDate(parser, token);
+                case "_updatedAt" -> message.updatedAt = readDate(parser, token);
+                default -> parser.skipChildren();
+            }
+        }
+        return message;
+    }
+
+    /** Reads the string elements of the current array, skipping any other values. */
+    private List<String> readStringArray(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return List.of();
+        }
+        List<String> values = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() == JsonToken.VALUE_STRING) {
+                values.add(parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return values;
+    }
+
+    /** Reads one string property of the current object and skips the rest of it. */
+    private String readStringField(JsonParser parser, String name) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        String value = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (name.equals(field)) {
+                value = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return value;
+    }
+
+    /** EJSON dates arrive as {@code {"$date": millis}}. */
+    private long readDate(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getLongValue();
+        }
+        if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return 0L;
+        }
+        long millis = 0L;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if ("$date".equals(field)) {
+                millis = parser.getValueAsLong();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return millis;
+    }
+
+    private static final class MessageFields {
+        private String id;
+        private String roomId;
+        private String sender;
+        private String text;
+        private long timestamp;
+        private long updatedAt;
+    }
+}
@@ -0,0 +1,207 @@
+package com.rocket.chat.config;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rocket.chat.exception.RocketChatException;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Writes outgoing DDP frames and small JSON request bodies. Constant frames are
+ * encoded once, and the fixed parts of login/sub/unsub frames are kept as raw
+ * fragments with only their values written in between. Everything goes through a
+ * pooled {@link JsonGenerator} bound to a reusable buffer, so every value is
+ * escaped by Jackson and a frame costs one pass plus the final string. Output is
+ * compact JSON.
+ */
+public class DdpFrameEncoder {
+
+    public static final String CONNECT = "{\"msg\":\"connect\",\"version\":\"1\",\"support\":[\"1\",\"pre2\",\"pre1\"]}";
+    public static final String PING = "{\"msg\":\"ping\"}";
+    public static final String PONG = "{\"msg\":\"pong\"}";
+
+    // Fixed parts of the variable frames; only the values between them go through the generator
+    private static final String LOGIN_USERNAME = "{\"msg\":\"method\",\"method\":\"login\",\"id\":\"login\",\"params\":[{\"user\":{\"username\":";
+    private static final String LOGIN_DIGEST = "},\"password\":{\"digest\":";
+    private static final String LOGIN_END = ",\"algorithm\":\"sha-256\"}}]}";
+    private static final String RESUME_TOKEN = "{\"msg\":\"method\",\"method\":\"login\",\"id\":\"login\",\"params\":[{\"resume\":";
+    private static final String SUB_ID = "{\"msg\":\"sub\",\"id\":";
+    private static final String UNSUB_ID = "{\"msg\":\"unsub\",\"id\":";
+
+    /** Power of two, so a thread's starting slot is a mask of its ID. */
+    private static final int POOL_SIZE = 16;
+    /** Buffers that grew past this are dropped instead of pooled, so one large frame does not pin memory. */
+    private static final int MAX_POOLED_CHARS = 16 * 1024;
+
+    /** Writes one JSON value to the generator. */
+    @FunctionalInterface
+    public interface Body {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    private final JsonFactory factory;
+    private final AtomicReferenceArray<Slot> pool = new AtomicReferenceArray<>(POOL_SIZE);
+
+    public DdpFrameEncoder(ObjectMapper objectMapper) {
+        // The mapper's factory carries it as codec, so method params can be any POJO
+        this.factory = objectMapper.getFactory();
+    }
+
+    public String login(String username, String passwordDigest) {
+        return encode(g -> {
+            g.writeRaw(LOGIN_USERNAME);
+            g.writeString(username);
+            g.writeRaw(LOGIN_DIGEST);
+            g.writeString(passwordDigest);
+            g.writeRaw(LOGIN_END);
+        });
+    }
+
+    public String resume(String token) {
+        return encode(g -> {
+            g.writeRaw(RESUME_TOKEN);
+            g.writeString(token);
+            g.writeRaw("}]}");
+        });
+    }
+
+    /** A {@code sub} to a Rocket.Chat stream with the usual {@code [eventName, false]} params. */
+    public String subscribe(String subId, String stream, String eventName) {
+        return encode(g -> {
+            g.writeRaw(SUB_ID);
+            g.writeString(subId);
+            g.writeRaw(",\"name\":");
+            g.writeString(stream);
+            g.writeRaw(",\"params\":[");
+            g.writeString(eventName);
+            g.writeRaw(",false]}");
+        });
+    }
+
+    public String unsubscribe(String subId) {
+        return encode(g -> {
+            g.writeRaw(UNSUB_ID);
+            g.writeString(subId);
+            g.writeRaw('}');
+        });
+    }
+
+    public String method(String id, String method, Object... params) {
+        return encode(g -> {
+            g.writeStartObject();
+            g.writeStringField("msg", "method");
+            g.writeStringField("method", method);
+            g.writeStringField("id", id);
+            g.writeArrayFieldStart("params");
+            for (Object param : params) {
+                g.writeObject(param);
+            }
+            g.writeEndArray();
+            g.writeEndObject();
+        });
+    }
+
+    /** A flat object of string fields, e.g. a REST request body: {@code fields("roomId", id, "text", text)}. */
+    public String fields(String... namesAndValues) {
+        if (namesAndValues.length % 2 != 0) {
+            throw new IllegalArgumentException("Expected name/value pairs");
+        }
+        return encode(g -> {
+            g.writeStartObject();
+            for (int i = 0; i < namesAndValues.length; i += 2) {
+                g.writeStringField(namesAndValues[i], namesAndValues[i + 1]);
+            }
+            g.writeEndObject();
+        });
+    }
+
+    public String encode(Body body) {
+        Slot slot = acquire();
+        try {
+            slot.buffer.setLength(0);
+            body.write(slot.generator);
+            slot.generator.flush();
+            String json = slot.buffer.toString();
+            if (slot.buffer.capacity() <= MAX_POOLED_CHARS) {
+                release(slot);
+            }
+            return json;
+        } catch (IOException | RuntimeException e) {
+            // The generator may be mid-object; drop the slot rather than pool a broken one
+            throw new RocketChatException("Failed to encode JSON payload", e);
+        }
+    }
+
+    /** Takes any free pooled slot, starting at a per-thread index to spread contention. */
+    private Slot acquire() {
+        int start = (int) Thread.currentThread().threadId() & (POOL_SIZE - 1);
+        for (int i = 0; i < POOL_SIZE; i++) {
+            int index = (start + i) & (POOL_SIZE - 1);
+            Slot slot = pool.getPlain(index);
+            if (slot != null && pool.compareAndSet(index, slot, null)) {
+                return slot;
+            }
+        }
+        return new Slot(factory);
+    }
+
+    private void release(Slot slot) {
+        int start = (int) Thread.currentThread().threadId() & (POOL_SIZE - 1);
+        for (int i = 0; i < POOL_SIZE; i++) {
+            int index = (start + i) & (POOL_SIZE - 1);
+            if (pool.getPlain(index) == null && pool.compareAndSet(index, null, slot)) {
+                return;
+            }
+        }
+    }
+
+    private static final class Slot {
+        private final StringBuilder buffer = new StringBuilder(256);
+        private final JsonGenerator generator;
+
+        Slot(JsonFactory factory) {
+            try {
+                this.generator = factory.createGenerator(new StringBuilderWriter(buffer));
+            } catch (IOException e) {
+                throw new RocketChatException("Failed to create JSON generator", e);
+            }
+            // Consecutive root values must not be separated by the default space
+            generator.setRootValueSeparator(null);
+        }
+    }
+
+    /** Unsynchronized writer over a {@link StringBuilder}. */
+    private static final class StringBuilderWriter extends Writer {
+        private final StringBuilder buffer;
+
+        StringBuilderWriter(StringBuilder buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            buffer.append(chars, offset, length);
+        }
+
+        @Override
+        public void write(String text, int offset, int length) {
+            buffer.append(text, offset, offset + length);
+        }
+
+        @Override
+        public void write(int c) {
+            buffer.append((char) c);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
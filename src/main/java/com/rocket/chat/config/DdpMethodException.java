@@ -0,0 +1,37 @@
+package com.rocket.chat.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.rocket.chat.exception.RocketChatException;
+
+/**
+ * A DDP method call answered with an error. Keeps the server's error code
+ * (e.g. {@code too-many-requests}) and details so callers can react to it.
+ */
+public class DdpMethodException extends RocketChatException {
+
+    private final String error;
+    private final JsonNode details;
+
+    public DdpMethodException(String error, String reason, JsonNode details) {
+        super("DDP method failed: " + (reason != null ? reason : error));
+        this.error = error;
+        this.details = details;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public JsonNode getDetails() {
+        return details;
+    }
+
+    public boolean isRateLimited() {
+        return "too-many-requests".equals(error);
+    }
+
+    /** Milliseconds until the server's rate limiter resets, or -1 when not given. */
+    public long getTimeToResetMillis() {
+        return details == null ? -1 : details.path("timeToReset").asLong(-1);
+    }
+}
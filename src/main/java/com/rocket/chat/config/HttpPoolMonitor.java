@@ -0,0 +1,64 @@
+package com.rocket.chat.config;
+
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.core5.pool.PoolStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Exposes utilization of the pooled REST transport so the pool can be sized
+ * against the actual posting rate.
+ */
+@Component
+public class HttpPoolMonitor {
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    @Value("${rocketchat.http.http2:false}")
+    private boolean http2;
+
+    public HttpPoolMonitor(PoolingHttpClientConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
+    public PoolStats totalStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    public double utilization() {
+        PoolStats stats = totalStats();
+        return stats.getMax() == 0 ? 0.0 : (double) stats.getLeased() / stats.getMax();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        if (http2) {
+            // The JDK HTTP/2 client keeps its own pool and does not report on it
+            snapshot.put("transport", "jdk-http2");
+            return snapshot;
+        }
+        snapshot.put("transport", "pooled-http1");
+        snapshot.put("total", toMap(totalStats()));
+        snapshot.put("utilization", utilization());
+
+        Map<String, Object> routes = new LinkedHashMap<>();
+        for (HttpRoute route : connectionManager.getRoutes()) {
+            routes.put(route.getTargetHost().toURI(), toMap(connectionManager.getStats(route)));
+        }
+        snapshot.put("routes", routes);
+        return snapshot;
+    }
+
+    private Map<String, Object> toMap(PoolStats stats) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("leased", stats.getLeased());
+        map.put("available", stats.getAvailable());
+        map.put("pending", stats.getPending());
+        map.put("max", stats.getMax());
+        return map;
+    }
+}
@@ -0,0 +1,192 @@
+package com.rocket.chat.config;
+
+import com.rocket.chat.exception.RocketChatException;
+import com.rocket.chat.service.LiveMessageFanout;
+import com.rocket.chat.service.UserService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plain WebSocket alternative to the {@code /chat/events} SSE stream, for clients
+ * that cannot hold an SSE connection. Runs on its own port, e.g.
+ * {@code ws://host:8091/?roomId=abc&roomId=def} (all rooms without {@code roomId});
+ * every text frame is an {@link LiveMessageFanout.Event#envelope() envelope}. The
+ * handshake must carry X-User-Id and X-Auth-Token, and rooms are limited to those
+ * the user may read, as for SSE.
+ * Frames are queued by the library's selector thread, so delivery holds back while
+ * more than {@code websocket-max-queued-frames} are still unsent and lets the subscriber's
+ * buffer take the lag.
+ */
+@Component
+public class LiveMessageSocketServer {
+
+    private static final Logger log = LoggerFactory.getLogger(LiveMessageSocketServer.class);
+
+    private final LiveMessageFanout fanout;
+    private final UserService userService;
+
+    @Value("${rocketchat.push.websocket-port:-1}")
+    private int port;
+
+    @Value("${rocketchat.push.websocket-max-queued-frames:64}")
+    private int maxQueuedFrames;
+
+    private WebSocketServer server;
+
+    public LiveMessageSocketServer(LiveMessageFanout fanout, UserService userService) {
+        this.fanout = fanout;
+        this.userService = userService;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (port < 0) {
+            return;
+        }
+        server = new WebSocketServer(new InetSocketAddress(port)) {
+            @Override
+            public void onOpen(WebSocket conn, ClientHandshake handshake) {
+                String userId = handshake.getFieldValue("X-User-Id");
+                String authToken = handshake.getFieldValue("X-Auth-Token");
+                if (userId.isEmpty() || authToken.isEmpty()) {
+                    conn.close(CloseFrame.POLICY_VALIDATION, "X-User-Id and X-Auth-Token are required");
+                    return;
+                }
+                List<String> roomIds = roomIds(handshake.getResourceDescriptor());
+                // Looking up the user's rooms calls Rocket.Chat, so keep it off the selector thread
+                Thread.ofVirtual().name("push-open").start(() -> subscribe(conn, userId, authToken, roomIds));
+            }
+
+            @Override
+            public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+                fanout.unsubscribe(conn.getAttachment());
+            }
+
+            @Override
+            public void onMessage(WebSocket conn, String message) {
+                log.debug("Ignored message from push subscriber {}", conn.getRemoteSocketAddress());
+            }
+
+            @Override
+            public void onError(WebSocket conn, Exception ex) {
+                if (conn == null) {
+                    log.error("Push WebSocket server error", ex);
+                } else {
+                    log.debug("Push WebSocket error | Client: {}", conn.getRemoteSocketAddress(), ex);
+                }
+            }
+
+            @Override
+            public void onStart() {
+                log.info("Push WebSocket server listening on port {}", getPort());
+            }
+        };
+        server.setReuseAddr(true);
+        server.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (server != null) {
+            server.stop(1000);
+        }
+    }
+
+    private void subscribe(WebSocket conn, String userId, String authToken, List<String> roomIds) {
+        List<String> rooms;
+        try {
+            rooms = userService.liveEventRooms(userService.session(userId, authToken), roomIds);
+        } catch (RocketChatException e) {
+            log.warn("Push subscriber {} not authorized: {}", conn.getRemoteSocketAddress(), e.getMessage());
+            conn.close(CloseFrame.TRY_AGAIN_LATER, "Could not look up readable rooms");
+            return;
+        }
+        if (rooms != null && rooms.isEmpty()) {
+            conn.close(CloseFrame.POLICY_VALIDATION, "No readable rooms");
+            return;
+        }
+        LiveMessageFanout.Subscriber subscriber = fanout.subscribe(rooms, new SocketSink(conn));
+        if (subscriber == null) {
+            conn.close(CloseFrame.TRY_AGAIN_LATER, "Too many subscribers");
+            return;
+        }
+        conn.setAttachment(subscriber);
+        if (!conn.isOpen()) {
+            // Closed while the rooms were looked up, before onClose could see the subscriber
+            fanout.unsubscribe(subscriber);
+        }
+    }
+
+    static List<String> roomIds(String resourceDescriptor) {
+        List<String> roomIds = new ArrayList<>();
+        List<String> values = UriComponentsBuilder.fromUriString(resourceDescriptor).build().getQueryParams().get("roomId");
+        if (values != null) {
+            for (String value : values) {
+                for (String roomId : value.split(",")) {
+                    String decoded = URLDecoder.decode(roomId, StandardCharsets.UTF_8).trim();
+                    if (!decoded.isEmpty()) {
+                        roomIds.add(decoded);
+                    }
+                }
+            }
+        }
+        return roomIds;
+    }
+
+    private final class SocketSink implements LiveMessageFanout.Sink {
+
+        private final WebSocket conn;
+
+        SocketSink(WebSocket conn) {
+            this.conn = conn;
+        }
+
+        @Override
+        public void send(LiveMessageFanout.Event event) throws IOException {
+            try {
+                conn.send(event.envelope());
+            } catch (WebsocketNotConnectedException e) {
+                throw new IOException("Push subscriber disconnected", e);
+            }
+        }
+
+        @Override
+        public void heartbeat() throws IOException {
+            try {
+                conn.sendPing();
+            } catch (WebsocketNotConnectedException e) {
+                throw new IOException("Push subscriber disconnected", e);
+            }
+        }
+
+        @Override
+        public boolean writable() {
+            return !(conn instanceof WebSocketImpl impl) || impl.outQueue.size() < maxQueuedFrames;
+        }
+
+        @Override
+        public void close(String reason) {
+            if (conn.isOpen()) {
+                conn.close(CloseFrame.GOING_AWAY, reason == null ? "" : reason);
+            }
+        }
+    }
+}
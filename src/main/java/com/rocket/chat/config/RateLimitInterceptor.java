@@ -0,0 +1,62 @@
+package com.rocket.chat.config;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Feeds Rocket.Chat's {@code X-RateLimit-*} headers into the {@link AdaptiveTokenBucket}
+ * that paces the endpoint: message posts by default, plus any endpoint registered
+ * with {@link #pace}. Rocket.Chat limits each endpoint separately, so other
+ * endpoints are not observed.
+ */
+public class RateLimitInterceptor implements ClientHttpRequestInterceptor {
+
+    static final String REMAINING = "X-RateLimit-Remaining";
+    static final String RESET = "X-RateLimit-Reset";
+
+    private final Map<String, AdaptiveTokenBucket> buckets = new ConcurrentHashMap<>();
+
+    public RateLimitInterceptor(AdaptiveTokenBucket outboundBucket) {
+        pace("chat.postMessage", outboundBucket);
+        pace("chat.sendMessage", outboundBucket);
+    }
+
+    /** Routes the endpoint's rate-limit headers (e.g. {@code users.create}) to the bucket. */
+    public void pace(String endpoint, AdaptiveTokenBucket bucket) {
+        buckets.put(endpoint, bucket);
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        ClientHttpResponse response = execution.execute(request, body);
+        AdaptiveTokenBucket bucket = buckets.get(RestCallMetricsInterceptor.endpoint(request.getURI().getPath()));
+        if (bucket != null) {
+            HttpHeaders headers = response.getHeaders();
+            long remaining = parse(headers.getFirst(REMAINING));
+            long reset = parse(headers.getFirst(RESET));
+            if (response.getStatusCode().value() == 429 && remaining < 0) {
+                remaining = 0;
+            }
+            bucket.observe(remaining, reset);
+        }
+        return response;
+    }
+
+    static long parse(String value) {
+        if (value == null || value.isBlank()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
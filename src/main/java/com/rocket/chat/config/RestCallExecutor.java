@@ -0,0 +1,100 @@
+package com.rocket.chat.config;
+
+import com.rocket.chat.exception.RocketChatException;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Runs blocking Rocket.Chat REST calls on virtual threads for the async service
+ * variants, so a request waiting on Rocket.Chat holds no servlet thread. At most
+ * {@code max-in-flight} calls run at once; the rest wait for a permit instead of
+ * timing out on an HTTP pool lease. Past {@code max-queued} waiting calls new ones
+ * are rejected immediately.
+ */
+@Component
+public class RestCallExecutor {
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("rest-call-", 0).factory());
+    private final Semaphore permits;
+    private final int maxInFlight;
+    private final int maxQueued;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public RestCallExecutor(@Value("${rocketchat.async.max-in-flight:${rocketchat.http.max-connections-per-route:50}}") int maxInFlight,
+                            @Value("${rocketchat.async.max-queued:10000}") int maxQueued) {
+        this.maxInFlight = Math.max(maxInFlight, 1);
+        this.maxQueued = maxQueued;
+        this.permits = new Semaphore(this.maxInFlight, true);
+    }
+
+    /** Runs the call on a virtual thread once a permit is free. */
+    public <T> CompletableFuture<T> submit(Supplier<T> call) {
+        if (waiting.incrementAndGet() > maxQueued) {
+            waiting.decrementAndGet();
+            rejected.incrementAndGet();
+            return CompletableFuture.failedFuture(new RocketChatException("Too many queued Rocket.Chat calls"));
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> run(call, result));
+        } catch (RejectedExecutionException e) {
+            waiting.decrementAndGet();
+            result.completeExceptionally(new RocketChatException("REST call executor is shut down", e));
+        }
+        return result;
+    }
+
+    private <T> void run(Supplier<T> call, CompletableFuture<T> result) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            waiting.decrementAndGet();
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(new RocketChatException("Interrupted waiting for a REST call slot", e));
+            return;
+        }
+        waiting.decrementAndGet();
+        try {
+            T value = call.get();
+            completed.incrementAndGet();
+            result.complete(value);
+        } catch (Throwable e) {
+            failed.incrementAndGet();
+            result.completeExceptionally(e);
+        } finally {
+            permits.release();
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("maxInFlight", maxInFlight);
+        snapshot.put("inFlight", maxInFlight - permits.availablePermits());
+        snapshot.put("waiting", waiting.get());
+        snapshot.put("maxQueued", maxQueued);
+        snapshot.put("completed", completed.get());
+        snapshot.put("failed", failed.get());
+        snapshot.put("rejected", rejected.get());
+        return snapshot;
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,84 @@
+package com.rocket.chat.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every Rocket.Chat REST call as {@code rocketchat.rest}, tagged with the
+ * API method (the path after {@code /api/v1/}, e.g. {@code chat.postMessage}),
+ * HTTP method, status and outcome. Error counts are the timer counts with a
+ * non-SUCCESS outcome; transport failures are tagged with the exception type.
+ */
+public class RestCallMetricsInterceptor implements ClientHttpRequestInterceptor {
+
+    private static final String API_PREFIX = "/api/v1/";
+
+    private final MeterRegistry registry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public RestCallMetricsInterceptor(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        String endpoint = endpoint(request.getURI().getPath());
+        String method = request.getMethod().name();
+        long start = System.nanoTime();
+        try {
+            ClientHttpResponse response = execution.execute(request, body);
+            int status = response.getStatusCode().value();
+            timer(endpoint, method, Integer.toString(status), outcome(status), "none")
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            timer(endpoint, method, "IO_ERROR", "UNKNOWN", e.getClass().getSimpleName())
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    private Timer timer(String endpoint, String method, String status, String outcome, String exception) {
+        String key = endpoint + ' ' + method + ' ' + status + ' ' + exception;
+        Timer timer = timers.get(key);
+        if (timer != null) {
+            return timer;
+        }
+        return timers.computeIfAbsent(key, k -> Timer.builder("rocketchat.rest")
+                .description("Rocket.Chat REST call latency")
+                .tag("endpoint", endpoint)
+                .tag("method", method)
+                .tag("status", status)
+                .tag("outcome", outcome)
+                .tag("exception", exception)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(registry));
+    }
+
+    private static String outcome(int status) {
+        if (status >= 500) {
+            return "SERVER_ERROR";
+        }
+        return status >= 400 ? "CLIENT_ERROR" : "SUCCESS";
+    }
+
+    static String endpoint(String path) {
+        if (path == null) {
+            return "unknown";
+        }
+        int start = path.indexOf(API_PREFIX);
+        return start < 0 ? path : path.substring(start + API_PREFIX.length());
+    }
+}
@@ -1,13 +1,126 @@
 package com.rocket.chat.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.DefaultConnectionKeepAliveStrategy;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
+
 @Configuration
 public class RocketChatConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(RocketChatConfig.class);
+
+    @Value("${rocketchat.http.max-connections:200}")
+    private int maxConnections;
+
+    @Value("${rocketchat.http.max-connections-per-route:50}")
+    private int maxConnectionsPerRoute;
+
+    @Value("${rocketchat.http.connect-timeout:2s}")
+    private Duration connectTimeout;
+
+    @Value("${rocketchat.http.read-timeout:10s}")
+    private Duration readTimeout;
+
+    @Value("${rocketchat.http.pool-acquire-timeout:1s}")
+    private Duration poolAcquireTimeout;
+
+    @Value("${rocketchat.http.keep-alive:30s}")
+    private Duration keepAlive;
+
+    @Value("${rocketchat.http.idle-eviction:60s}")
+    private Duration idleEviction;
+
+    @Value("${rocketchat.http.gzip:true}")
+    private boolean gzip;
+
+    @Value("${rocketchat.http.http2:false}")
+    private boolean http2;
+
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public PoolingHttpClientConnectionManager rocketChatConnectionManager() {
+        ConnectionConfig connectionConfig = ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.of(connectTimeout))
+                .setSocketTimeout(Timeout.of(readTimeout))
+                .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                .build();
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setDefaultConnectionConfig(connectionConfig)
+                .build();
+    }
+
+    @Bean
+    public CloseableHttpClient rocketChatHttpClient(PoolingHttpClientConnectionManager connectionManager) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.of(poolAcquireTimeout))
+                .setResponseTimeout(Timeout.of(readTimeout))
+                .build();
+        HttpClientBuilder builder = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                // Cap the server-advertised keep-alive so pooled connections are recycled predictably
+                .setKeepAliveStrategy((response, context) -> DefaultConnectionKeepAliveStrategy.INSTANCE
+                        .getKeepAliveDuration(response, context).min(TimeValue.of(keepAlive)))
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.of(idleEviction));
+        if (!gzip) {
+            builder.disableContentCompression();
+        }
+        return builder.build();
+    }
+
+    @Bean
+    public RateLimitInterceptor rateLimitInterceptor(AdaptiveTokenBucket outboundBucket) {
+        return new RateLimitInterceptor(outboundBucket);
+    }
+
+    @Bean
+    public RestTemplate restTemplate(CloseableHttpClient rocketChatHttpClient,
+                                     MeterRegistry meterRegistry,
+                                     ConcurrencyLimitInterceptor concurrencyLimitInterceptor,
+                                     RateLimitInterceptor rateLimitInterceptor) {
+        RestTemplate restTemplate = new RestTemplate(requestFactory(rocketChatHttpClient));
+        // Outermost, so the REST timers measure Rocket.Chat rather than time queued for a slot
+        restTemplate.getInterceptors().add(concurrencyLimitInterceptor);
+        restTemplate.getInterceptors().add(new RestCallMetricsInterceptor(meterRegistry));
+        restTemplate.getInterceptors().add(rateLimitInterceptor);
+        return restTemplate;
+    }
+
+    private ClientHttpRequestFactory requestFactory(CloseableHttpClient httpClient) {
+        if (http2) {
+            // HttpClient 5 classic is HTTP/1.1 only, so HTTP/2 goes through the JDK client and its internal pool
+            log.info("Using JDK HTTP/2 transport for Rocket.Chat REST calls");
+            HttpClient jdkClient = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .connectTimeout(connectTimeout)
+                    .build();
+            JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(jdkClient);
+            factory.setReadTimeout(readTimeout);
+            return factory;
+        }
+        log.info("Using pooled HTTP/1.1 transport | maxConnections={}, maxPerRoute={}", maxConnections, maxConnectionsPerRoute);
+        return new HttpComponentsClientHttpRequestFactory(httpClient);
     }
 }
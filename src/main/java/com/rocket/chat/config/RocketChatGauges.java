@@ -0,0 +1,75 @@
+package com.rocket.chat.config;
+
+import com.rocket.chat.service.InactivityTracker;
+import com.rocket.chat.service.InboundMessagePipeline;
+import com.rocket.chat.service.LiveMessageFanout;
+import com.rocket.chat.service.OutboundMessageScheduler;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes the queue and pool figures already exposed under {@code /stats}
+ * as gauges, so they are scraped alongside the hot-path meters.
+ */
+@Component
+public class RocketChatGauges implements MeterBinder {
+
+    private final HttpPoolMonitor httpPoolMonitor;
+    private final InboundMessagePipeline inboundPipeline;
+    private final InactivityTracker inactivityTracker;
+    private final OutboundMessageScheduler outboundScheduler;
+    private final ConcurrencyLimitInterceptor concurrencyLimits;
+    private final LiveMessageFanout fanout;
+
+    public RocketChatGauges(HttpPoolMonitor httpPoolMonitor,
+                            InboundMessagePipeline inboundPipeline,
+                            InactivityTracker inactivityTracker,
+                            OutboundMessageScheduler outboundScheduler,
+                            ConcurrencyLimitInterceptor concurrencyLimits,
+                            LiveMessageFanout fanout) {
+        this.httpPoolMonitor = httpPoolMonitor;
+        this.inboundPipeline = inboundPipeline;
+        this.inactivityTracker = inactivityTracker;
+        this.outboundScheduler = outboundScheduler;
+        this.concurrencyLimits = concurrencyLimits;
+        this.fanout = fanout;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("rocketchat.http.pool.leased", httpPoolMonitor, monitor -> monitor.totalStats().getLeased())
+                .register(registry);
+        Gauge.builder("rocketchat.http.pool.pending", httpPoolMonitor, monitor -> monitor.totalStats().getPending())
+                .register(registry);
+        Gauge.builder("rocketchat.http.pool.utilization", httpPoolMonitor, HttpPoolMonitor::utilization)
+                .register(registry);
+        Gauge.builder("rocketchat.inbound.depth", inboundPipeline, InboundMessagePipeline::depth)
+                .description("Messages queued for processing across all partitions")
+                .register(registry);
+        Gauge.builder("rocketchat.sessions.tracked", inactivityTracker, InactivityTracker::trackedRooms)
+                .description("Rooms on the inactivity wheel")
+                .register(registry);
+        Gauge.builder("rocketchat.outbound.queued", outboundScheduler, OutboundMessageScheduler::queued)
+                .description("Outgoing messages waiting for a rate-limit token or in flight")
+                .register(registry);
+        Gauge.builder("rocketchat.push.subscribers", fanout, LiveMessageFanout::subscriberCount)
+                .description("Clients connected to the SSE and WebSocket message push")
+                .register(registry);
+        for (ConcurrencyLimitInterceptor.Kind kind : ConcurrencyLimitInterceptor.Kind.values()) {
+            AimdLimit limit = concurrencyLimits.limit(kind);
+            String tag = kind.name().toLowerCase();
+            Gauge.builder("rocketchat.rest.limit", limit, AimdLimit::limit)
+                    .description("Adaptive limit on concurrent Rocket.Chat REST calls")
+                    .tag("kind", tag)
+                    .register(registry);
+            Gauge.builder("rocketchat.rest.limit.inflight", limit, AimdLimit::inFlight)
+                    .tag("kind", tag)
+                    .register(registry);
+            Gauge.builder("rocketchat.rest.limit.waiting", limit, AimdLimit::waiting)
+                    .tag("kind", tag)
+                    .register(registry);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.rocket.chat.config;
+
+import com.rocket.chat.dto.RoomMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hot-path meters for the WebSocket client and message processing. Meters are
+ * resolved once and cached, so recording on the per-frame path does not go
+ * through the registry lookup.
+ */
+@Component
+public class RocketChatMetrics {
+
+    private static final String OTHER = "other";
+    private static final String NONE = "none";
+
+    private final MeterRegistry registry;
+    private final Map<String, Map<String, Counter>> frameCounters = new ConcurrentHashMap<>();
+    private final Map<String, Timer> methodTimers = new ConcurrentHashMap<>();
+    private final Timer decodeTimer;
+    private final Timer pingRtt;
+    private final Timer autoReplyLatency;
+    private final Counter reconnects;
+    private final Counter reconnectFailures;
+    private final Counter decodeErrors;
+
+    public RocketChatMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.decodeTimer = Timer.builder("rocketchat.ws.frame.decode")
+                .description("Time to decode one inbound DDP frame")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(500))
+                .maximumExpectedValue(Duration.ofMillis(10))
+                .register(registry);
+        this.pingRtt = Timer.builder("rocketchat.ws.ping.rtt")
+                .description("Round trip between a DDP ping and its pong")
+                .publishPercentileHistogram()
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(registry);
+        this.autoReplyLatency = Timer.builder("rocketchat.autoreply.latency")
+                .description("Message received on the socket to auto-reply posted")
+                .publishPercentileHistogram()
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(registry);
+        this.reconnects = Counter.builder("rocketchat.ws.reconnects")
+                .tag("outcome", "success")
+                .register(registry);
+        this.reconnectFailures = Counter.builder("rocketchat.ws.reconnects")
+                .tag("outcome", "failure")
+                .register(registry);
+        this.decodeErrors = Counter.builder("rocketchat.ws.frame.errors")
+                .description("Frames that could not be decoded or handled")
+                .register(registry);
+    }
+
+    public MeterRegistry registry() {
+        return registry;
+    }
+
+    /** Counts one inbound frame by DDP {@code msg} type and collection. */
+    public void frame(String type, String collection) {
+        String typeTag = type == null ? OTHER : type;
+        String collectionTag = collection == null ? NONE : collection;
+        Map<String, Counter> byCollection = frameCounters.get(typeTag);
+        if (byCollection == null) {
+            byCollection = frameCounters.computeIfAbsent(typeTag, k -> new ConcurrentHashMap<>());
+        }
+        Counter counter = byCollection.get(collectionTag);
+        if (counter == null) {
+            counter = byCollection.computeIfAbsent(collectionTag, k -> Counter.builder("rocketchat.ws.frames")
+                    .description("Inbound DDP frames")
+                    .tag("type", typeTag)
+                    .tag("collection", collectionTag)
+                    .register(registry));
+        }
+        counter.increment();
+    }
+
+    public void decoded(long startNanos) {
+        decodeTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void decodeFailed() {
+        decodeErrors.increment();
+    }
+
+    public void pingRoundTrip(long sentAtNanos) {
+        pingRtt.record(System.nanoTime() - sentAtNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** Times one DDP method call from send to result, by method and outcome. */
+    public void methodCall(String method, long startNanos, boolean success) {
+        String key = success ? method : method + "!";
+        Timer timer = methodTimers.get(key);
+        if (timer == null) {
+            timer = methodTimers.computeIfAbsent(key, k -> Timer.builder("rocketchat.ws.method")
+                    .description("DDP method call latency over the WebSocket")
+                    .tag("method", method)
+                    .tag("outcome", success ? "SUCCESS" : "ERROR")
+                    .publishPercentileHistogram()
+                    .maximumExpectedValue(Duration.ofSeconds(30))
+                    .register(registry));
+        }
+        timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void reconnected(boolean success) {
+        (success ? reconnects : reconnectFailures).increment();
+    }
+
+    /** Records receive-to-reply latency; messages that did not come off the socket are skipped. */
+    public void autoReplyPosted(RoomMessage message) {
+        if (message.getReceivedAtNanos() > 0) {
+            autoReplyLatency.record(System.nanoTime() - message.getReceivedAtNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -2,242 +2,588 @@ package com.rocket.chat.config;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.rocket.chat.service.UserService;
+import com.rocket.chat.dto.RoomMessage;
+import com.rocket.chat.exception.RocketChatException;
+import com.rocket.chat.service.InboundMessagePipeline;
+import com.rocket.chat.service.LiveMessageFanout;
+import com.rocket.chat.service.MessageDedupFilter;
+import com.rocket.chat.service.MissedMessageBackfill;
+import com.rocket.chat.service.ReadResponseCache;
+import com.rocket.chat.service.RoomIdCache;
 import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
 import org.java_websocket.handshake.ServerHandshake;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * One DDP connection. Each connection logs in on its own and follows the set of
+ * rooms the {@link RocketChatWebSocketManager} assigns to it; rooms can be added
+ * and removed while connected. Outgoing sub/unsub frames go through an outbox
+ * drained at a fixed rate, so bulk changes and resubscribing after a reconnect
+ * do not flood the server. One connection at a time also carries the per-user
+ * notification streams.
+ *
+ * <p>DDP method calls are multiplexed over the socket: each call gets the next
+ * numeric ID and a pending {@link CompletableFuture} that the matching
+ * {@code result} frame completes, so any number of calls can be in flight.
+ *
+ * <p>A dropped connection is reconnected with jittered, capped exponential backoff
+ * for as long as the client runs, and logs in again with the resume token from the
+ * previous login. Rooms are backfilled by {@link MissedMessageBackfill} once their
+ * subscriptions are acknowledged again.
+ */
 public class RocketChatWebSocketClient extends WebSocketClient {
 
+    /** Connection lifecycle callbacks, invoked on the socket thread. */
+    public interface ConnectionListener {
+
+        void onReady(RocketChatWebSocketClient client);
+
+        void onLost(RocketChatWebSocketClient client);
+    }
+
     private static final Logger log = LoggerFactory.getLogger(RocketChatWebSocketClient.class);
     private static final ObjectMapper objectMapper = new ObjectMapper();
-    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private static final DdpFrameDecoder frameDecoder = new DdpFrameDecoder(objectMapper);
+    private static final DdpFrameEncoder frameEncoder = new DdpFrameEncoder(objectMapper);
+    private static final String ROOM_MESSAGES_STREAM = "stream-room-messages";
+    private static final String NOTIFY_USER_STREAM = "stream-notify-user";
 
     private static final int NORMAL_CLOSURE_CODE = 1000;
-    private static final int PING_INTERVAL = 30;
-    private static final int MAX_RETRIES = 5;
+    private static final long RECONNECT_BASE_DELAY_MS = 1_000;
+    private static final long RECONNECT_MAX_DELAY_MS = 60_000;
+    static final long OUTBOX_TICK_MS = 100;
 
-    private final UserService userService;
+    private final int shard;
+    private final InboundMessagePipeline inboundPipeline;
+    private final MissedMessageBackfill backfill;
+    private final RoomIdCache roomIdCache;
+    private final ReadResponseCache readCache;
+    private final LiveMessageFanout fanout;
+    private final RocketChatMetrics metrics;
+    private final ConnectionSupervisor supervisor;
     private final String username;
-    private final String password;
-    private final String roomId;
+    private final String passwordDigest;
+    private final ConnectionListener listener;
+    private final Set<String> rooms = ConcurrentHashMap.newKeySet();
+    private final SubscriptionRegistry subscriptions = new SubscriptionRegistry();
+    private final Queue<String> outbox = new ConcurrentLinkedQueue<>();
+    private final int framesPerTick;
+    private final AtomicLong methodIds = new AtomicLong();
+    private final Map<String, CompletableFuture<JsonNode>> pendingCalls = new ConcurrentHashMap<>();
+    private final Duration methodTimeout;
+    private final int maxPendingCalls;
+    private final List<String> notifySubscriptions = new CopyOnWriteArrayList<>();
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong roomMessages = new AtomicLong();
 
-    private boolean shouldReconnect = true;
-    private int reconnectAttempts = 0;
+    private final AtomicBoolean reconnectScheduled = new AtomicBoolean();
+
+    private volatile boolean shouldReconnect = true;
+    private volatile int reconnectAttempts = 0;
+    private volatile boolean resuming;
+    private volatile boolean loggedIn;
+    private volatile boolean userNotify;
 
     private String sessionId;
     private String userId;
     private String authToken;
 
     public RocketChatWebSocketClient(String wsUrl,
-                                     UserService userService,
+                                     int shard,
+                                     InboundMessagePipeline inboundPipeline,
+                                     MissedMessageBackfill backfill,
+                                     RoomIdCache roomIdCache,
+                                     ReadResponseCache readCache,
+                                     LiveMessageFanout fanout,
+                                     RocketChatMetrics metrics,
+                                     ConnectionSupervisor supervisor,
                                      String username,
                                      String password,
-                                     String roomId) throws Exception {
+                                     int subscriptionFramesPerSecond,
+                                     Duration methodTimeout,
+                                     int maxPendingCalls,
+                                     ConnectionListener listener) throws Exception {
         super(new URI(wsUrl));
-        this.userService = userService;
+        this.shard = shard;
+        this.inboundPipeline = inboundPipeline;
+        this.backfill = backfill;
+        this.roomIdCache = roomIdCache;
+        this.readCache = readCache;
+        this.fanout = fanout;
+        this.metrics = metrics;
+        this.supervisor = supervisor;
         this.username = username;
-        this.password = password;
-        this.roomId = roomId;
-        scheduler.scheduleAtFixedRate(this::sendPing, 0, PING_INTERVAL, TimeUnit.SECONDS);
+        this.passwordDigest = sha256(password);
+        this.listener = listener;
+        this.framesPerTick = (int) Math.max(1, subscriptionFramesPerSecond * OUTBOX_TICK_MS / 1000);
+        this.methodTimeout = methodTimeout;
+        this.maxPendingCalls = maxPendingCalls;
+    }
+
+    public int getShard() {
+        return shard;
+    }
+
+    public boolean isLoggedIn() {
+        return loggedIn;
+    }
+
+    public boolean isUserNotify() {
+        return userNotify;
+    }
+
+    /** Snapshot of the rooms this connection follows. */
+    public Set<String> getRooms() {
+        return Set.copyOf(rooms);
+    }
+
+    public int roomCount() {
+        return rooms.size();
+    }
+
+    /**
+     * Follows a room. The sub frame is queued now if logged in, otherwise after login;
+     * a room whose subscription was rejected is retried.
+     */
+    public void subscribeRoom(String roomId) {
+        synchronized (subscriptions) {
+            if (!rooms.add(roomId) && !subscriptions.isFailed(roomId)) {
+                return;
+            }
+            if (loggedIn) {
+                queueSubscription(roomId);
+            }
+        }
+    }
+
+    public void unsubscribeRoom(String roomId) {
+        synchronized (subscriptions) {
+            rooms.remove(roomId);
+            SubscriptionRegistry.Subscription subscription = subscriptions.remove(roomId);
+            if (subscription != null && loggedIn) {
+                outbox.add(frameEncoder.unsubscribe(subscription.subId()));
+            }
+        }
+        backfill.onSubscriptionLost(roomId);
+    }
+
+    /**
+     * Calls a DDP method and returns a future for its result. The future fails with a
+     * {@link RocketChatException} when the server returns an error, the connection is
+     * not logged in or closes first, or too many calls are pending, and with a
+     * {@link TimeoutException} after the method timeout.
+     */
+    public CompletableFuture<JsonNode> call(String method, Object... params) {
+        if (!loggedIn) {
+            return CompletableFuture.failedFuture(new RocketChatException("Connection " + shard + " is not logged in"));
+        }
+        if (pendingCalls.size() >= maxPendingCalls) {
+            return CompletableFuture.failedFuture(new RocketChatException("Too many pending method calls on connection " + shard));
+        }
+        String id = Long.toString(methodIds.incrementAndGet());
+        CompletableFuture<JsonNode> future = new CompletableFuture<>();
+        pendingCalls.put(id, future);
+        long start = System.nanoTime();
+        future.orTimeout(methodTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((result, error) -> {
+                    pendingCalls.remove(id);
+                    metrics.methodCall(method, start, error == null);
+                });
+        try {
+            send(frameEncoder.method(id, method, params));
+        } catch (Exception e) {
+            future.completeExceptionally(new RocketChatException("Failed to send method " + method, e));
+        }
+        return future;
+    }
+
+    public int pendingCalls() {
+        return pendingCalls.size();
+    }
+
+    SubscriptionRegistry.Subscription subscription(String roomId) {
+        return subscriptions.get(roomId);
+    }
+
+    /** Moves the per-user notification streams onto or off this connection. */
+    public void setUserNotify(boolean enabled) {
+        if (userNotify == enabled) {
+            return;
+        }
+        userNotify = enabled;
+        if (!loggedIn || !isOpen()) {
+            return;
+        }
+        if (enabled) {
+            subscribeToUserNotify();
+        } else {
+            for (String subId : notifySubscriptions) {
+                send(frameEncoder.unsubscribe(subId));
+            }
+            notifySubscriptions.clear();
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("shard", shard);
+        snapshot.put("open", isOpen());
+        snapshot.put("loggedIn", loggedIn);
+        snapshot.put("userNotify", userNotify);
+        snapshot.put("rooms", rooms.size());
+        snapshot.put("subscriptions", subscriptions.counts());
+        snapshot.put("outbox", outbox.size());
+        snapshot.put("pendingCalls", pendingCalls.size());
+        snapshot.put("frames", frames.get());
+        snapshot.put("roomMessages", roomMessages.get());
+        return snapshot;
     }
 
     @Override
     public void onOpen(ServerHandshake handshakeData) {
         log.info("WebSocket connection opened");
-        send(buildConnectPayload());
+        send(DdpFrameEncoder.CONNECT);
     }
 
     @Override
     public void onMessage(String message) {
         try {
-            JsonNode json = objectMapper.readTree(message);
-            String msgType = json.path("msg").asText();
+            frames.incrementAndGet();
+            long start = System.nanoTime();
+            DdpFrame frame = frameDecoder.decode(message);
+            metrics.decoded(start);
+            metrics.frame(frame.getType(), frame.getCollection());
+            String msgType = frame.getType() == null ? "" : frame.getType();
 
             switch (msgType) {
                 case "connected" -> {
-                    sessionId = json.path("session").asText();
+                    sessionId = frame.getSession();
                     log.info("Connected to WebSocket | Session ID: {}", sessionId);
-                    loginWithCredentials();
+                    login();
                 }
-                case "result" -> handleResultMessage(json);
-                case "changed" -> handleChangedMessage(json);
+                case "result" -> handleResultMessage(frame, message);
+                case "changed" -> handleChangedMessage(frame, message);
+                case "ready" -> handleReady(frame);
+                case "nosub" -> handleNosub(frame);
                 case "ping" -> {
-                    send("{\"msg\":\"pong\"}");
+                    send(DdpFrameEncoder.PONG);
                     log.debug("Ping received | Pong sent");
                 }
-                default -> log.debug("Unhandled WebSocket message type: {}", json.toPrettyString());
+                case "pong" -> supervisor.pongReceived(this);
+                default -> log.debug("Unhandled WebSocket message type: {}", msgType);
             }
         } catch (Exception e) {
+            metrics.decodeFailed();
             log.error("Error parsing WebSocket message:\n{}\nException: ", message, e);
         }
     }
 
-    private void handleResultMessage(JsonNode json) {
-        String id = json.path("id").asText();
-        JsonNode result = json.path("result");
+    private void handleResultMessage(DdpFrame frame, String rawFrame) {
+        String id = frame.getId();
+        JsonNode result = frame.getResult();
 
         if ("login".equals(id)) {
             if (result == null || result.isNull()) {
-                log.error("Login failed | Response: {}", json.toPrettyString());
+                if (resuming) {
+                    // Token expired or revoked; fall back to the password
+                    log.warn("Resume login rejected on connection {}; logging in with credentials", shard);
+                    authToken = null;
+                    loginWithCredentials();
+                    return;
+                }
+                log.error("Login failed | Response: {}", rawFrame);
                 return;
             }
+            resuming = false;
+            reconnectAttempts = 0;
             authToken = result.path("token").asText(null);
             userId = result.path("id").asText(null);
             if (authToken == null || userId == null) {
-                log.error("Login successful but missing auth fields | Response: {}", json.toPrettyString());
+                log.error("Login successful but missing auth fields | Response: {}", rawFrame);
                 return;
             }
-            log.info("Login successful | User ID: {}, Token: {}", userId, authToken);
-            subscribeToRoom();
-            subscribeToUserNotify();
+            log.info("Login successful | Connection: {}, User ID: {}, Token: {}", shard, userId, authToken);
+            synchronized (subscriptions) {
+                loggedIn = true;
+                subscriptions.clear();
+                outbox.clear();
+                for (String roomId : rooms) {
+                    queueSubscription(roomId);
+                }
+            }
+            if (userNotify) {
+                subscribeToUserNotify();
+            }
+            listener.onReady(this);
         } else {
-            log.debug("Received result for ID {} | Payload: {}", id, json.toPrettyString());
+            CompletableFuture<JsonNode> call = id == null ? null : pendingCalls.remove(id);
+            if (call == null) {
+                log.debug("Received result for unknown ID {} | Payload: {}", id, rawFrame);
+                return;
+            }
+            JsonNode error = frame.getError();
+            if (error != null) {
+                call.completeExceptionally(new DdpMethodException(error.path("error").asText(null),
+                        error.path("reason").asText(null), error.get("details")));
+            } else {
+                call.complete(result);
+            }
         }
     }
 
-    private void handleChangedMessage(JsonNode json) {
-        String collection = json.path("collection").asText();
+    void handleChangedMessage(DdpFrame frame, String rawFrame) {
+        String collection = frame.getCollection();
 
-        if (!"stream-room-messages".equals(collection)) {
+        if (DdpFrameDecoder.NOTIFY_USER_COLLECTION.equals(collection) && frame.getRoomChange() != null) {
+            handleRoomChange(frame.getRoomChange());
+            return;
+        }
+        if (!DdpFrameDecoder.ROOM_MESSAGES_COLLECTION.equals(collection)) {
             log.debug("Ignored 'changed' message | Collection: {}", collection);
             return;
         }
-        JsonNode fields = json.path("fields");
-        JsonNode args = fields.path("args");
-
-        if (args.isArray() && !args.isEmpty()) {
-            JsonNode messageData = args.get(0);
+        RoomMessage roomMessage = frame.getRoomMessage();
 
-            String msg = messageData.path("msg").asText(null);
-            String roomId = messageData.path("rid").asText(null);
-            String sender = messageData.path("u").path("username").asText(null);
+        if (roomMessage != null) {
+            String msg = roomMessage.getText();
+            String roomId = roomMessage.getRoomId();
+            String sender = roomMessage.getSender();
 
             if (msg != null && roomId != null && sender != null) {
+                MessageDedupFilter.Verdict verdict = backfill.classify(roomMessage);
+                if (verdict != MessageDedupFilter.Verdict.DUPLICATE) {
+                    // Patch or drop cached history before anyone can read the room again
+                    readCache.onRoomMessage(roomMessage, verdict == MessageDedupFilter.Verdict.NEW);
+                    fanout.publish(roomMessage, verdict == MessageDedupFilter.Verdict.NEW);
+                }
+                if (verdict != MessageDedupFilter.Verdict.NEW) {
+                    log.debug("{} of message {} in room {} ignored", verdict, roomMessage.getId(), roomId);
+                    return;
+                }
                 log.info("New message | Room: {} | From: {} | Message: {}", roomId, sender, msg);
-                userService.processReceivedMessage(roomId, sender, msg);
+                roomMessages.incrementAndGet();
+                inboundPipeline.submit(roomMessage);
             } else {
-                log.warn("Incomplete message data received | Data: {}", messageData.toPrettyString());
+                log.warn("Incomplete message data received | Data: {}", rawFrame);
             }
         } else {
-            log.debug("No 'args' found in 'changed' message | Payload: {}", json.toPrettyString());
+            log.debug("No 'args' found in 'changed' message | Payload: {}", rawFrame);
+        }
+    }
+
+    private void handleReady(DdpFrame frame) {
+        for (String subId : frame.getSubs()) {
+            String roomId = subscriptions.ready(subId);
+            if (roomId != null) {
+                log.debug("Subscription ready | Room: {}, Connection: {}", roomId, shard);
+                backfill.onSubscribed(roomId);
+            }
+        }
+    }
+
+    private void handleNosub(DdpFrame frame) {
+        JsonNode error = frame.getError();
+        String reason = error == null ? null : error.path("reason").asText(error.path("error").asText(null));
+        SubscriptionRegistry.Subscription subscription = subscriptions.failed(frame.getId(), reason);
+        if (subscription != null) {
+            log.warn("Subscription rejected | Room: {}, Connection: {}, Reason: {}", subscription.roomId(), shard, reason);
+            backfill.onSubscriptionLost(subscription.roomId());
+        } else {
+            log.debug("Subscription {} stopped", frame.getId());
+        }
+    }
+
+    private void handleRoomChange(RoomChangeEvent change) {
+        log.debug("Room {} | ID: {}, Name: {}", change.getAction(), change.getRoomId(), change.getRoomName());
+        if (change.getRoomId() != null) {
+            roomIdCache.invalidateRoomId(change.getRoomId());
+        }
+        if (!"updated".equals(change.getAction())) {
+            // A room joined or left changes the direct message list; "updated" fires on every message
+            readCache.invalidateDirectLists();
+        }
+        if (change.getRoomName() != null) {
+            if ("removed".equals(change.getAction())) {
+                roomIdCache.invalidate(change.getRoomName());
+            } else if (change.getRoomId() != null) {
+                roomIdCache.put(change.getRoomName(), change.getRoomId());
+            }
         }
     }
 
     @Override
     public void onClose(int code, String reason, boolean remote) {
-        log.warn("WebSocket closed (code={}): {}", code, reason);
+        log.warn("WebSocket closed (connection={}, code={}): {}", shard, code, reason);
+        boolean wasLoggedIn = loggedIn;
+        synchronized (subscriptions) {
+            loggedIn = false;
+            subscriptions.clear();
+            outbox.clear();
+        }
+        notifySubscriptions.clear();
+        failPendingCalls(new RocketChatException("Connection " + shard + " closed"));
+        if (wasLoggedIn) {
+            rooms.forEach(backfill::onSubscriptionLost);
+            listener.onLost(this);
+        }
         if (shouldReconnect && code != NORMAL_CLOSURE_CODE) {
             attemptReconnect();
         }
     }
 
+    /** Closes the connection for good; no reconnect is attempted afterwards. */
+    public void shutdown() {
+        shouldReconnect = false;
+        supervisor.unregister(this);
+        close();
+    }
+
     @Override
     public void onError(Exception ex) {
         log.error("WebSocket error", ex);
     }
 
+    /** Resumes the previous session when we have its token, otherwise logs in with the password. */
+    private void login() {
+        if (authToken != null) {
+            resuming = true;
+            send(frameEncoder.resume(authToken));
+        } else {
+            loginWithCredentials();
+        }
+    }
+
     private void loginWithCredentials() {
-        String hashedPassword = sha256(password);
-        String loginPayload = String.format("""
-            {
-              "msg": "method",
-              "method": "login",
-              "id": "login",
-              "params": [
-                {
-                  "user": { "username": "%s" },
-                  "password": { "digest": "%s", "algorithm": "sha-256" }
-                }
-              ]
+        resuming = false;
+        send(frameEncoder.login(username, passwordDigest));
+    }
+
+    private void failPendingCalls(RocketChatException cause) {
+        for (String id : List.copyOf(pendingCalls.keySet())) {
+            CompletableFuture<JsonNode> call = pendingCalls.remove(id);
+            if (call != null) {
+                call.completeExceptionally(cause);
             }
-            """, username, hashedPassword);
-        send(loginPayload);
+        }
+    }
+
+    private void queueSubscription(String roomId) {
+        SubscriptionRegistry.Subscription subscription = subscriptions.register(roomId);
+        outbox.add(frameEncoder.subscribe(subscription.subId(), ROOM_MESSAGES_STREAM, roomId));
     }
 
-    private void subscribeToRoom() {
-        String subId = UUID.randomUUID().toString();
-        String subscribePayload = String.format("""
-            {
-              "msg": "sub",
-              "id": "%s",
-              "name": "stream-room-messages",
-              "params": [ "%s", false ]
+    /** Sends at most {@code framesPerTick} queued sub/unsub frames; run by the supervisor every tick. */
+    void drainOutbox() {
+        if (!loggedIn) {
+            return;
+        }
+        try {
+            for (int i = 0; i < framesPerTick; i++) {
+                String frame = outbox.poll();
+                if (frame == null) {
+                    return;
+                }
+                send(frame);
             }
-            """, subId, roomId);
-        send(subscribePayload);
-        log.info("Subscribed to room: {}", roomId);
+        } catch (WebsocketNotConnectedException e) {
+            // Login after the reconnect queues every room again
+            log.debug("Connection {} closed while draining subscriptions", shard);
+        } catch (Exception e) {
+            log.error("Failed to send subscription frame on connection {}", shard, e);
+        }
     }
 
     private void subscribeToUserNotify() {
         if (userId == null) return;
 
-        String subId = UUID.randomUUID().toString();
-        String payload = String.format("""
-        {
-          "msg": "sub",
-          "id": "%s",
-          "name": "stream-notify-user",
-          "params": [ "%s/message", false ]
+        for (String event : new String[] {"message", "rooms-changed"}) {
+            String subId = UUID.randomUUID().toString();
+            notifySubscriptions.add(subId);
+            send(frameEncoder.subscribe(subId, NOTIFY_USER_STREAM, userId + "/" + event));
         }
-        """, subId, userId);
-        send(payload);
-        log.info("Subscribed to direct messages for user: {}", userId);
+        log.info("Subscribed to direct messages and room changes for user: {}", userId);
     }
 
-    private String buildConnectPayload() {
-        return """
-            {
-              "msg": "connect",
-              "version": "1",
-              "support": ["1", "pre2", "pre1"]
-            }
-            """;
+    /** Sends a DDP ping; the supervisor times the pong. */
+    void sendHeartbeat() {
+        send(DdpFrameEncoder.PING);
     }
 
-    public void sendPing() {
-        if (isOpen()) {
-            send("{\"msg\":\"ping\"}");
-        } else {
-            log.warn("WebSocket is closed. Attempting reconnect...");
+    /** Starts reconnecting a closed connection unless an attempt is already under way. */
+    void reconnectIfClosed() {
+        if (shouldReconnect && !isOpen()) {
             attemptReconnect();
         }
     }
 
+    /**
+     * Schedules one reconnect attempt unless one is already pending. {@link #onClose}
+     * is a no-op while an attempt is pending, so a failed (or interrupted) attempt
+     * schedules the next itself from {@link #reconnectOnce}, and retries never stop;
+     * the attempt counter is reset by a successful login.
+     */
     private void attemptReconnect() {
-        if (reconnectAttempts >= MAX_RETRIES) {
-            log.error("Max reconnect attempts reached. Giving up.");
+        if (!shouldReconnect || !reconnectScheduled.compareAndSet(false, true)) {
             return;
         }
+        long delay = reconnectDelayMillis(reconnectAttempts++);
+        log.info("Reconnecting connection {} in {} ms (attempt {})", shard, delay, reconnectAttempts);
+        // reconnectBlocking waits for the handshake; keep it off the supervisor thread
+        supervisor.schedule(() -> Thread.ofVirtual().name("websocket-reconnect-" + shard).start(this::reconnectOnce),
+                delay, TimeUnit.MILLISECONDS);
+    }
 
-        int delay = (int) Math.pow(2, reconnectAttempts++);
-        scheduler.schedule(() -> {
-            try {
-                log.info("Reconnecting WebSocket (attempt {}/{})...", reconnectAttempts, MAX_RETRIES);
-                reconnectBlocking();
-                reconnectAttempts = 0;
-            } catch (InterruptedException e) {
-                log.error("Reconnect attempt interrupted", e);
-                Thread.currentThread().interrupt();
-            } catch (Exception e) {
-                log.error("Reconnect failed", e);
-            }
-        }, delay, TimeUnit.SECONDS);
+    /** One attempt; stays marked as pending until it finishes so no second attempt overlaps it. */
+    private void reconnectOnce() {
+        boolean connected = false;
+        try {
+            connected = reconnectBlocking();
+            metrics.reconnected(connected);
+        } catch (InterruptedException e) {
+            // Only this attempt is abandoned; close() is what stops reconnecting
+            metrics.reconnected(false);
+            log.warn("Reconnect attempt interrupted on connection {}", shard);
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            metrics.reconnected(false);
+            log.error("Reconnect failed", e);
+        } finally {
+            reconnectScheduled.set(false);
+        }
+        if (!connected) {
+            attemptReconnect();
+        }
+    }
+
+    /**
+     * Jittered exponential backoff: uniform in [base, min(max, base * 2^attempt)], so
+     * even the first attempt after a drop waits at least the base delay.
+     */
+    static long reconnectDelayMillis(int attempt) {
+        long ceiling = Math.min(RECONNECT_MAX_DELAY_MS, RECONNECT_BASE_DELAY_MS << Math.min(attempt, 16));
+        return ThreadLocalRandom.current().nextLong(RECONNECT_BASE_DELAY_MS, Math.max(ceiling, RECONNECT_BASE_DELAY_MS) + 1);
     }
 
-    private String sha256(String base) {
+    private static String sha256(String base) {
         try {
             var digest = java.security.MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(base.getBytes(StandardCharsets.UTF_8));
-            StringBuilder hex = new StringBuilder();
-            for (byte b : hash) hex.append(String.format("%02x", b));
-            return hex.toString();
+            return HexFormat.of().formatHex(digest.digest(base.getBytes(StandardCharsets.UTF_8)));
         } catch (Exception e) {
             log.error("SHA-256 hashing failed", e);
             throw new RuntimeException("SHA-256 hashing failed", e);
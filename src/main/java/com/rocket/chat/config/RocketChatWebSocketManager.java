@@ -1,12 +1,42 @@
 package com.rocket.chat.config;
 
-import com.rocket.chat.service.UserService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.rocket.chat.dto.RoomSubscriptionStatus;
+import com.rocket.chat.exception.RocketChatException;
+import com.rocket.chat.service.InboundMessagePipeline;
+import com.rocket.chat.service.LiveMessageFanout;
+import com.rocket.chat.service.MissedMessageBackfill;
+import com.rocket.chat.service.ReadResponseCache;
+import com.rocket.chat.service.RoomIdCache;
+import io.micrometer.core.instrument.Gauge;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs a pool of DDP connections and spreads room subscriptions over them by
+ * consistent hashing. When a connection drops, only its rooms move to the
+ * surviving connections; when it logs in again they move back.
+ */
 @Component
-public class RocketChatWebSocketManager {
+public class RocketChatWebSocketManager implements RocketChatWebSocketClient.ConnectionListener {
+
+    private static final Logger log = LoggerFactory.getLogger(RocketChatWebSocketManager.class);
+    private static final int VIRTUAL_NODES = 160;
 
     @Value("${rocketchat.websocket-url}")
     private String wsUrl;
@@ -17,22 +47,294 @@ public class RocketChatWebSocketManager {
     @Value("${rocketchat.admin-password}")
     private String password;
 
-    @Value("${rocketchat.admin-roomId}")
+    @Value("${rocketchat.admin-roomId:}")
     private String roomId;
 
-    private final UserService userService;
+    @Value("${rocketchat.ws.connections:4}")
+    private int connections;
+
+    @Value("${rocketchat.ws.rooms:}")
+    private List<String> configuredRooms;
+
+    @Value("${rocketchat.ws.subscription-rate:50}")
+    private int subscriptionRate;
+
+    @Value("${rocketchat.ws.method-timeout:10s}")
+    private Duration methodTimeout;
 
-    public RocketChatWebSocketManager(UserService userService) {
-        this.userService = userService;
+    @Value("${rocketchat.ws.max-pending-calls:1000}")
+    private int maxPendingCalls;
+
+    private final InboundMessagePipeline inboundPipeline;
+    private final MissedMessageBackfill backfill;
+    private final RoomIdCache roomIdCache;
+    private final ReadResponseCache readCache;
+    private final LiveMessageFanout fanout;
+    private final RocketChatMetrics metrics;
+    private final ConnectionSupervisor supervisor;
+
+    private final List<RocketChatWebSocketClient> clients = new ArrayList<>();
+    private final ConsistentHashRing ring = new ConsistentHashRing(VIRTUAL_NODES);
+    private final Map<String, Integer> assignments = new HashMap<>();
+    private long rebalancedRooms;
+    private boolean stopping;
+
+    public RocketChatWebSocketManager(InboundMessagePipeline inboundPipeline,
+                                      MissedMessageBackfill backfill,
+                                      RoomIdCache roomIdCache,
+                                      ReadResponseCache readCache,
+                                      LiveMessageFanout fanout,
+                                      RocketChatMetrics metrics,
+                                      ConnectionSupervisor supervisor) {
+        this.inboundPipeline = inboundPipeline;
+        this.backfill = backfill;
+        this.roomIdCache = roomIdCache;
+        this.readCache = readCache;
+        this.fanout = fanout;
+        this.metrics = metrics;
+        this.supervisor = supervisor;
     }
 
     @PostConstruct
     public void startWebSocketClient() {
+        int size = Math.max(connections, 1);
         try {
-            RocketChatWebSocketClient client = new RocketChatWebSocketClient(wsUrl, userService, username, password, roomId);
-            client.connectBlocking();
+            for (int shard = 0; shard < size; shard++) {
+                RocketChatWebSocketClient client = new RocketChatWebSocketClient(wsUrl, shard, inboundPipeline, backfill, roomIdCache,
+                        readCache, fanout, metrics, supervisor, username, password, subscriptionRate, methodTimeout, maxPendingCalls, this);
+                clients.add(client);
+                supervisor.register(client);
+                ring.add(shard);
+                Gauge.builder("rocketchat.ws.connection.rooms", client, RocketChatWebSocketClient::roomCount)
+                        .tag("shard", Integer.toString(shard))
+                        .register(metrics.registry());
+            }
+            clients.get(0).setUserNotify(true);
+
+            Set<String> initialRooms = new LinkedHashSet<>(configuredRooms);
+            if (roomId != null && !roomId.isBlank()) {
+                initialRooms.add(roomId);
+            }
+            initialRooms.removeIf(String::isBlank);
+            initialRooms.forEach(this::subscribeRoom);
+
+            for (RocketChatWebSocketClient client : clients) {
+                client.connectBlocking();
+            }
+            log.info("Started {} WebSocket connections | rooms={}", size, initialRooms.size());
         } catch (Exception e) {
             throw new RuntimeException("Failed to start WebSocket client", e);
         }
     }
-}
\ No newline at end of file
+
+    @PreDestroy
+    public void stop() {
+        synchronized (this) {
+            stopping = true;
+        }
+        for (RocketChatWebSocketClient client : clients) {
+            client.shutdown();
+        }
+    }
+
+    /** Returns true when the room was not followed yet; re-subscribing retries a rejected subscription. */
+    public synchronized boolean subscribeRoom(String roomId) {
+        Integer current = assignments.get(roomId);
+        if (current != null) {
+            clients.get(current).subscribeRoom(roomId);
+            return false;
+        }
+        int shard = ownerOf(roomId);
+        assignments.put(roomId, shard);
+        clients.get(shard).subscribeRoom(roomId);
+        return true;
+    }
+
+    public synchronized boolean unsubscribeRoom(String roomId) {
+        Integer shard = assignments.remove(roomId);
+        if (shard == null) {
+            return false;
+        }
+        clients.get(shard).unsubscribeRoom(roomId);
+        backfill.forget(roomId);
+        return true;
+    }
+
+    /** Returns how many of the rooms were newly followed. */
+    public synchronized int subscribeRooms(Collection<String> roomIds) {
+        int added = 0;
+        for (String id : roomIds) {
+            if (id != null && !id.isBlank() && subscribeRoom(id.strip())) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /** Returns how many of the rooms were followed before. */
+    public synchronized int unsubscribeRooms(Collection<String> roomIds) {
+        int removed = 0;
+        for (String id : roomIds) {
+            if (id != null && unsubscribeRoom(id.strip())) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Calls a DDP method on the connection that owns {@code routingKey} (usually a room ID),
+     * or on any logged-in connection when the owner is down.
+     */
+    public CompletableFuture<JsonNode> call(String routingKey, String method, Object... params) {
+        RocketChatWebSocketClient client = liveClientFor(routingKey);
+        if (client == null) {
+            return CompletableFuture.failedFuture(new RocketChatException("No logged-in WebSocket connection"));
+        }
+        return client.call(method, params);
+    }
+
+    public boolean hasLiveConnection() {
+        for (RocketChatWebSocketClient client : clients) {
+            if (client.isLoggedIn()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized RocketChatWebSocketClient liveClientFor(String routingKey) {
+        Integer assigned = routingKey == null ? null : assignments.get(routingKey);
+        RocketChatWebSocketClient owner = clients.get(assigned != null ? assigned : ownerOf(String.valueOf(routingKey)));
+        if (owner.isLoggedIn()) {
+            return owner;
+        }
+        for (RocketChatWebSocketClient client : clients) {
+            if (client.isLoggedIn()) {
+                return client;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Per-room subscription state. Rooms on a connection that is not logged in
+     * show as QUEUED until it logs in and sends their sub frames.
+     */
+    public synchronized List<RoomSubscriptionStatus> subscriptionStatus() {
+        List<RoomSubscriptionStatus> status = new ArrayList<>(assignments.size());
+        for (Map.Entry<String, Integer> assignment : assignments.entrySet()) {
+            RocketChatWebSocketClient client = clients.get(assignment.getValue());
+            status.add(toStatus(assignment.getKey(), client));
+        }
+        return status;
+    }
+
+    private RoomSubscriptionStatus toStatus(String roomId, RocketChatWebSocketClient client) {
+        SubscriptionRegistry.Subscription subscription = client.subscription(roomId);
+        if (subscription == null) {
+            return new RoomSubscriptionStatus(roomId, client.getShard(), "QUEUED", null, null, -1);
+        }
+        return new RoomSubscriptionStatus(roomId, client.getShard(), subscription.state().name(),
+                subscription.subId(), subscription.error(), subscription.ackMillis());
+    }
+
+    /**
+     * ID of the room's subscription while it is acknowledged on a logged-in connection,
+     * else null. Every resubscription gets a new ID, so a changed ID means messages may
+     * have been missed in between.
+     */
+    public synchronized String liveSubscriptionId(String roomId) {
+        Integer shard = assignments.get(roomId);
+        if (shard == null) {
+            return null;
+        }
+        RocketChatWebSocketClient client = clients.get(shard);
+        SubscriptionRegistry.Subscription subscription = client.subscription(roomId);
+        if (!client.isLoggedIn() || subscription == null || subscription.state() != SubscriptionRegistry.State.READY) {
+            return null;
+        }
+        return subscription.subId();
+    }
+
+    public synchronized Set<String> subscribedRooms() {
+        return Set.copyOf(assignments.keySet());
+    }
+
+    @Override
+    public synchronized void onLost(RocketChatWebSocketClient client) {
+        if (stopping) {
+            return;
+        }
+        int lost = client.getShard();
+        ring.remove(lost);
+        if (client.isUserNotify()) {
+            client.setUserNotify(false);
+            clients.stream()
+                    .filter(RocketChatWebSocketClient::isLoggedIn)
+                    .findFirst()
+                    .ifPresent(other -> other.setUserNotify(true));
+        }
+        if (ring.isEmpty()) {
+            // Nowhere to move them; the connection resubscribes its rooms after it logs in again
+            log.warn("All WebSocket connections lost; keeping {} rooms on connection {}", client.roomCount(), lost);
+            ring.add(lost);
+            return;
+        }
+        int moved = rebalance();
+        log.warn("Connection {} lost | moved {} rooms to surviving connections", lost, moved);
+    }
+
+    @Override
+    public synchronized void onReady(RocketChatWebSocketClient client) {
+        int shard = client.getShard();
+        if (clients.stream().noneMatch(RocketChatWebSocketClient::isUserNotify)) {
+            client.setUserNotify(true);
+        }
+        if (ring.contains(shard)) {
+            return;
+        }
+        ring.add(shard);
+        int moved = rebalance();
+        log.info("Connection {} ready | took back {} rooms", shard, moved);
+    }
+
+    /** Moves every room whose owner on the ring differs from its current connection. */
+    private int rebalance() {
+        int moved = 0;
+        for (Map.Entry<String, Integer> assignment : assignments.entrySet()) {
+            String room = assignment.getKey();
+            int current = assignment.getValue();
+            int owner = ownerOf(room);
+            if (owner != current) {
+                clients.get(current).unsubscribeRoom(room);
+                clients.get(owner).subscribeRoom(room);
+                assignment.setValue(owner);
+                moved++;
+            }
+        }
+        rebalancedRooms += moved;
+        return moved;
+    }
+
+    private int ownerOf(String roomId) {
+        int shard = ring.shardFor(roomId);
+        return shard < 0 ? 0 : shard;
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("connections", clients.size());
+        snapshot.put("live", clients.stream().filter(RocketChatWebSocketClient::isLoggedIn).count());
+        snapshot.put("rooms", assignments.size());
+        snapshot.put("rebalancedRooms", rebalancedRooms);
+        snapshot.put("pendingCalls", clients.stream().mapToInt(RocketChatWebSocketClient::pendingCalls).sum());
+        List<Map<String, Object>> perConnection = new ArrayList<>(clients.size());
+        for (RocketChatWebSocketClient client : clients) {
+            perConnection.add(client.snapshot());
+        }
+        snapshot.put("perConnection", perConnection);
+        snapshot.put("heartbeats", supervisor.snapshot());
+        return snapshot;
+    }
+}
@@ -0,0 +1,29 @@
+package com.rocket.chat.config;
+
+/**
+ * A {@code <userId>/rooms-changed} notification: a room the logged-in user
+ * belongs to was inserted, updated or removed.
+ */
+public class RoomChangeEvent {
+    private final String action;
+    private final String roomId;
+    private final String roomName;
+
+    RoomChangeEvent(String action, String roomId, String roomName) {
+        this.action = action;
+        this.roomId = roomId;
+        this.roomName = roomName;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public String getRoomId() {
+        return roomId;
+    }
+
+    public String getRoomName() {
+        return roomName;
+    }
+}
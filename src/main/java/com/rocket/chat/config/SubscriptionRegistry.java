@@ -0,0 +1,128 @@
+package com.rocket.chat.config;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Room subscriptions of one DDP connection, tracked by subscription ID from the
+ * outgoing {@code sub} until the server acknowledges it with {@code ready} or
+ * rejects it with {@code nosub}.
+ */
+class SubscriptionRegistry {
+
+    enum State { PENDING, READY, FAILED }
+
+    static final class Subscription {
+        private final String roomId;
+        private final String subId;
+        private final long requestedAt = System.currentTimeMillis();
+        private volatile State state = State.PENDING;
+        private volatile String error;
+        private volatile long readyAt;
+
+        private Subscription(String roomId, String subId) {
+            this.roomId = roomId;
+            this.subId = subId;
+        }
+
+        String roomId() {
+            return roomId;
+        }
+
+        String subId() {
+            return subId;
+        }
+
+        State state() {
+            return state;
+        }
+
+        String error() {
+            return error;
+        }
+
+        /** Milliseconds from sending the sub to its ready ack, or -1 while not ready. */
+        long ackMillis() {
+            return state == State.READY ? readyAt - requestedAt : -1;
+        }
+    }
+
+    private final Map<String, Subscription> byRoom = new ConcurrentHashMap<>();
+    private final Map<String, Subscription> bySubId = new ConcurrentHashMap<>();
+
+    /** Starts a new subscription for the room, replacing any previous one. */
+    Subscription register(String roomId) {
+        Subscription subscription = new Subscription(roomId, UUID.randomUUID().toString());
+        Subscription previous = byRoom.put(roomId, subscription);
+        if (previous != null) {
+            bySubId.remove(previous.subId);
+        }
+        bySubId.put(subscription.subId, subscription);
+        return subscription;
+    }
+
+    Subscription remove(String roomId) {
+        Subscription subscription = byRoom.remove(roomId);
+        if (subscription != null) {
+            bySubId.remove(subscription.subId);
+        }
+        return subscription;
+    }
+
+    Subscription get(String roomId) {
+        return byRoom.get(roomId);
+    }
+
+    boolean isFailed(String roomId) {
+        Subscription subscription = byRoom.get(roomId);
+        return subscription != null && subscription.state == State.FAILED;
+    }
+
+    /** Returns the room of the acknowledged subscription, or null for an unknown ID. */
+    String ready(String subId) {
+        Subscription subscription = bySubId.get(subId);
+        if (subscription == null) {
+            return null;
+        }
+        subscription.readyAt = System.currentTimeMillis();
+        subscription.state = State.READY;
+        return subscription.roomId;
+    }
+
+    /**
+     * Marks the subscription as rejected. Returns null when the ID is not tracked,
+     * which is also how the server acknowledges our own {@code unsub}.
+     */
+    Subscription failed(String subId, String error) {
+        Subscription subscription = bySubId.get(subId);
+        if (subscription == null) {
+            return null;
+        }
+        subscription.error = error;
+        subscription.state = State.FAILED;
+        return subscription;
+    }
+
+    void clear() {
+        byRoom.clear();
+        bySubId.clear();
+    }
+
+    Collection<Subscription> all() {
+        return byRoom.values();
+    }
+
+    Map<State, Integer> counts() {
+        Map<State, Integer> counts = new EnumMap<>(State.class);
+        for (State state : State.values()) {
+            counts.put(state, 0);
+        }
+        for (Subscription subscription : byRoom.values()) {
+            counts.merge(subscription.state, 1, Integer::sum);
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,51 @@
+package com.rocket.chat.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.rocket.chat.exception.RocketChatException;
+import com.rocket.chat.service.MessageTransport;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends messages with the DDP {@code sendMessage} method over an already open
+ * connection, avoiding a REST round trip per message. The message carries the
+ * caller's {@code _id}, which stays the same across retries, so a retried send
+ * cannot post it twice.
+ */
+@Component
+public class WebSocketMessageTransport implements MessageTransport {
+
+    private final RocketChatWebSocketManager webSocketManager;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public WebSocketMessageTransport(RocketChatWebSocketManager webSocketManager) {
+        this.webSocketManager = webSocketManager;
+    }
+
+    @Override
+    public CompletableFuture<String> sendMessage(String messageId, String roomId, String text) {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("_id", messageId);
+        message.put("rid", roomId);
+        message.put("msg", text);
+        return webSocketManager.call(roomId, "sendMessage", message).thenApply(result -> {
+            ObjectNode body = objectMapper.createObjectNode();
+            body.set("message", result);
+            body.put("success", true);
+            try {
+                return objectMapper.writeValueAsString(body);
+            } catch (Exception e) {
+                throw new RocketChatException("Failed to serialize sendMessage result", e);
+            }
+        });
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return webSocketManager.hasLiveConnection();
+    }
+}
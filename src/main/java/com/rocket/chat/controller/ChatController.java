@@ -1,113 +1,288 @@
 package com.rocket.chat.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rocket.chat.dto.BroadcastRequest;
+import com.rocket.chat.dto.BroadcastResult;
 import com.rocket.chat.dto.MessageRequest;
+import com.rocket.chat.dto.SearchHit;
 import com.rocket.chat.dto.UserSession;
 import com.rocket.chat.exception.RocketChatException;
 import com.rocket.chat.service.AdminService;
+import com.rocket.chat.service.BulkUserProvisioner;
+import com.rocket.chat.service.LiveMessageFanout;
+import com.rocket.chat.service.MessageBroadcaster;
+import com.rocket.chat.service.ReadResponseCache;
 import com.rocket.chat.service.UserService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
+/**
+ * Handlers that call Rocket.Chat return a {@link CompletableFuture}: the call runs on
+ * a virtual thread and the servlet thread is released until the result is written.
+ */
 @RestController
 @RequestMapping("/chat")
 public class ChatController {
 
     private static final Logger log = LoggerFactory.getLogger(ChatController.class);
+    private static final String NDJSON = "application/x-ndjson";
 
     private final AdminService adminService;
     private final UserService userService;
+    private final BulkUserProvisioner provisioner;
+    private final MessageBroadcaster broadcaster;
+    private final ReadResponseCache readCache;
+    private final LiveMessageFanout fanout;
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
 
     @Autowired
-    public ChatController(AdminService adminService, UserService userService) {
+    public ChatController(AdminService adminService, UserService userService, BulkUserProvisioner provisioner,
+                          MessageBroadcaster broadcaster, ReadResponseCache readCache, LiveMessageFanout fanout) {
         this.adminService = adminService;
         this.userService = userService;
+        this.provisioner = provisioner;
+        this.broadcaster = broadcaster;
+        this.readCache = readCache;
+        this.fanout = fanout;
     }
 
     @PostMapping("/login")
-    public ResponseEntity<String> login() {
-        try {
-            adminService.login();
-            // Optionally initialize userService with admin token
-            userService.setAuth(adminService.getAdminAuthToken(), adminService.getAdminUserId());
-            return ResponseEntity.ok("Admin logged in successfully");
-        } catch (RocketChatException e) {
+    public CompletableFuture<ResponseEntity<String>> login() {
+        // Also becomes the service session used when a request carries no user credentials
+        return adminService.loginAsync().handle((done, error) -> {
+            if (error == null) {
+                return ResponseEntity.ok("Admin logged in successfully");
+            }
+            RocketChatException e = rocketChatFailure(error);
             log.error("Login failed", e);
             return ResponseEntity.status(500).body("Login failed: " + e.getMessage());
-        }
+        });
     }
 
     @PostMapping("/user-login")
-    public ResponseEntity<UserSession> loginUser(@RequestParam String username, @RequestParam String password) {
-        try {
-            UserSession session = userService.loginUser(username, password);
-            log.info("Logged in user: {}", session);
-            return ResponseEntity.ok(session);
-        } catch (RocketChatException e) {
-            log.error("User login failed", e);
+    public CompletableFuture<ResponseEntity<UserSession>> loginUser(@RequestParam String username, @RequestParam String password) {
+        return userService.loginUserAsync(username, password).handle((session, error) -> {
+            if (error == null) {
+                log.info("Logged in user: {}", session);
+                return ResponseEntity.ok(session);
+            }
+            log.error("User login failed", rocketChatFailure(error));
             return ResponseEntity.status(401).body(null);
-        }
+        });
     }
 
     @PostMapping("/create-user")
-    public ResponseEntity<String> createUser(@RequestParam String username, @RequestParam String email, @RequestParam String name, @RequestParam String password) {
-        try {
-            adminService.createUser(username, email, name, password);
-            return ResponseEntity.ok("User created successfully");
-        } catch (RocketChatException e) {
+    public CompletableFuture<ResponseEntity<String>> createUser(@RequestParam String username, @RequestParam String email, @RequestParam String name, @RequestParam String password) {
+        return adminService.createUserAsync(username, email, name, password).handle((done, error) -> {
+            if (error == null) {
+                return ResponseEntity.ok("User created successfully");
+            }
+            RocketChatException e = rocketChatFailure(error);
             log.error("User creation failed", e);
             return ResponseEntity.status(500).body("User creation failed: " + e.getMessage());
-        }
+        });
+    }
+
+    /**
+     * Creates one user per CSV row or NDJSON line of the request body, which is read as
+     * the users are created rather than buffered. Streams back one NDJSON result per row,
+     * periodic progress records and a final summary.
+     */
+    @PostMapping(value = "/create-users", consumes = {"text/csv", NDJSON}, produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> createUsers(HttpServletRequest request,
+                                                             @RequestParam(defaultValue = "false") boolean createRooms) {
+        BulkUserProvisioner.Format format = MediaType.parseMediaType(request.getContentType()).isCompatibleWith(MediaType.parseMediaType(NDJSON))
+                ? BulkUserProvisioner.Format.NDJSON
+                : BulkUserProvisioner.Format.CSV;
+        StreamingResponseBody body = out -> {
+            // An import runs as long as the upload does, well past spring.mvc.async.request-timeout
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().setTimeout(0);
+            }
+            try {
+                provisioner.provision(request.getInputStream(), format, request.getContentLengthLong(), createRooms, line -> {
+                    try {
+                        objectMapper.writeValue(out, line);
+                        out.write('\n');
+                        out.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (IOException | RocketChatException e) {
+                // Headers are already committed, so the client sees a truncated stream
+                log.error("Bulk user provisioning aborted", e);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
     }
 
     @PostMapping("/send")
-    public ResponseEntity<String> sendMessage(@RequestBody MessageRequest request) {
-        try {
-            String response = userService.sendMessage(request.getRoomId(), request.getMessage());
-            return ResponseEntity.ok(response);
-        } catch (RocketChatException e) {
+    public CompletableFuture<ResponseEntity<String>> sendMessage(@RequestBody MessageRequest request,
+                                                                 @RequestHeader(value = "X-User-Id", required = false) String userId,
+                                                                 @RequestHeader(value = "X-Auth-Token", required = false) String authToken) {
+        UserSession session = userService.session(userId, authToken);
+        return userService.sendMessageAsync(session, request.getRoomId(), request.getMessage()).handle((response, error) -> {
+            if (error == null) {
+                return ResponseEntity.ok(response);
+            }
+            RocketChatException e = rocketChatFailure(error);
             log.error("Failed to send message", e);
             return ResponseEntity.status(500).body("Failed to send message: " + e.getMessage());
+        });
+    }
+
+    /** Posts the message to every selected room and answers with per-room results and timing. */
+    @PostMapping("/broadcast")
+    public CompletableFuture<ResponseEntity<?>> broadcast(@RequestBody BroadcastRequest request,
+                                                          @RequestHeader(value = "X-User-Id", required = false) String userId,
+                                                          @RequestHeader(value = "X-Auth-Token", required = false) String authToken) {
+        UserSession session = userService.session(userId, authToken);
+        CompletableFuture<BroadcastResult> result;
+        try {
+            result = broadcaster.broadcast(session, request);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body("Invalid broadcast: " + e.getMessage()));
         }
+        return result.handle((broadcast, error) -> {
+            if (error == null) {
+                return ResponseEntity.ok(broadcast);
+            }
+            RocketChatException e = rocketChatFailure(error);
+            log.error("Broadcast failed", e);
+            return ResponseEntity.status(500).body("Broadcast failed: " + e.getMessage());
+        });
     }
 
     @GetMapping("/messages")
-    public ResponseEntity<?> getMessagesInChannel(@RequestParam String roomId) {
-        try {
-            List<String> response = userService.getMessagesInRoom(roomId);
-            return ResponseEntity.ok(response);
-        } catch (RocketChatException e) {
+    public CompletableFuture<ResponseEntity<?>> getMessagesInChannel(@RequestParam String roomId,
+                                                  @RequestParam(defaultValue = "50") int count,
+                                                  @RequestParam(defaultValue = "0") int offset,
+                                                  @RequestParam(required = false) Long latest,
+                                                  @RequestParam(required = false) Long oldest,
+                                                  @RequestHeader(value = "X-User-Id", required = false) String userId,
+                                                  @RequestHeader(value = "X-Auth-Token", required = false) String authToken,
+                                                  @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        UserSession session = userService.session(userId, authToken);
+        return readCache.roomMessages(session, roomId, count, offset, latest, oldest).handle((page, error) -> {
+            if (error == null) {
+                return cachedResponse(page, ifNoneMatch);
+            }
+            RocketChatException e = rocketChatFailure(error);
             log.error("Failed to retrieve messages", e);
             return ResponseEntity.status(500).body("Failed to retrieve messages: " + e.getMessage());
+        });
+    }
+
+    @GetMapping(value = "/messages/stream", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamMessagesInChannel(@RequestParam String roomId,
+                                                                         @RequestParam(defaultValue = "100") int pageSize,
+                                                                         @RequestParam(required = false) Long latest,
+                                                                         @RequestParam(required = false) Long oldest,
+                                                                         @RequestHeader(value = "X-User-Id", required = false) String userId,
+                                                                         @RequestHeader(value = "X-Auth-Token", required = false) String authToken) {
+        UserSession session = userService.session(userId, authToken);
+        StreamingResponseBody body = out -> {
+            try {
+                userService.streamMessagesInRoom(session, roomId, pageSize, latest, oldest, message -> {
+                    try {
+                        objectMapper.writeValue(out, message);
+                        out.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (RocketChatException e) {
+                // Headers are already committed, so the client sees a truncated stream
+                log.error("Message stream for room {} aborted", roomId, e);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
+
+    /**
+     * Pushes room messages as they arrive on the WebSocket, as Server-Sent Events:
+     * {@code message} for new ones, {@code update} for edits, and {@code dropped} with
+     * the number missed when this client fell too far behind. Requires X-User-Id and
+     * X-Auth-Token; rooms are limited to those the user may read (see
+     * {@link UserService#liveEventRooms}), all of them without {@code roomId}.
+     */
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamEvents(@RequestParam(required = false) List<String> roomId,
+                                                   @RequestHeader(value = "X-User-Id", required = false) String userId,
+                                                   @RequestHeader(value = "X-Auth-Token", required = false) String authToken) {
+        if (userId == null || authToken == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        List<String> rooms = userService.liveEventRooms(userService.session(userId, authToken), roomId);
+        if (rooms != null && rooms.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        // Open until the client leaves; heartbeats find the ones that vanished without closing
+        SseEmitter emitter = new SseEmitter(0L);
+        LiveMessageFanout.Subscriber subscriber = fanout.subscribe(rooms, new SseSink(emitter));
+        if (subscriber == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         }
+        emitter.onCompletion(() -> fanout.unsubscribe(subscriber));
+        emitter.onError(e -> fanout.unsubscribe(subscriber));
+        return ResponseEntity.ok().header(HttpHeaders.CACHE_CONTROL, "no-cache").body(emitter);
+    }
+
+    @GetMapping("/search")
+    public ResponseEntity<List<SearchHit>> searchMessages(@RequestParam String q,
+                                                          @RequestParam(required = false) String roomId,
+                                                          @RequestParam(required = false) String sender,
+                                                          @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(userService.searchMessages(q, roomId, sender, limit));
     }
 
     @GetMapping("/get-direct-messages")
-    public ResponseEntity<String> getDirectRoomMessages() {
-        try {
-            String response = userService.getDirectRoomMessages();
-            return ResponseEntity.ok(response);
-        } catch (RocketChatException e) {
+    public CompletableFuture<ResponseEntity<?>> getDirectRoomMessages(@RequestHeader(value = "X-User-Id", required = false) String userId,
+                                                                      @RequestHeader(value = "X-Auth-Token", required = false) String authToken,
+                                                                      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        UserSession session = userService.session(userId, authToken);
+        return readCache.directMessages(session).handle((response, error) -> {
+            if (error == null) {
+                return cachedResponse(response, ifNoneMatch);
+            }
+            RocketChatException e = rocketChatFailure(error);
             log.error("Failed to retrieve direct messages", e);
             return ResponseEntity.status(500).body("Failed to retrieve direct messages: " + e.getMessage());
-        }
+        });
     }
 
     @PostMapping("/create-direct-message-room")
-    public ResponseEntity<String> createDirectMessageRoom(@RequestParam String username) {
-        try {
-            String roomId = userService.createDirectMessageRoom(username);
-            return ResponseEntity.ok("Direct message room created: " + roomId);
-        } catch (RocketChatException e) {
+    public CompletableFuture<ResponseEntity<String>> createDirectMessageRoom(@RequestParam String username,
+                                                                             @RequestHeader(value = "X-User-Id", required = false) String userId,
+                                                                             @RequestHeader(value = "X-Auth-Token", required = false) String authToken) {
+        UserSession session = userService.session(userId, authToken);
+        return userService.createDirectMessageRoomAsync(session, username).handle((roomId, error) -> {
+            if (error == null) {
+                return ResponseEntity.ok("Direct message room created: " + roomId);
+            }
+            RocketChatException e = rocketChatFailure(error);
             log.error("Failed to create direct message room", e);
             return ResponseEntity.status(500).body("Failed to create direct message room: " + e.getMessage());
-        }
+        });
     }
 
     @PostMapping("/simulate-message")
@@ -121,4 +296,61 @@ public class ChatController {
         log.info("Message from {}: {}", username, text);
         return ResponseEntity.ok("Message received");
     }
-}
\ No newline at end of file
+
+    /** The cached JSON with its ETag, or an empty 304 when the client already holds that version. */
+    private static ResponseEntity<?> cachedResponse(ReadResponseCache.Response response, String ifNoneMatch) {
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                String candidate = tag.trim();
+                // Weak comparison, as If-None-Match requires
+                if (candidate.startsWith("W/")) {
+                    candidate = candidate.substring(2);
+                }
+                if (candidate.equals("*") || candidate.equals(response.etag())) {
+                    return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(response.etag()).build();
+                }
+            }
+        }
+        return ResponseEntity.ok().eTag(response.etag()).contentType(MediaType.APPLICATION_JSON).body(response.body());
+    }
+
+    /**
+     * The Rocket.Chat failure behind an async call, answered like the call's other errors.
+     * Anything else is rethrown so the global handler sees it, as it would for a sync call.
+     */
+    private static RocketChatException rocketChatFailure(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof RocketChatException e) {
+            return e;
+        }
+        throw cause instanceof RuntimeException e ? e : new CompletionException(cause);
+    }
+
+    private static final class SseSink implements LiveMessageFanout.Sink {
+
+        private final SseEmitter emitter;
+
+        SseSink(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        @Override
+        public void send(LiveMessageFanout.Event event) throws IOException {
+            SseEmitter.SseEventBuilder builder = SseEmitter.event();
+            if (event.getId() > 0) {
+                builder.id(Long.toString(event.getId()));
+            }
+            emitter.send(builder.name(event.getType().eventName()).data(event.getData()));
+        }
+
+        @Override
+        public void heartbeat() throws IOException {
+            emitter.send(SseEmitter.event().comment("heartbeat"));
+        }
+
+        @Override
+        public void close(String reason) {
+            emitter.complete();
+        }
+    }
+}
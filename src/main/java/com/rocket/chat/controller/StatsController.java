@@ -0,0 +1,169 @@
+package com.rocket.chat.controller;
+
+import com.rocket.chat.config.ConcurrencyLimitInterceptor;
+import com.rocket.chat.config.HttpPoolMonitor;
+import com.rocket.chat.config.RestCallExecutor;
+import com.rocket.chat.config.RocketChatWebSocketManager;
+import com.rocket.chat.service.BulkUserProvisioner;
+import com.rocket.chat.service.InactivityTracker;
+import com.rocket.chat.service.InboundMessagePipeline;
+import com.rocket.chat.service.LiveMessageFanout;
+import com.rocket.chat.service.MessageBroadcaster;
+import com.rocket.chat.service.MessageDedupFilter;
+import com.rocket.chat.service.MessageJournal;
+import com.rocket.chat.service.MessageSearchIndex;
+import com.rocket.chat.service.MissedMessageBackfill;
+import com.rocket.chat.service.OutboundMessageScheduler;
+import com.rocket.chat.service.ReadResponseCache;
+import com.rocket.chat.service.RoomIdCache;
+import com.rocket.chat.service.UserSessionCache;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/stats")
+public class StatsController {
+
+    private final HttpPoolMonitor httpPoolMonitor;
+    private final InboundMessagePipeline inboundPipeline;
+    private final InactivityTracker inactivityTracker;
+    private final RoomIdCache roomIdCache;
+    private final MessageJournal messageJournal;
+    private final MessageSearchIndex searchIndex;
+    private final RocketChatWebSocketManager webSocketManager;
+    private final OutboundMessageScheduler outboundScheduler;
+    private final MissedMessageBackfill backfill;
+    private final MessageDedupFilter dedupFilter;
+    private final UserSessionCache sessionCache;
+    private final RestCallExecutor restCalls;
+    private final BulkUserProvisioner provisioner;
+    private final MessageBroadcaster broadcaster;
+    private final ConcurrencyLimitInterceptor concurrencyLimits;
+    private final ReadResponseCache readCache;
+    private final LiveMessageFanout fanout;
+
+    public StatsController(HttpPoolMonitor httpPoolMonitor,
+                           InboundMessagePipeline inboundPipeline,
+                           InactivityTracker inactivityTracker,
+                           RoomIdCache roomIdCache,
+                           MessageJournal messageJournal,
+                           MessageSearchIndex searchIndex,
+                           RocketChatWebSocketManager webSocketManager,
+                           OutboundMessageScheduler outboundScheduler,
+                           MissedMessageBackfill backfill,
+                           MessageDedupFilter dedupFilter,
+                           UserSessionCache sessionCache,
+                           RestCallExecutor restCalls,
+                           BulkUserProvisioner provisioner,
+                           MessageBroadcaster broadcaster,
+                           ConcurrencyLimitInterceptor concurrencyLimits,
+                           ReadResponseCache readCache,
+                           LiveMessageFanout fanout) {
+        this.httpPoolMonitor = httpPoolMonitor;
+        this.inboundPipeline = inboundPipeline;
+        this.inactivityTracker = inactivityTracker;
+        this.roomIdCache = roomIdCache;
+        this.messageJournal = messageJournal;
+        this.searchIndex = searchIndex;
+        this.webSocketManager = webSocketManager;
+        this.outboundScheduler = outboundScheduler;
+        this.backfill = backfill;
+        this.dedupFilter = dedupFilter;
+        this.sessionCache = sessionCache;
+        this.restCalls = restCalls;
+        this.provisioner = provisioner;
+        this.broadcaster = broadcaster;
+        this.concurrencyLimits = concurrencyLimits;
+        this.readCache = readCache;
+        this.fanout = fanout;
+    }
+
+    @GetMapping("/http-pool")
+    public ResponseEntity<Map<String, Object>> getHttpPoolStats() {
+        return ResponseEntity.ok(httpPoolMonitor.snapshot());
+    }
+
+    @GetMapping("/inbound")
+    public ResponseEntity<Map<String, Object>> getInboundPipelineStats() {
+        return ResponseEntity.ok(inboundPipeline.snapshot());
+    }
+
+    @GetMapping("/sessions")
+    public ResponseEntity<Map<String, Object>> getSessionStats() {
+        return ResponseEntity.ok(inactivityTracker.snapshot());
+    }
+
+    @GetMapping("/room-cache")
+    public ResponseEntity<Map<String, Object>> getRoomCacheStats() {
+        return ResponseEntity.ok(roomIdCache.snapshot());
+    }
+
+    @GetMapping("/read-cache")
+    public ResponseEntity<Map<String, Object>> getReadCacheStats() {
+        return ResponseEntity.ok(readCache.snapshot());
+    }
+
+    @GetMapping("/push")
+    public ResponseEntity<Map<String, Object>> getPushStats() {
+        return ResponseEntity.ok(fanout.snapshot());
+    }
+
+    @GetMapping("/journal")
+    public ResponseEntity<Map<String, Object>> getJournalStats() {
+        return ResponseEntity.ok(messageJournal.snapshot());
+    }
+
+    @GetMapping("/search-index")
+    public ResponseEntity<Map<String, Object>> getSearchIndexStats() {
+        return ResponseEntity.ok(searchIndex.snapshot());
+    }
+
+    @GetMapping("/connections")
+    public ResponseEntity<Map<String, Object>> getConnectionStats() {
+        return ResponseEntity.ok(webSocketManager.snapshot());
+    }
+
+    @GetMapping("/outbound")
+    public ResponseEntity<Map<String, Object>> getOutboundStats() {
+        return ResponseEntity.ok(outboundScheduler.snapshot());
+    }
+
+    @GetMapping("/backfill")
+    public ResponseEntity<Map<String, Object>> getBackfillStats() {
+        return ResponseEntity.ok(backfill.snapshot());
+    }
+
+    @GetMapping("/dedup")
+    public ResponseEntity<Map<String, Object>> getDedupStats() {
+        return ResponseEntity.ok(dedupFilter.snapshot());
+    }
+
+    @GetMapping("/user-sessions")
+    public ResponseEntity<Map<String, Object>> getUserSessionStats() {
+        return ResponseEntity.ok(sessionCache.snapshot());
+    }
+
+    @GetMapping("/rest-calls")
+    public ResponseEntity<Map<String, Object>> getRestCallStats() {
+        return ResponseEntity.ok(restCalls.snapshot());
+    }
+
+    @GetMapping("/rest-limits")
+    public ResponseEntity<Map<String, Object>> getRestLimitStats() {
+        return ResponseEntity.ok(concurrencyLimits.snapshot());
+    }
+
+    @GetMapping("/provisioning")
+    public ResponseEntity<Map<String, Object>> getProvisioningStats() {
+        return ResponseEntity.ok(provisioner.snapshot());
+    }
+
+    @GetMapping("/broadcast")
+    public ResponseEntity<Map<String, Object>> getBroadcastStats() {
+        return ResponseEntity.ok(broadcaster.snapshot());
+    }
+}
@@ -0,0 +1,59 @@
+package com.rocket.chat.controller;
+
+import com.rocket.chat.config.RocketChatWebSocketManager;
+import com.rocket.chat.dto.RoomSubscriptionRequest;
+import com.rocket.chat.dto.RoomSubscriptionStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/subscriptions")
+public class SubscriptionController {
+
+    private final RocketChatWebSocketManager webSocketManager;
+
+    public SubscriptionController(RocketChatWebSocketManager webSocketManager) {
+        this.webSocketManager = webSocketManager;
+    }
+
+    @GetMapping
+    public ResponseEntity<List<RoomSubscriptionStatus>> getSubscriptions(@RequestParam(required = false) String state) {
+        List<RoomSubscriptionStatus> status = webSocketManager.subscriptionStatus();
+        if (state != null) {
+            status = status.stream().filter(s -> s.getState().equalsIgnoreCase(state)).toList();
+        }
+        return ResponseEntity.ok(status);
+    }
+
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> subscribeRooms(@RequestBody RoomSubscriptionRequest request) {
+        List<String> roomIds = request.getRoomIds() == null ? List.of() : request.getRoomIds();
+        int added = webSocketManager.subscribeRooms(roomIds);
+        return ResponseEntity.accepted().body(result(roomIds.size(), "added", added));
+    }
+
+    @DeleteMapping
+    public ResponseEntity<Map<String, Object>> unsubscribeRooms(@RequestBody RoomSubscriptionRequest request) {
+        List<String> roomIds = request.getRoomIds() == null ? List.of() : request.getRoomIds();
+        int removed = webSocketManager.unsubscribeRooms(roomIds);
+        return ResponseEntity.accepted().body(result(roomIds.size(), "removed", removed));
+    }
+
+    @DeleteMapping("/{roomId}")
+    public ResponseEntity<Map<String, Object>> unsubscribeRoom(@PathVariable String roomId) {
+        boolean removed = webSocketManager.unsubscribeRoom(roomId);
+        return removed ? ResponseEntity.accepted().body(result(1, "removed", 1)) : ResponseEntity.notFound().build();
+    }
+
+    private Map<String, Object> result(int requested, String key, int changed) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("requested", requested);
+        result.put(key, changed);
+        result.put("total", webSocketManager.subscribedRooms().size());
+        return result;
+    }
+}
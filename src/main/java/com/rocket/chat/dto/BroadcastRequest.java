@@ -0,0 +1,48 @@
+package com.rocket.chat.dto;
+
+import java.util.List;
+
+/**
+ * A message and the rooms to post it to. Targets are the union of the selectors that
+ * are set: explicit {@code roomIds}, rooms active within {@code activeWithin}
+ * (e.g. {@code 30m}), and public rooms whose name matches {@code roomNamePrefix}
+ * (e.g. {@code support-} or {@code support-*}).
+ */
+public class BroadcastRequest {
+    private String message;
+    private List<String> roomIds;
+    private String activeWithin;
+    private String roomNamePrefix;
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public List<String> getRoomIds() {
+        return roomIds;
+    }
+
+    public void setRoomIds(List<String> roomIds) {
+        this.roomIds = roomIds;
+    }
+
+    public String getActiveWithin() {
+        return activeWithin;
+    }
+
+    public void setActiveWithin(String activeWithin) {
+        this.activeWithin = activeWithin;
+    }
+
+    public String getRoomNamePrefix() {
+        return roomNamePrefix;
+    }
+
+    public void setRoomNamePrefix(String roomNamePrefix) {
+        this.roomNamePrefix = roomNamePrefix;
+    }
+}
@@ -0,0 +1,52 @@
+package com.rocket.chat.dto;
+
+import java.util.List;
+
+public class BroadcastResult {
+    private final int targets;
+    private final int sent;
+    private final int failed;
+    private final long durationMs;
+    private final double messagesPerSecond;
+    private final int concurrencyLimit;
+    private final List<BroadcastRoomResult> results;
+
+    public BroadcastResult(int targets, int sent, int failed, long durationMs, int concurrencyLimit, List<BroadcastRoomResult> results) {
+        this.targets = targets;
+        this.sent = sent;
+        this.failed = failed;
+        this.durationMs = durationMs;
+        this.messagesPerSecond = durationMs == 0 ? 0.0 : Math.round(sent * 10_000.0 / durationMs) / 10.0;
+        this.concurrencyLimit = concurrencyLimit;
+        this.results = results;
+    }
+
+    public int getTargets() {
+        return targets;
+    }
+
+    public int getSent() {
+        return sent;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public double getMessagesPerSecond() {
+        return messagesPerSecond;
+    }
+
+    /** The adaptive concurrency limit when the broadcast finished. */
+    public int getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    public List<BroadcastRoomResult> getResults() {
+        return results;
+    }
+}
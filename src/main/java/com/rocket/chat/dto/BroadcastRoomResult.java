@@ -0,0 +1,40 @@
+package com.rocket.chat.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BroadcastRoomResult {
+    private final String roomId;
+    private final String roomName;
+    private final boolean sent;
+    private final long latencyMs;
+    private final String error;
+
+    public BroadcastRoomResult(String roomId, String roomName, boolean sent, long latencyMs, String error) {
+        this.roomId = roomId;
+        this.roomName = roomName;
+        this.sent = sent;
+        this.latencyMs = latencyMs;
+        this.error = error;
+    }
+
+    public String getRoomId() {
+        return roomId;
+    }
+
+    public String getRoomName() {
+        return roomName;
+    }
+
+    public boolean isSent() {
+        return sent;
+    }
+
+    public long getLatencyMs() {
+        return latencyMs;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
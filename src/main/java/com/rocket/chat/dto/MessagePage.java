@@ -0,0 +1,38 @@
+package com.rocket.chat.dto;
+
+import java.util.List;
+
+public class MessagePage {
+    private final String roomId;
+    private final List<RoomMessage> messages;
+    private final int offset;
+    private final Long nextCursor;
+
+    public MessagePage(String roomId, List<RoomMessage> messages, int offset, Long nextCursor) {
+        this.roomId = roomId;
+        this.messages = messages;
+        this.offset = offset;
+        this.nextCursor = nextCursor;
+    }
+
+    public String getRoomId() {
+        return roomId;
+    }
+
+    public List<RoomMessage> getMessages() {
+        return messages;
+    }
+
+    public int getCount() {
+        return messages.size();
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    /** Pass as {@code latest} to fetch the next (older) page; null when history is exhausted. */
+    public Long getNextCursor() {
+        return nextCursor;
+    }
+}
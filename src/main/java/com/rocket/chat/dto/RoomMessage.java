@@ -0,0 +1,70 @@
+package com.rocket.chat.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+public class RoomMessage {
+    private final String id;
+    private final String roomId;
+    private final String sender;
+    private final String text;
+    private final long timestamp;
+    private final String roomType;
+    private final long receivedAtNanos;
+    private final long updatedAt;
+
+    public RoomMessage(String id, String roomId, String sender, String text, long timestamp, String roomType) {
+        this(id, roomId, sender, text, timestamp, roomType, 0L);
+    }
+
+    public RoomMessage(String id, String roomId, String sender, String text, long timestamp, String roomType, long receivedAtNanos) {
+        this(id, roomId, sender, text, timestamp, roomType, receivedAtNanos, 0L);
+    }
+
+    public RoomMessage(String id, String roomId, String sender, String text, long timestamp, String roomType,
+                       long receivedAtNanos, long updatedAt) {
+        this.id = id;
+        this.roomId = roomId;
+        this.sender = sender;
+        this.text = text;
+        this.timestamp = timestamp;
+        this.roomType = roomType;
+        this.receivedAtNanos = receivedAtNanos;
+        this.updatedAt = updatedAt;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getRoomId() {
+        return roomId;
+    }
+
+    public String getSender() {
+        return sender;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getRoomType() {
+        return roomType;
+    }
+
+    /** {@link System#nanoTime()} when the frame arrived on the socket; 0 for messages read from history. */
+    @JsonIgnore
+    public long getReceivedAtNanos() {
+        return receivedAtNanos;
+    }
+
+    /** The message's {@code _updatedAt} in epoch millis, bumped by edits and reactions; 0 when unknown. */
+    @JsonIgnore
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+}
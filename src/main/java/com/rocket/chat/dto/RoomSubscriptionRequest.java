@@ -0,0 +1,15 @@
+package com.rocket.chat.dto;
+
+import java.util.List;
+
+public class RoomSubscriptionRequest {
+    private List<String> roomIds;
+
+    public List<String> getRoomIds() {
+        return roomIds;
+    }
+
+    public void setRoomIds(List<String> roomIds) {
+        this.roomIds = roomIds;
+    }
+}
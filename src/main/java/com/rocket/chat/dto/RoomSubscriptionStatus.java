@@ -0,0 +1,43 @@
+package com.rocket.chat.dto;
+
+public class RoomSubscriptionStatus {
+    private final String roomId;
+    private final int connection;
+    private final String state;
+    private final String subscriptionId;
+    private final String error;
+    private final long ackMillis;
+
+    public RoomSubscriptionStatus(String roomId, int connection, String state, String subscriptionId, String error, long ackMillis) {
+        this.roomId = roomId;
+        this.connection = connection;
+        this.state = state;
+        this.subscriptionId = subscriptionId;
+        this.error = error;
+        this.ackMillis = ackMillis;
+    }
+
+    public String getRoomId() {
+        return roomId;
+    }
+
+    public int getConnection() {
+        return connection;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public String getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public long getAckMillis() {
+        return ackMillis;
+    }
+}
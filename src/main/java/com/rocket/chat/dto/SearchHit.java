@@ -0,0 +1,43 @@
+package com.rocket.chat.dto;
+
+public class SearchHit {
+    private final String messageId;
+    private final String roomId;
+    private final String sender;
+    private final String text;
+    private final long timestamp;
+    private final double score;
+
+    public SearchHit(String messageId, String roomId, String sender, String text, long timestamp, double score) {
+        this.messageId = messageId;
+        this.roomId = roomId;
+        this.sender = sender;
+        this.text = text;
+        this.timestamp = timestamp;
+        this.score = score;
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public String getRoomId() {
+        return roomId;
+    }
+
+    public String getSender() {
+        return sender;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public double getScore() {
+        return score;
+    }
+}
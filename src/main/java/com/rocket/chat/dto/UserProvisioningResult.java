@@ -0,0 +1,50 @@
+package com.rocket.chat.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class UserProvisioningResult {
+
+    public enum Status {
+        CREATED, SKIPPED, INVALID, FAILED
+    }
+
+    private final long row;
+    private final String username;
+    private final Status status;
+    private final String roomId;
+    private final String error;
+
+    public UserProvisioningResult(long row, String username, Status status, String roomId, String error) {
+        this.row = row;
+        this.username = username;
+        this.status = status;
+        this.roomId = roomId;
+        this.error = error;
+    }
+
+    /** Distinguishes result lines from progress lines in the NDJSON stream. */
+    public String getType() {
+        return "row";
+    }
+
+    public long getRow() {
+        return row;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getRoomId() {
+        return roomId;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -3,10 +3,19 @@ package com.rocket.chat.dto;
 public class UserSession {
     private final String userId;
     private final String authToken;
+    private final String username;
+    private final long expiresAt;
 
+    /** A session from caller-supplied credentials; its username and expiry are unknown. */
     public UserSession(String userId, String authToken) {
+        this(userId, authToken, null, 0L);
+    }
+
+    public UserSession(String userId, String authToken, String username, long expiresAt) {
         this.userId = userId;
         this.authToken = authToken;
+        this.username = username;
+        this.expiresAt = expiresAt;
     }
 
     public String getUserId() {
@@ -16,4 +25,19 @@ public class UserSession {
     public String getAuthToken() {
         return authToken;
     }
+
+    public String getUsername() {
+        return username;
+    }
+
+    /** Epoch millis after which the token is no longer accepted; 0 when unknown. */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    @Override
+    public String toString() {
+        // Never log the token
+        return "UserSession{userId=" + userId + ", username=" + username + ", expiresAt=" + expiresAt + "}";
+    }
 }
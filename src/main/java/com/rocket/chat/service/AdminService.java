@@ -1,17 +1,19 @@
 package com.rocket.chat.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rocket.chat.config.RestCallExecutor;
+import com.rocket.chat.dto.UserSession;
 import com.rocket.chat.exception.RocketChatException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class AdminService {
@@ -20,7 +22,7 @@ public class AdminService {
 
     private final RestTemplate restTemplate;
     private final UserService userService;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final RestCallExecutor restCalls;
 
     @Value("${rocketchat.base-url}")
     private String baseUrl;
@@ -31,32 +33,23 @@ public class AdminService {
     @Value("${rocketchat.admin-password}")
     private String adminPassword;
 
-    private String authToken;
-    private String userId;
+    private volatile UserSession session;
     private String roomId;
 
-    public AdminService(RestTemplate restTemplate, UserService userService) {
+    public AdminService(RestTemplate restTemplate, UserService userService, RestCallExecutor restCalls) {
         this.restTemplate = restTemplate;
         this.userService = userService;
+        this.restCalls = restCalls;
     }
 
+    /** Logs in as admin (through the session cache) and makes that the service session. */
     public void login() throws RocketChatException {
-        String loginUrl = baseUrl + "/login";
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-
-        String body = String.format("{\"user\": \"%s\", \"password\": \"%s\"}", adminUsername, adminPassword);
-        HttpEntity<String> request = new HttpEntity<>(body, headers);
-
         try {
-            ResponseEntity<String> response = restTemplate.postForEntity(loginUrl, request, String.class);
-            JsonNode json = objectMapper.readTree(response.getBody());
-
-            authToken = json.get("data").get("authToken").asText();
-            userId = json.get("data").get("userId").asText();
+            session = userService.loginUser(adminUsername, adminPassword);
+            userService.setServiceSession(session);
             // Create or get the public room
-            roomId = userService.createOrGetUserPublicRoom(adminUsername);
-            log.info("Admin login successful. Admin userId: {}", userId);
+            roomId = userService.createOrGetUserPublicRoom(session, adminUsername);
+            log.info("Admin login successful. Admin userId: {}", session.getUserId());
             log.info("Public room ID initialized: {}", roomId);
         } catch (Exception e) {
             log.error("Admin login failed", e);
@@ -64,7 +57,54 @@ public class AdminService {
         }
     }
 
+    public CompletableFuture<Void> loginAsync() {
+        return restCalls.submit(() -> {
+            login();
+            return null;
+        });
+    }
+
+    /** The admin session, logging in first if nobody has yet. */
+    public UserSession ensureLoggedIn() {
+        UserSession admin = session;
+        if (admin == null) {
+            login();
+            admin = session;
+        }
+        return admin;
+    }
+
     public void createUser(String username, String email, String name, String password) {
+        try {
+            postUser(username, email, name, password);
+            log.info("User created: {}", username);
+        } catch (Exception e) {
+            log.error("Failed to create user: {}", username, e);
+            throw new RocketChatException("Failed to create user", e);
+        }
+    }
+
+    /**
+     * Creates the user, or returns false without failing when Rocket.Chat reports the
+     * username or email as already taken, so a repeated import skips existing users.
+     */
+    public boolean createUserIfAbsent(String username, String email, String name, String password) {
+        try {
+            postUser(username, email, name, password);
+            log.debug("User created: {}", username);
+            return true;
+        } catch (HttpClientErrorException e) {
+            if (alreadyExists(e)) {
+                log.debug("User {} already exists", username);
+                return false;
+            }
+            throw new RocketChatException("Failed to create user", e);
+        } catch (Exception e) {
+            throw new RocketChatException("Failed to create user", e);
+        }
+    }
+
+    private void postUser(String username, String email, String name, String password) {
         String url = baseUrl + "/users.create";
         HttpHeaders headers = authHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
@@ -76,28 +116,35 @@ public class AdminService {
         body.put("password", password);
 
         HttpEntity<Map<String, Object>> request = new HttpEntity<>(body, headers);
-        try {
-            ResponseEntity<String> response = restTemplate.postForEntity(url, request, String.class);
-            log.info("User created: {}", username);
-        } catch (Exception e) {
-            log.error("Failed to create user: {}", username, e);
-            throw new RocketChatException("Failed to create user", e);
+        restTemplate.postForEntity(url, request, String.class);
+    }
+
+    private static boolean alreadyExists(HttpClientErrorException e) {
+        int status = e.getStatusCode().value();
+        if (status != 400 && status != 403) {
+            return false;
         }
+        String body = e.getResponseBodyAsString();
+        return body.contains("error-field-unavailable") || body.contains("already in use") || body.contains("already exists");
     }
 
-    public HttpHeaders authHeaders() {
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("X-Auth-Token", authToken);
-        headers.set("X-User-Id", userId);
-        return headers;
+    public CompletableFuture<Void> createUserAsync(String username, String email, String name, String password) {
+        return restCalls.submit(() -> {
+            createUser(username, email, name, password);
+            return null;
+        });
     }
 
-    public String getAdminAuthToken() {
-        return authToken;
+    public HttpHeaders authHeaders() {
+        UserSession admin = session;
+        if (admin == null) {
+            throw new IllegalStateException("Admin is not logged in. Call login() first.");
+        }
+        return userService.authHeaders(admin);
     }
 
-    public String getAdminUserId() {
-        return userId;
+    public UserSession getAdminSession() {
+        return session;
     }
 
     public String getPublicRoomId() {
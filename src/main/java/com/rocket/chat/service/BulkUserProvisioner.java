@@ -0,0 +1,335 @@
+package com.rocket.chat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rocket.chat.config.AdaptiveTokenBucket;
+import com.rocket.chat.config.RateLimitInterceptor;
+import com.rocket.chat.dto.UserProvisioningResult;
+import com.rocket.chat.dto.UserProvisioningResult.Status;
+import com.rocket.chat.dto.UserProvisioningRow;
+import com.rocket.chat.dto.UserSession;
+import com.rocket.chat.exception.RocketChatException;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Creates users in bulk from a streamed CSV or NDJSON upload. Rows are parsed one at
+ * a time and handed to at most {@code parallelism} virtual threads; when all are
+ * busy the reader stops, so the upload is consumed only as fast as users are
+ * created. Each {@code users.create} takes a token from a bucket of its own, fed by
+ * that endpoint's rate-limit headers, and a rate-limited create is retried after the
+ * server's reset time. Users whose username or email is already taken are reported
+ * as {@link Status#SKIPPED}, so a failed import can simply be uploaded again.
+ *
+ * <p>Every row produces one result, in completion order, and a progress record with
+ * throughput and (from the upload's length) an ETA is emitted every
+ * {@code progress-interval} and once at the end.
+ */
+@Component
+public class BulkUserProvisioner {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkUserProvisioner.class);
+
+    public enum Format {
+        CSV, NDJSON
+    }
+
+    private final AdminService adminService;
+    private final UserService userService;
+    private final AdaptiveTokenBucket bucket;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<Job> activeJobs = new ArrayList<>();
+    private final ScheduledExecutorService progressTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "provisioning-progress");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicInteger jobs = new AtomicInteger();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong invalid = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+
+    @Value("${rocketchat.provisioning.parallelism:8}")
+    private int parallelism;
+
+    @Value("${rocketchat.provisioning.max-retries:5}")
+    private int maxRetries;
+
+    @Value("${rocketchat.provisioning.progress-interval:2s}")
+    private Duration progressInterval;
+
+    public BulkUserProvisioner(AdminService adminService,
+                               UserService userService,
+                               RateLimitInterceptor rateLimits,
+                               @Value("${rocketchat.provisioning.rate:10}") double ratePerSecond,
+                               @Value("${rocketchat.provisioning.burst:10}") int burst) {
+        this.adminService = adminService;
+        this.userService = userService;
+        this.bucket = new AdaptiveTokenBucket(ratePerSecond, burst);
+        rateLimits.pace("users.create", bucket);
+    }
+
+    /**
+     * Provisions every row of the upload, sending results and progress to the sink as
+     * they happen; returns the final progress. {@code totalBytes} is the upload's length
+     * for the ETA, or -1 when unknown. The sink is called from several threads, one call
+     * at a time; if it throws (the client went away) no further rows are started.
+     */
+    public Map<String, Object> provision(InputStream upload, Format format, long totalBytes, boolean createRooms,
+                                         Consumer<Object> sink) throws IOException {
+        UserSession admin = adminService.ensureLoggedIn();
+        CountingInputStream counted = new CountingInputStream(upload);
+        Job job = new Job(counted, totalBytes, sink);
+        synchronized (activeJobs) {
+            activeJobs.add(job);
+        }
+        jobs.incrementAndGet();
+        long interval = Math.max(progressInterval.toMillis(), 100);
+        ScheduledFuture<?> progress = progressTimer.scheduleAtFixedRate(() -> job.emit(job.progress("progress")),
+                interval, interval, TimeUnit.MILLISECONDS);
+        Semaphore slots = new Semaphore(Math.max(parallelism, 1));
+        try (ProvisioningRowReader reader = new ProvisioningRowReader(counted, format, objectMapper);
+             ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            ProvisioningRowReader.Parsed parsed;
+            while (!job.aborted && (parsed = reader.next()) != null) {
+                // Stop reading the upload while every slot is busy
+                slots.acquire();
+                ProvisioningRowReader.Parsed row = parsed;
+                workers.execute(() -> {
+                    try {
+                        job.record(provisionRow(row, admin, createRooms));
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.aborted = true;
+        } finally {
+            progress.cancel(false);
+            synchronized (activeJobs) {
+                activeJobs.remove(job);
+            }
+        }
+        Map<String, Object> summary = job.progress("summary");
+        job.emit(summary);
+        log.info("Bulk provisioning finished | {}", summary);
+        return summary;
+    }
+
+    private UserProvisioningResult provisionRow(ProvisioningRowReader.Parsed parsed, UserSession admin, boolean createRooms) {
+        UserProvisioningRow row = parsed.value();
+        String username = row == null ? null : row.getUsername();
+        String problem = parsed.error() != null ? parsed.error() : validate(row);
+        if (problem != null) {
+            invalid.incrementAndGet();
+            return new UserProvisioningResult(parsed.row(), username, Status.INVALID, null, problem);
+        }
+        Status status;
+        try {
+            status = createUser(row) ? Status.CREATED : Status.SKIPPED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed.incrementAndGet();
+            return new UserProvisioningResult(parsed.row(), username, Status.FAILED, null, "Interrupted");
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+            log.warn("Failed to provision user {}: {}", username, e.getMessage());
+            return new UserProvisioningResult(parsed.row(), username, Status.FAILED, null, e.getMessage());
+        }
+        (status == Status.CREATED ? created : skipped).incrementAndGet();
+        if (!createRooms) {
+            return new UserProvisioningResult(parsed.row(), username, status, null, null);
+        }
+        try {
+            String roomId = userService.createOrGetUserPublicRoom(admin, username);
+            return new UserProvisioningResult(parsed.row(), username, status, roomId, null);
+        } catch (RuntimeException e) {
+            // The user exists either way; report the room problem on the row
+            return new UserProvisioningResult(parsed.row(), username, status, null, "Room: " + e.getMessage());
+        }
+    }
+
+    private static String validate(UserProvisioningRow row) {
+        if (row.getUsername() == null || row.getUsername().isBlank()) {
+            return "username is required";
+        }
+        if (row.getEmail() == null || row.getEmail().isBlank()) {
+            return "email is required";
+        }
+        if (row.getPassword() == null || row.getPassword().isEmpty()) {
+            return "password is required";
+        }
+        return null;
+    }
+
+    /** One paced create, retried while Rocket.Chat answers with a rate limit. */
+    private boolean createUser(UserProvisioningRow row) throws InterruptedException {
+        String name = row.getName() == null ? row.getUsername() : row.getName();
+        for (int attempt = 1; ; attempt++) {
+            bucket.acquire();
+            try {
+                return adminService.createUserIfAbsent(row.getUsername(), row.getEmail(), name, row.getPassword());
+            } catch (RocketChatException e) {
+                long resetMillis = OutboundMessageScheduler.rateLimitResetMillis(e);
+                if (resetMillis < 0 || attempt > maxRetries) {
+                    throw e;
+                }
+                long delay = resetMillis > 0 ? resetMillis : OutboundMessageScheduler.backoffMillis(attempt);
+                bucket.pause(Duration.ofMillis(delay));
+                retried.incrementAndGet();
+                log.warn("Rate limited creating user {} | retry {}/{} in {} ms", row.getUsername(), attempt, maxRetries, delay);
+            }
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("jobs", jobs.get());
+        snapshot.put("created", created.get());
+        snapshot.put("skipped", skipped.get());
+        snapshot.put("invalid", invalid.get());
+        snapshot.put("failed", failed.get());
+        snapshot.put("rateLimitRetries", retried.get());
+        snapshot.put("parallelism", parallelism);
+        List<Map<String, Object>> running = new ArrayList<>();
+        synchronized (activeJobs) {
+            for (Job job : activeJobs) {
+                running.add(job.progress("progress"));
+            }
+        }
+        snapshot.put("running", running);
+        snapshot.put("bucket", bucket.snapshot());
+        return snapshot;
+    }
+
+    @PreDestroy
+    public void stop() {
+        progressTimer.shutdownNow();
+    }
+
+    private final class Job {
+        private final CountingInputStream upload;
+        private final long totalBytes;
+        private final Consumer<Object> sink;
+        private final long startNanos = System.nanoTime();
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong jobCreated = new AtomicLong();
+        private final AtomicLong jobSkipped = new AtomicLong();
+        private final AtomicLong jobInvalid = new AtomicLong();
+        private final AtomicLong jobFailed = new AtomicLong();
+        private volatile boolean aborted;
+
+        Job(CountingInputStream upload, long totalBytes, Consumer<Object> sink) {
+            this.upload = upload;
+            this.totalBytes = totalBytes;
+            this.sink = sink;
+        }
+
+        void record(UserProvisioningResult result) {
+            rows.incrementAndGet();
+            switch (result.getStatus()) {
+                case CREATED -> jobCreated.incrementAndGet();
+                case SKIPPED -> jobSkipped.incrementAndGet();
+                case INVALID -> jobInvalid.incrementAndGet();
+                case FAILED -> jobFailed.incrementAndGet();
+            }
+            emit(result);
+        }
+
+        synchronized void emit(Object line) {
+            if (aborted) {
+                return;
+            }
+            try {
+                sink.accept(line);
+            } catch (RuntimeException e) {
+                aborted = true;
+                log.warn("Provisioning result stream closed; no further rows will be started: {}", e.getMessage());
+            }
+        }
+
+        Map<String, Object> progress(String type) {
+            long done = rows.get();
+            double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+            double rate = elapsedSeconds > 0 ? done / elapsedSeconds : 0.0;
+            long bytesRead = upload.count();
+            Map<String, Object> progress = new LinkedHashMap<>();
+            progress.put("type", type);
+            progress.put("rows", done);
+            progress.put("created", jobCreated.get());
+            progress.put("skipped", jobSkipped.get());
+            progress.put("invalid", jobInvalid.get());
+            progress.put("failed", jobFailed.get());
+            progress.put("elapsedSeconds", Math.round(elapsedSeconds * 10) / 10.0);
+            progress.put("rowsPerSecond", Math.round(rate * 10) / 10.0);
+            progress.put("bytesRead", bytesRead);
+            if (totalBytes > 0) {
+                double fraction = Math.min((double) bytesRead / totalBytes, 1.0);
+                progress.put("totalBytes", totalBytes);
+                progress.put("percent", Math.round(fraction * 1000) / 10.0);
+                // Assumes the rest of the upload has rows of the same size and is created at the same rate
+                progress.put("etaSeconds", fraction > 0 ? Math.round(elapsedSeconds * (1 - fraction) / fraction) : null);
+            }
+            if (aborted) {
+                progress.put("aborted", true);
+            }
+            return progress;
+        }
+    }
+
+    /** Counts the bytes the parser has consumed, for progress against the upload length. */
+    private static final class CountingInputStream extends FilterInputStream {
+        private volatile long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        long count() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.rocket.chat.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Tracks room inactivity on a hashed timing wheel. Each room owns exactly one
+ * entry, and activity relinks that entry into a later bucket in O(1), so a busy
+ * room costs the same as a quiet one no matter how many messages it receives.
+ * Expiry callbacks run on a separate executor so a slow close never delays the tick.
+ */
+@Component
+public class InactivityTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(InactivityTracker.class);
+
+    @Value("${rocketchat.session.inactivity-timeout:10m}")
+    private Duration defaultTimeout;
+
+    @Value("${rocketchat.session.tick:1s}")
+    private Duration tick;
+
+    @Value("${rocketchat.session.wheel-size:512}")
+    private int wheelSize;
+
+    /** Timeouts keyed by Rocket.Chat room type (c, p, d, l), e.g. {d:'30m', l:'5m'}. */
+    @Value("#{${rocketchat.session.room-type-timeouts:{:}}}")
+    private Map<String, String> roomTypeTimeoutConfig;
+
+    /** Timeouts keyed by room ID; these win over room-type timeouts. */
+    @Value("#{${rocketchat.session.room-timeouts:{:}}}")
+    private Map<String, String> roomTimeoutConfig;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Duration> roomTypeTimeouts = new ConcurrentHashMap<>();
+    private final Map<String, Duration> roomTimeouts = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "inactivity-wheel");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService expiryExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicLong expired = new AtomicLong();
+
+    private Entry[] buckets;
+    private int mask;
+    private long tickMs;
+    private long currentTick;
+    private volatile Consumer<String> expiryHandler = roomId -> { };
+
+    @PostConstruct
+    public void start() {
+        int size = Integer.highestOneBit(Math.max(wheelSize - 1, 1)) << 1;
+        buckets = new Entry[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = Entry.sentinel();
+        }
+        mask = size - 1;
+        tickMs = Math.max(tick.toMillis(), 1);
+        roomTypeTimeoutConfig.forEach((type, value) -> roomTypeTimeouts.put(type, DurationStyle.detectAndParse(value)));
+        roomTimeoutConfig.forEach((roomId, value) -> roomTimeouts.put(roomId, DurationStyle.detectAndParse(value)));
+        ticker.scheduleAtFixedRate(this::advance, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        log.info("Inactivity wheel started | buckets={}, tick={}ms, defaultTimeout={}", size, tickMs, defaultTimeout);
+    }
+
+    @PreDestroy
+    public void stop() {
+        ticker.shutdownNow();
+        expiryExecutor.shutdown();
+    }
+
+    public void onExpiry(Consumer<String> handler) {
+        this.expiryHandler = handler;
+    }
+
+    public void setRoomTimeout(String roomId, Duration timeout) {
+        roomTimeouts.put(roomId, timeout);
+    }
+
+    public void setRoomTypeTimeout(String roomType, Duration timeout) {
+        roomTypeTimeouts.put(roomType, timeout);
+    }
+
+    /** Records activity for a room, (re)arming its single timer. Room type may be null. */
+    public void touch(String roomId, String roomType) {
+        long ticks = Math.max(1, (timeoutFor(roomId, roomType).toMillis() + tickMs - 1) / tickMs);
+        synchronized (this) {
+            Entry entry = entries.get(roomId);
+            if (entry == null) {
+                entry = new Entry(roomId);
+                entries.put(roomId, entry);
+            } else {
+                entry.unlink();
+            }
+            entry.deadlineTick = currentTick + ticks;
+            entry.linkBefore(buckets[(int) (entry.deadlineTick & mask)]);
+        }
+    }
+
+    public void remove(String roomId) {
+        synchronized (this) {
+            Entry entry = entries.remove(roomId);
+            if (entry != null) {
+                entry.unlink();
+            }
+        }
+    }
+
+    public int trackedRooms() {
+        return entries.size();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("trackedRooms", trackedRooms());
+        snapshot.put("expired", expired.get());
+        snapshot.put("buckets", buckets.length);
+        snapshot.put("tickMs", tickMs);
+        snapshot.put("defaultTimeout", defaultTimeout.toString());
+        return snapshot;
+    }
+
+    Duration timeoutFor(String roomId, String roomType) {
+        Duration timeout = roomTimeouts.get(roomId);
+        if (timeout == null && roomType != null) {
+            timeout = roomTypeTimeouts.get(roomType);
+        }
+        return timeout != null ? timeout : defaultTimeout;
+    }
+
+    private void advance() {
+        List<String> due = new ArrayList<>();
+        synchronized (this) {
+            currentTick++;
+            Entry head = buckets[(int) (currentTick & mask)];
+            Entry entry = head.next;
+            while (entry != head) {
+                Entry next = entry.next;
+                // Entries further than one rotation away share the bucket; they stay until their round
+                if (entry.deadlineTick <= currentTick) {
+                    entry.unlink();
+                    entries.remove(entry.roomId);
+                    due.add(entry.roomId);
+                }
+                entry = next;
+            }
+        }
+        for (String roomId : due) {
+            expired.incrementAndGet();
+            expiryExecutor.execute(() -> fire(roomId));
+        }
+    }
+
+    private void fire(String roomId) {
+        // Activity between expiry and this callback re-armed the room, so it is no longer idle
+        if (entries.containsKey(roomId)) {
+            return;
+        }
+        try {
+            expiryHandler.accept(roomId);
+        } catch (Exception e) {
+            log.error("Inactivity expiry handler failed for room {}", roomId, e);
+        }
+    }
+
+    private static final class Entry {
+        private final String roomId;
+        private long deadlineTick;
+        private Entry prev;
+        private Entry next;
+
+        private Entry(String roomId) {
+            this.roomId = roomId;
+        }
+
+        static Entry sentinel() {
+            Entry entry = new Entry(null);
+            entry.prev = entry;
+            entry.next = entry;
+            return entry;
+        }
+
+        void linkBefore(Entry head) {
+            prev = head.prev;
+            next = head;
+            head.prev.next = this;
+            head.prev = this;
+        }
+
+        void unlink() {
+            if (prev != null) {
+                prev.next = next;
+                next.prev = prev;
+                prev = null;
+                next = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.rocket.chat.service;
+
+import com.rocket.chat.dto.RoomMessage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands received room messages off the WebSocket read thread. Messages are
+ * partitioned by room ID so that every room is drained by exactly one
+ * virtual-thread worker, which keeps per-room ordering while slow REST calls
+ * in {@link UserService#processReceivedMessage} only stall their own partition.
+ */
+@Component
+public class InboundMessagePipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(InboundMessagePipeline.class);
+
+    public enum OverflowPolicy {
+        /** Block the producer (the WebSocket read thread) until space frees up. */
+        BLOCK,
+        /** Discard the oldest queued message of the partition. */
+        DROP_OLDEST,
+        /** Park the message in an unbounded overflow queue drained after the bounded one. */
+        SPILL
+    }
+
+    private final UserService userService;
+    private final MessageJournal messageJournal;
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+
+    @Value("${rocketchat.inbound.partitions:16}")
+    private int partitionCount;
+
+    @Value("${rocketchat.inbound.queue-capacity:1024}")
+    private int queueCapacity;
+
+    @Value("${rocketchat.inbound.overflow-policy:BLOCK}")
+    private OverflowPolicy overflowPolicy;
+
+    private Partition[] partitions;
+    private volatile boolean running;
+
+    public InboundMessagePipeline(UserService userService, MessageJournal messageJournal) {
+        this.userService = userService;
+        this.messageJournal = messageJournal;
+    }
+
+    @PostConstruct
+    public void start() {
+        partitions = new Partition[partitionCount];
+        running = true;
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new Partition(i, queueCapacity);
+        }
+        log.info("Inbound pipeline started | partitions={}, capacity={}, policy={}", partitionCount, queueCapacity, overflowPolicy);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        long left = 0;
+        for (Partition partition : partitions) {
+            partition.worker.interrupt();
+            left += partition.discard();
+        }
+        if (left > 0) {
+            discarded.addAndGet(left);
+            log.warn("Inbound pipeline stopped with {} messages still queued; they were not processed", left);
+        }
+    }
+
+    public void submit(RoomMessage message) {
+        Partition partition = partitions[Math.floorMod(message.getRoomId().hashCode(), partitions.length)];
+        try {
+            partition.offer(message);
+            enqueued.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while enqueuing message for room {}", message.getRoomId());
+        }
+    }
+
+    public int depth() {
+        int depth = 0;
+        for (Partition partition : partitions) {
+            depth += partition.depth();
+        }
+        return depth;
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("policy", overflowPolicy);
+        snapshot.put("capacityPerPartition", queueCapacity);
+        snapshot.put("depth", depth());
+        snapshot.put("enqueued", enqueued.get());
+        snapshot.put("processed", processed.get());
+        snapshot.put("failed", failed.get());
+        snapshot.put("dropped", dropped.get());
+        snapshot.put("spilled", spilled.get());
+        snapshot.put("discardedAtShutdown", discarded.get());
+
+        List<Map<String, Object>> perPartition = new ArrayList<>(partitions.length);
+        for (Partition partition : partitions) {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("partition", partition.index);
+            stats.put("queued", partition.queue.size());
+            stats.put("spilled", partition.spill.size());
+            stats.put("maxDepth", partition.maxDepth.get());
+            perPartition.add(stats);
+        }
+        snapshot.put("partitions", perPartition);
+        return snapshot;
+    }
+
+    private void dispatch(RoomMessage message) {
+        try {
+            messageJournal.append(message);
+            userService.processReceivedMessage(message);
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            log.error("Failed to process message for room {}", message.getRoomId(), e);
+        } finally {
+            processed.incrementAndGet();
+        }
+    }
+
+    private final class Partition {
+        private final int index;
+        private final ArrayBlockingQueue<RoomMessage> queue;
+        private final ConcurrentLinkedQueue<RoomMessage> spill = new ConcurrentLinkedQueue<>();
+        private final ReentrantLock producerLock = new ReentrantLock();
+        private final Thread worker;
+        private final AtomicInteger maxDepth = new AtomicInteger();
+
+        Partition(int index, int capacity) {
+            this.index = index;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.worker = Thread.ofVirtual().name("inbound-" + index).start(this::drain);
+        }
+
+        void offer(RoomMessage message) throws InterruptedException {
+            producerLock.lock();
+            try {
+                switch (overflowPolicy) {
+                    case BLOCK -> queue.put(message);
+                    case DROP_OLDEST -> {
+                        while (!queue.offer(message)) {
+                            RoomMessage oldest = queue.poll();
+                            if (oldest != null) {
+                                dropped.incrementAndGet();
+                                // The room's journal now has a hole
+                                messageJournal.endCoverage(oldest.getRoomId());
+                            }
+                        }
+                    }
+                    case SPILL -> {
+                        // Once spilling, keep spilling until the worker catches up so room order holds
+                        if (!spill.isEmpty() || !queue.offer(message)) {
+                            spill.add(message);
+                            spilled.incrementAndGet();
+                        }
+                    }
+                }
+            } finally {
+                producerLock.unlock();
+            }
+            int depth = depth();
+            if (depth > maxDepth.get()) {
+                maxDepth.accumulateAndGet(depth, Math::max);
+            }
+        }
+
+        int depth() {
+            return queue.size() + spill.size();
+        }
+
+        /** Empties the partition once its worker is stopped; returns how many messages were left. */
+        int discard() {
+            int count = 0;
+            while (queue.poll() != null) {
+                count++;
+            }
+            while (spill.poll() != null) {
+                count++;
+            }
+            return count;
+        }
+
+        private void drain() {
+            while (running) {
+                try {
+                    RoomMessage message = queue.poll();
+                    if (message == null) {
+                        message = spill.poll();
+                    }
+                    if (message == null) {
+                        message = queue.take();
+                    }
+                    dispatch(message);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
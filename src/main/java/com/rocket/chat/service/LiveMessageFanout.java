@@ -0,0 +1,521 @@
+package com.rocket.chat.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rocket.chat.dto.RoomMessage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pushes room messages seen on the Rocket.Chat WebSocket to local subscribers:
+ * the {@code /chat/events} SSE stream and the push WebSocket server. A message is
+ * encoded once and handed to one of a few dispatcher threads, each owning a share
+ * of the subscribers and an index of them by room, so the WebSocket read thread
+ * never waits on a subscriber.
+ *
+ * <p>Every subscriber has a fixed-size ring buffer drained by its own virtual
+ * thread, which does the (possibly blocking) write to the client. A client that
+ * falls behind fills only its own buffer: with {@code DROP_OLDEST} the oldest events
+ * are overwritten and the client is told how many it missed, with {@code DISCONNECT}
+ * it is closed. A client that has not accepted a write for {@code stall-timeout} is
+ * closed under either policy.
+ */
+@Component
+public class LiveMessageFanout {
+
+    private static final Logger log = LoggerFactory.getLogger(LiveMessageFanout.class);
+
+    public enum OverflowPolicy {
+        /** Overwrite the oldest buffered event and send a {@code dropped} notice before the next one. */
+        DROP_OLDEST,
+        /** Close the subscriber as soon as its buffer is full. */
+        DISCONNECT
+    }
+
+    /** Where a subscriber's events go. Called only from the subscriber's delivery thread, except {@link #close}. */
+    public interface Sink {
+
+        void send(Event event) throws IOException;
+
+        /** Keeps idle connections open and finds clients that went away without closing. */
+        void heartbeat() throws IOException;
+
+        /** False while earlier writes are still queued for the client; delivery then waits instead of queueing more. */
+        default boolean writable() {
+            return true;
+        }
+
+        void close(String reason);
+    }
+
+    /** A message or notice as pushed to subscribers; the payload is encoded once for all of them. */
+    public static final class Event {
+
+        public enum Type {
+            MESSAGE, UPDATE, DROPPED;
+
+            public String eventName() {
+                return name().toLowerCase();
+            }
+        }
+
+        private static final Event HEARTBEAT = new Event(0, null, null, null);
+
+        private final long id;
+        private final Type type;
+        private final String roomId;
+        private final String data;
+        private volatile String envelope;
+
+        Event(long id, Type type, String roomId, String data) {
+            this.id = id;
+            this.type = type;
+            this.roomId = roomId;
+            this.data = data;
+        }
+
+        static Event dropped(long count) {
+            return new Event(0, Type.DROPPED, null, "{\"dropped\":" + count + "}");
+        }
+
+        /** Sequence number of the message; 0 for notices. */
+        public long getId() {
+            return id;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public String getRoomId() {
+            return roomId;
+        }
+
+        /** The JSON payload: the {@link RoomMessage} for messages, {@code {"dropped":n}} for notices. */
+        public String getData() {
+            return data;
+        }
+
+        /** The payload wrapped as {@code {"event":..,"id":..,"data":..}}, for transports without SSE's framing. */
+        public String envelope() {
+            String wrapped = envelope;
+            if (wrapped == null) {
+                wrapped = "{\"event\":\"" + type.eventName() + "\",\"id\":" + id + ",\"data\":" + data + "}";
+                envelope = wrapped;
+            }
+            return wrapped;
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+    private final int maxSubscribers;
+    private final int bufferSize;
+    private final OverflowPolicy overflowPolicy;
+    private final long stallTimeoutNanos;
+    private final long heartbeatNanos;
+    private final int dispatchQueue;
+    private final Shard[] shards;
+    private final Map<Long, Subscriber> subscribers = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong nextSubscriber = new AtomicLong();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong disconnected = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private volatile boolean running;
+
+    public LiveMessageFanout(ObjectMapper objectMapper,
+                             @Value("${rocketchat.push.max-subscribers:20000}") int maxSubscribers,
+                             @Value("${rocketchat.push.buffer-size:256}") int bufferSize,
+                             @Value("${rocketchat.push.overflow-policy:DROP_OLDEST}") OverflowPolicy overflowPolicy,
+                             @Value("${rocketchat.push.stall-timeout:30s}") Duration stallTimeout,
+                             @Value("${rocketchat.push.heartbeat:15s}") Duration heartbeat,
+                             @Value("${rocketchat.push.dispatchers:4}") int dispatchers,
+                             @Value("${rocketchat.push.dispatch-queue:4096}") int dispatchQueue) {
+        this.objectMapper = objectMapper;
+        this.maxSubscribers = maxSubscribers;
+        this.bufferSize = bufferSize;
+        this.overflowPolicy = overflowPolicy;
+        this.stallTimeoutNanos = stallTimeout.toNanos();
+        this.heartbeatNanos = heartbeat.toNanos();
+        this.dispatchQueue = dispatchQueue;
+        this.shards = new Shard[Math.max(dispatchers, 1)];
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(i, dispatchQueue);
+        }
+        log.info("Live message fan-out started | dispatchers={}, buffer={}, policy={}", shards.length, bufferSize, overflowPolicy);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        for (Shard shard : shards) {
+            shard.dispatcher.interrupt();
+        }
+        for (Subscriber subscriber : subscribers.values()) {
+            disconnect(subscriber, "Server shutting down");
+        }
+    }
+
+    /**
+     * Registers a subscriber for the given rooms (all rooms when empty) and starts
+     * delivering to it; null when {@code max-subscribers} are already connected.
+     */
+    public Subscriber subscribe(Collection<String> roomIds, Sink sink) {
+        if (subscribers.size() >= maxSubscribers) {
+            rejected.incrementAndGet();
+            return null;
+        }
+        long id = nextSubscriber.incrementAndGet();
+        Subscriber subscriber = new Subscriber(id, roomIds == null ? Set.of() : Set.copyOf(roomIds), sink,
+                shards[(int) (id % shards.length)]);
+        subscribers.put(id, subscriber);
+        subscriber.shard.add(subscriber);
+        Thread.ofVirtual().name("push-" + id).start(() -> deliver(subscriber));
+        log.debug("Subscriber {} connected | Rooms: {}", id, subscriber.roomIds.isEmpty() ? "all" : subscriber.roomIds);
+        return subscriber;
+    }
+
+    /** Removes the subscriber once its client has gone; safe to call more than once. */
+    public void unsubscribe(Subscriber subscriber) {
+        if (subscriber == null || subscribers.remove(subscriber.id) == null) {
+            return;
+        }
+        subscriber.shard.remove(subscriber);
+        subscriber.close();
+        log.debug("Subscriber {} disconnected | Delivered: {}, Dropped: {}", subscriber.id, subscriber.delivered, subscriber.dropped);
+    }
+
+    /**
+     * Queues a message from the WebSocket for every subscriber following its room.
+     * Never blocks: when a dispatcher is backed up the message is counted as lost
+     * and that dispatcher's subscribers get a {@code dropped} notice instead.
+     */
+    public void publish(RoomMessage message, boolean isNew) {
+        if (!running || subscribers.isEmpty()) {
+            return;
+        }
+        String data;
+        try {
+            data = objectMapper.writeValueAsString(message);
+        } catch (JsonProcessingException e) {
+            log.error("Failed to encode message {} for push", message.getId(), e);
+            return;
+        }
+        Event event = new Event(sequence.incrementAndGet(), isNew ? Event.Type.MESSAGE : Event.Type.UPDATE, message.getRoomId(), data);
+        published.incrementAndGet();
+        for (Shard shard : shards) {
+            if (!shard.queue.offer(event)) {
+                shard.lost.incrementAndGet();
+                lost.incrementAndGet();
+            }
+        }
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    private void deliver(Subscriber subscriber) {
+        String reason = null;
+        try {
+            while (true) {
+                Event event = subscriber.take(heartbeatNanos);
+                if (event == null) {
+                    break;
+                }
+                subscriber.sendingSince = System.nanoTime();
+                while (!subscriber.sink.writable()) {
+                    if (System.nanoTime() - subscriber.sendingSince > stallTimeoutNanos) {
+                        throw new IOException("Client accepted nothing for " + TimeUnit.NANOSECONDS.toSeconds(stallTimeoutNanos) + "s");
+                    }
+                    // The ring keeps absorbing (or dropping) events meanwhile
+                    Thread.sleep(10);
+                }
+                if (event == Event.HEARTBEAT) {
+                    subscriber.sink.heartbeat();
+                } else {
+                    subscriber.sink.send(event);
+                    if (event.type != Event.Type.DROPPED) {
+                        subscriber.delivered++;
+                        delivered.incrementAndGet();
+                    }
+                }
+                subscriber.sendingSince = 0;
+            }
+        } catch (IOException | RuntimeException e) {
+            reason = "Delivery failed";
+            log.debug("Subscriber {} dropped: {}", subscriber.id, e.getMessage());
+        } catch (InterruptedException e) {
+            reason = "Server shutting down";
+        } finally {
+            unsubscribe(subscriber);
+            subscriber.sink.close(reason != null ? reason : subscriber.closeReason);
+        }
+    }
+
+    /** Closes a subscriber from a dispatcher thread without waiting on its client. */
+    private void disconnect(Subscriber subscriber, String reason) {
+        subscriber.closeReason = reason;
+        unsubscribe(subscriber);
+        Thread.ofVirtual().start(() -> subscriber.sink.close(reason));
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("policy", overflowPolicy);
+        snapshot.put("bufferSize", bufferSize);
+        snapshot.put("subscribers", subscribers.size());
+        snapshot.put("maxSubscribers", maxSubscribers);
+        snapshot.put("published", published.get());
+        snapshot.put("delivered", delivered.get());
+        snapshot.put("dropped", dropped.get());
+        snapshot.put("lost", lost.get());
+        snapshot.put("disconnectedSlow", disconnected.get());
+        snapshot.put("rejected", rejected.get());
+        int lagging = 0;
+        for (Subscriber subscriber : subscribers.values()) {
+            if (subscriber.depth() >= bufferSize / 2) {
+                lagging++;
+            }
+        }
+        snapshot.put("lagging", lagging);
+        snapshot.put("maxBufferedEvents", maxDepth.get());
+        int queued = 0;
+        for (Shard shard : shards) {
+            queued += shard.queue.size();
+        }
+        snapshot.put("dispatchQueued", queued);
+        return snapshot;
+    }
+
+    /** A connected client: its room filter and the ring buffer between its dispatcher and its delivery thread. */
+    public final class Subscriber {
+
+        private final long id;
+        private final Set<String> roomIds;
+        private final Sink sink;
+        private final Shard shard;
+        private final Event[] ring = new Event[bufferSize];
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        private long head;
+        private long tail;
+        private long missed;
+        private boolean waiting;
+        private boolean closed;
+        private volatile long sendingSince;
+        private volatile String closeReason;
+        private volatile long delivered;
+        private volatile long dropped;
+
+        private Subscriber(long id, Set<String> roomIds, Sink sink, Shard shard) {
+            this.id = id;
+            this.roomIds = roomIds;
+            this.sink = sink;
+            this.shard = shard;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        /** Buffers the event; false when the subscriber has to be disconnected instead. */
+        private boolean offer(Event event) {
+            lock.lock();
+            try {
+                if (closed) {
+                    return true;
+                }
+                if (head - tail == ring.length) {
+                    if (overflowPolicy == OverflowPolicy.DISCONNECT || isStalled()) {
+                        return false;
+                    }
+                    ring[(int) (tail++ % ring.length)] = null;
+                    missed++;
+                    dropped++;
+                    LiveMessageFanout.this.dropped.incrementAndGet();
+                }
+                ring[(int) (head++ % ring.length)] = event;
+                int depth = (int) (head - tail);
+                if (depth > maxDepth.get()) {
+                    maxDepth.accumulateAndGet(depth, Math::max);
+                }
+                if (waiting) {
+                    notEmpty.signal();
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** Records events lost before they reached this subscriber's buffer. */
+        private void missed(long count) {
+            lock.lock();
+            try {
+                missed += count;
+                if (waiting) {
+                    notEmpty.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** The next event, a heartbeat after {@code idleNanos} without one, or null once closed. */
+        private Event take(long idleNanos) throws InterruptedException {
+            lock.lock();
+            try {
+                long remaining = idleNanos;
+                while (!closed && head == tail && missed == 0) {
+                    if (remaining <= 0) {
+                        return Event.HEARTBEAT;
+                    }
+                    waiting = true;
+                    try {
+                        remaining = notEmpty.awaitNanos(remaining);
+                    } finally {
+                        waiting = false;
+                    }
+                }
+                if (closed) {
+                    return null;
+                }
+                if (missed > 0) {
+                    // The lost events are older than anything still buffered, so the notice goes first
+                    Event notice = Event.dropped(missed);
+                    missed = 0;
+                    return notice;
+                }
+                int index = (int) (tail++ % ring.length);
+                Event event = ring[index];
+                ring[index] = null;
+                return event;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean isStalled() {
+            long since = sendingSince;
+            return since != 0 && System.nanoTime() - since > stallTimeoutNanos;
+        }
+
+        private int depth() {
+            lock.lock();
+            try {
+                return (int) (head - tail);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void close() {
+            lock.lock();
+            try {
+                closed = true;
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /** One dispatcher thread with its subscribers, indexed by room. */
+    private final class Shard {
+        private final ArrayBlockingQueue<Event> queue;
+        /** Every subscriber of this shard once, however many rooms it follows. */
+        private final Set<Subscriber> members = ConcurrentHashMap.newKeySet();
+        private final Set<Subscriber> everyRoom = ConcurrentHashMap.newKeySet();
+        private final Map<String, Set<Subscriber>> byRoom = new ConcurrentHashMap<>();
+        private final AtomicLong lost = new AtomicLong();
+        private final Thread dispatcher;
+
+        Shard(int index, int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.dispatcher = Thread.ofPlatform().daemon().name("push-dispatch-" + index).start(this::run);
+        }
+
+        void add(Subscriber subscriber) {
+            members.add(subscriber);
+            if (subscriber.roomIds.isEmpty()) {
+                everyRoom.add(subscriber);
+                return;
+            }
+            for (String roomId : subscriber.roomIds) {
+                byRoom.computeIfAbsent(roomId, id -> ConcurrentHashMap.newKeySet()).add(subscriber);
+            }
+        }
+
+        void remove(Subscriber subscriber) {
+            members.remove(subscriber);
+            everyRoom.remove(subscriber);
+            for (String roomId : subscriber.roomIds) {
+                byRoom.computeIfPresent(roomId, (id, followers) -> {
+                    followers.remove(subscriber);
+                    return followers.isEmpty() ? null : followers;
+                });
+            }
+        }
+
+        private void run() {
+            while (running) {
+                Event event;
+                try {
+                    event = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                long gap = lost.getAndSet(0);
+                if (gap > 0) {
+                    // Which rooms the lost messages were for is unknown, so everyone here hears about them, once
+                    members.forEach(subscriber -> subscriber.missed(gap));
+                }
+                dispatch(event, everyRoom);
+                Set<Subscriber> followers = byRoom.get(event.roomId);
+                if (followers != null) {
+                    dispatch(event, followers);
+                }
+            }
+        }
+
+        private void dispatch(Event event, Set<Subscriber> targets) {
+            for (Subscriber subscriber : targets) {
+                if (!subscriber.offer(event)) {
+                    log.warn("Subscriber {} too slow, disconnecting | Buffered: {}, Dropped: {}",
+                            subscriber.id, bufferSize, subscriber.dropped);
+                    disconnected.incrementAndGet();
+                    disconnect(subscriber, "Too slow");
+                }
+            }
+        }
+    }
+}
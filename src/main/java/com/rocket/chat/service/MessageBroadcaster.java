@@ -0,0 +1,145 @@
+package com.rocket.chat.service;
+
+import com.rocket.chat.config.AimdLimit;
+import com.rocket.chat.dto.BroadcastRequest;
+import com.rocket.chat.dto.BroadcastResult;
+import com.rocket.chat.dto.BroadcastRoomResult;
+import com.rocket.chat.dto.UserSession;
+import com.rocket.chat.exception.RocketChatException;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Posts one message to many rooms. Each post goes through
+ * {@link UserService#sendMessageAsync}, so it is paced and ordered with every other
+ * outgoing message; a broadcast keeps at most {@link AimdLimit#limit()} posts
+ * outstanding so it cannot fill the outbound queue ahead of interactive traffic.
+ * The limit is shared by all broadcasts and grows while posts complete within
+ * {@code latency-threshold}, and halves when they fail or queue for longer.
+ */
+@Component
+public class MessageBroadcaster {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageBroadcaster.class);
+
+    private final UserService userService;
+    private final AimdLimit limit;
+    private final int maxTargets;
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("broadcast-", 0).factory());
+    private final AtomicLong broadcasts = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public MessageBroadcaster(UserService userService,
+                              @Value("${rocketchat.broadcast.initial-concurrency:4}") int initialConcurrency,
+                              @Value("${rocketchat.broadcast.min-concurrency:1}") int minConcurrency,
+                              @Value("${rocketchat.broadcast.max-concurrency:64}") int maxConcurrency,
+                              @Value("${rocketchat.broadcast.latency-threshold:1s}") Duration latencyThreshold,
+                              @Value("${rocketchat.broadcast.max-targets:5000}") int maxTargets) {
+        this.userService = userService;
+        this.limit = new AimdLimit(initialConcurrency, minConcurrency, maxConcurrency, 0.5, latencyThreshold);
+        this.maxTargets = maxTargets;
+    }
+
+    /**
+     * Resolves the request's rooms and posts to all of them. The future completes once
+     * every post has succeeded or failed; it fails only if the rooms cannot be resolved.
+     * Malformed selectors throw {@link IllegalArgumentException} immediately.
+     */
+    public CompletableFuture<BroadcastResult> broadcast(UserSession session, BroadcastRequest request) {
+        if (request.getMessage() == null || request.getMessage().isBlank()) {
+            throw new IllegalArgumentException("message is required");
+        }
+        Duration activeWithin = request.getActiveWithin() == null ? null : DurationStyle.detectAndParse(request.getActiveWithin());
+        String prefix = request.getRoomNamePrefix() == null ? null : request.getRoomNamePrefix().replaceFirst("\\*$", "");
+        if ((request.getRoomIds() == null || request.getRoomIds().isEmpty()) && activeWithin == null && (prefix == null || prefix.isEmpty())) {
+            throw new IllegalArgumentException("Select rooms with roomIds, activeWithin or roomNamePrefix");
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            Map<String, String> targets = resolveTargets(session, request.getRoomIds(), activeWithin, prefix);
+            if (targets.size() > maxTargets) {
+                throw new RocketChatException("Broadcast selects " + targets.size() + " rooms, more than the limit of " + maxTargets);
+            }
+            return post(session, targets, request.getMessage());
+        }, executor);
+    }
+
+    /** Room ID to name (null when selected by ID or activity), in selector order, without duplicates. */
+    private Map<String, String> resolveTargets(UserSession session, List<String> roomIds, Duration activeWithin, String prefix) {
+        Map<String, String> targets = new LinkedHashMap<>();
+        if (roomIds != null) {
+            roomIds.forEach(roomId -> targets.putIfAbsent(roomId, null));
+        }
+        if (activeWithin != null) {
+            userService.recentlyActiveRooms(activeWithin).forEach(roomId -> targets.putIfAbsent(roomId, null));
+        }
+        if (prefix != null && !prefix.isEmpty()) {
+            userService.findPublicRoomsByPrefix(session, prefix).forEach((name, roomId) -> targets.put(roomId, name));
+        }
+        return targets;
+    }
+
+    private BroadcastResult post(UserSession session, Map<String, String> targets, String message) {
+        long start = System.nanoTime();
+        BroadcastRoomResult[] results = new BroadcastRoomResult[targets.size()];
+        CountDownLatch done = new CountDownLatch(results.length);
+        int i = 0;
+        try {
+            for (Map.Entry<String, String> target : targets.entrySet()) {
+                int index = i++;
+                String roomId = target.getKey();
+                long postStart = limit.acquire();
+                userService.sendMessageAsync(session, roomId, message).whenComplete((body, error) -> {
+                    limit.release(postStart, error != null);
+                    long latencyMs = (System.nanoTime() - postStart) / 1_000_000;
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    results[index] = new BroadcastRoomResult(roomId, target.getValue(), error == null, latencyMs,
+                            cause == null ? null : cause.getMessage());
+                    done.countDown();
+                });
+            }
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RocketChatException("Broadcast interrupted", e);
+        }
+        long durationMs = (System.nanoTime() - start) / 1_000_000;
+        int ok = (int) Arrays.stream(results).filter(BroadcastRoomResult::isSent).count();
+        broadcasts.incrementAndGet();
+        sent.addAndGet(ok);
+        failed.addAndGet(results.length - ok);
+        log.info("Broadcast to {} rooms finished in {} ms | sent={}, failed={}, concurrencyLimit={}",
+                results.length, durationMs, ok, results.length - ok, limit.limit());
+        return new BroadcastResult(results.length, ok, results.length - ok, durationMs, limit.limit(), Arrays.asList(results));
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("broadcasts", broadcasts.get());
+        snapshot.put("sent", sent.get());
+        snapshot.put("failed", failed.get());
+        snapshot.put("concurrency", limit.snapshot());
+        return snapshot;
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+}
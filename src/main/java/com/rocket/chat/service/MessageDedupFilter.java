@@ -0,0 +1,200 @@
+package com.rocket.chat.service;
+
+import com.rocket.chat.dto.RoomMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory-bounded recently-seen filter for room messages, keyed by {@code _id} and
+ * {@code _updatedAt}. Rocket.Chat re-sends a message on the room stream for every
+ * edit, reaction and thread reply, and reconnect backfills replay what was already
+ * seen; only messages whose ID has never been seen are {@link Verdict#NEW}.
+ *
+ * <p>An exact LRU of the most recent IDs answers for the hot window. Older IDs fall
+ * back to a pair of Bloom filter generations: inserts go to the current one, lookups
+ * check both, and when the current one holds {@code expected-messages} messages the
+ * older generation is dropped. Memory is therefore fixed, and a genuinely new
+ * message is mistaken for a seen one with at most the configured false-positive
+ * rate (per generation).
+ */
+@Component
+public class MessageDedupFilter {
+
+    public enum Verdict {
+        /** First time this message ID is seen. */
+        NEW,
+        /** Same ID and {@code _updatedAt} as before, e.g. a replay. */
+        DUPLICATE,
+        /** A known ID with a newer {@code _updatedAt}: an edit, reaction or thread update. */
+        UPDATE
+    }
+
+    /** Both the ID and the (ID, updatedAt) pair are inserted per message. */
+    private static final int KEYS_PER_MESSAGE = 2;
+    private static final int LRU_ENTRY_BYTES = 96;
+
+    private final int expectedMessages;
+    private final double falsePositiveRate;
+    private final int lruSize;
+    private final int bitsPerGeneration;
+    private final int hashFunctions;
+    private final Map<String, Long> recent;
+
+    private long[] current;
+    private long[] previous;
+    private int currentMessages;
+    private long rotations;
+
+    private final AtomicLong fresh = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong bloomHits = new AtomicLong();
+
+    public MessageDedupFilter(@Value("${rocketchat.dedup.expected-messages:500000}") int expectedMessages,
+                              @Value("${rocketchat.dedup.false-positive-rate:0.001}") double falsePositiveRate,
+                              @Value("${rocketchat.dedup.lru-size:10000}") int lruSize) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("rocketchat.dedup.false-positive-rate must be between 0 and 1");
+        }
+        this.expectedMessages = Math.max(expectedMessages, 1);
+        this.falsePositiveRate = falsePositiveRate;
+        this.lruSize = Math.max(lruSize, 1);
+        long keys = (long) this.expectedMessages * KEYS_PER_MESSAGE;
+        // m = -n ln p / (ln 2)^2, k = m/n ln 2
+        long bits = (long) Math.ceil(-keys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bitsPerGeneration = (int) Math.min(Math.max(bits, 64), Integer.MAX_VALUE - 63);
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bitsPerGeneration / keys * Math.log(2)));
+        this.current = new long[(bitsPerGeneration + 63) >>> 6];
+        this.previous = new long[current.length];
+        this.recent = new LinkedHashMap<>(Math.min(this.lruSize, 1 << 16), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > MessageDedupFilter.this.lruSize;
+            }
+        };
+    }
+
+    /** Classifies the message and records it as seen. Messages without an ID are always new. */
+    public synchronized Verdict classify(RoomMessage message) {
+        String id = message.getId();
+        if (id == null) {
+            fresh.incrementAndGet();
+            return Verdict.NEW;
+        }
+        long updatedAt = message.getUpdatedAt();
+        Long known = recent.get(id);
+        Verdict verdict;
+        if (known != null) {
+            verdict = updatedAt > known ? Verdict.UPDATE : Verdict.DUPLICATE;
+        } else if (mightContain(idHash(id))) {
+            bloomHits.incrementAndGet();
+            verdict = mightContain(versionHash(id, updatedAt)) ? Verdict.DUPLICATE : Verdict.UPDATE;
+        } else {
+            verdict = Verdict.NEW;
+        }
+        if (known == null || updatedAt > known) {
+            recent.put(id, updatedAt);
+        }
+        if (verdict != Verdict.DUPLICATE) {
+            insert(idHash(id), verdict == Verdict.NEW);
+            insert(versionHash(id, updatedAt), false);
+        }
+        switch (verdict) {
+            case NEW -> fresh.incrementAndGet();
+            case DUPLICATE -> duplicates.incrementAndGet();
+            case UPDATE -> updates.incrementAndGet();
+        }
+        return verdict;
+    }
+
+    private static long idHash(String id) {
+        return hash(id, 0L);
+    }
+
+    private static long versionHash(String id, long updatedAt) {
+        return hash(id, (updatedAt + 1) * 0x9e3779b97f4a7c15L);
+    }
+
+    private void insert(long hash, boolean newMessage) {
+        if (newMessage && ++currentMessages > expectedMessages) {
+            long[] recycled = previous;
+            Arrays.fill(recycled, 0L);
+            previous = current;
+            current = recycled;
+            currentMessages = 1;
+            rotations++;
+        }
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashFunctions; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bitsPerGeneration);
+            current[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    private boolean mightContain(long hash) {
+        return contains(current, hash) || contains(previous, hash);
+    }
+
+    private boolean contains(long[] bits, long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashFunctions; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bitsPerGeneration);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 64-bit FNV-1a over the key's chars, seeded with {@code salt}, with a murmur
+     * finalizer; the halves feed double hashing. Hashing chars in place keeps
+     * lookups allocation-free.
+     */
+    static long hash(String key, long salt) {
+        long h = 0xcbf29ce484222325L ^ salt;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /** Expected false-positive rate of a lookup against both generations at their current fill. */
+    private double estimatedFalsePositiveRate() {
+        double current = Math.pow(1 - Math.exp(-(double) hashFunctions * currentMessages * KEYS_PER_MESSAGE / bitsPerGeneration), hashFunctions);
+        double previous = rotations == 0 ? 0 : falsePositiveRate;
+        return 1 - (1 - current) * (1 - previous);
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("new", fresh.get());
+        snapshot.put("duplicates", duplicates.get());
+        snapshot.put("updates", updates.get());
+        snapshot.put("bloomHits", bloomHits.get());
+        snapshot.put("lruEntries", recent.size());
+        snapshot.put("lruCapacity", lruSize);
+        snapshot.put("expectedMessagesPerGeneration", expectedMessages);
+        snapshot.put("messagesInGeneration", currentMessages);
+        snapshot.put("rotations", rotations);
+        snapshot.put("hashFunctions", hashFunctions);
+        snapshot.put("configuredFalsePositiveRate", falsePositiveRate);
+        snapshot.put("estimatedFalsePositiveRate", estimatedFalsePositiveRate());
+        snapshot.put("bloomBytes", 2L * current.length * Long.BYTES);
+        snapshot.put("lruBytesEstimate", (long) recent.size() * LRU_ENTRY_BYTES);
+        return snapshot;
+    }
+}
@@ -0,0 +1,124 @@
+package com.rocket.chat.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rocket.chat.dto.RoomMessage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.function.Consumer;
+
+/**
+ * Incrementally reads the {@code messages} array of a Rocket.Chat history
+ * response, handing each message to a sink as soon as it is parsed, so memory
+ * use does not grow with the size of the page.
+ */
+public class MessageHistoryReader {
+
+    private final ObjectMapper objectMapper;
+
+    public MessageHistoryReader(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /** Returns the number of messages handed to the sink. */
+    public int read(InputStream body, String roomId, Consumer<RoomMessage> sink) throws IOException {
+        if (body == null) {
+            return 0;
+        }
+        int count = 0;
+        try (JsonParser parser = objectMapper.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("History response is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if (!"messages".equals(field) || parser.currentToken() != JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    sink.accept(readMessage(parser, roomId));
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private RoomMessage readMessage(JsonParser parser, String roomId) throws IOException {
+        String id = null;
+        String rid = roomId;
+        String sender = null;
+        String text = null;
+        long timestamp = 0L;
+        long updatedAt = 0L;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            switch (field) {
+                case "_id" -> id = parser.getValueAsString();
+                case "rid" -> rid = parser.getValueAsString();
+                case "msg" -> text = parser.getValueAsString();
+                case "u" -> sender = readUsername(parser);
+                case "ts" -> timestamp = readTimestamp(parser, token);
+                case "_updatedAt" -> updatedAt = readTimestamp(parser, token);
+                default -> parser.skipChildren();
+            }
+        }
+        // updatedAt lets MessageDedupFilter tell a backfilled replay from an edit
+        return new RoomMessage(id, rid, sender, text, timestamp, null, 0L, updatedAt);
+    }
+
+    private String readUsername(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        String username = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if ("username".equals(field)) {
+                username = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return username;
+    }
+
+    /** REST responses carry ISO-8601 strings; tolerate EJSON {"$date": millis} as well. */
+    private long readTimestamp(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_STRING) {
+            try {
+                return Instant.parse(parser.getText()).toEpochMilli();
+            } catch (DateTimeParseException e) {
+                return 0L;
+            }
+        }
+        if (token == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getLongValue();
+        }
+        if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return 0L;
+        }
+        long millis = 0L;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if ("$date".equals(field)) {
+                millis = parser.getValueAsLong();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return millis;
+    }
+}
@@ -0,0 +1,22 @@
+package com.rocket.chat.service;
+
+import java.security.SecureRandom;
+
+/** Client-side message IDs in the Meteor random-ID format Rocket.Chat uses for its own. */
+final class MessageIds {
+
+    private static final String ALPHABET = "23456789ABCDEFGHJKLMNPQRSTWXYZabcdefghijkmnopqrstuvwxyz";
+    private static final int LENGTH = 17;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private MessageIds() {
+    }
+
+    static String next() {
+        char[] id = new char[LENGTH];
+        for (int i = 0; i < LENGTH; i++) {
+            id[i] = ALPHABET.charAt(RANDOM.nextInt(ALPHABET.length()));
+        }
+        return new String(id);
+    }
+}
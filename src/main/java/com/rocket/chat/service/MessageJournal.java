@@ -0,0 +1,577 @@
+package com.rocket.chat.service;
+
+import com.rocket.chat.dto.RoomMessage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped journal of received room messages with a per-room
+ * offset index, so recent history can be served from local disk.
+ *
+ * <p>Records are {@code [int length][int crc32][long ts][fields...]} inside fixed-size
+ * segment files named by their base offset. A zero length marks the end of a
+ * segment. On startup every segment is rescanned and the index rebuilt; a torn
+ * or corrupt tail is detected by length/CRC and zeroed out.
+ *
+ * <p>A room only counts as covered from the first message journaled for it in the
+ * current run: earlier records may predate a gap (downtime, disconnect), so older
+ * ranges are still answered by REST. Losing the room's subscription (or a queued
+ * message) ends the coverage with {@link #endCoverage}, and only a backfill that
+ * fetched the whole gap brings it back with {@link #restoreCoverage}, joined up
+ * with the range covered before the gap.
+ */
+@Component
+public class MessageJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageJournal.class);
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int HEADER_BYTES = Integer.BYTES + Integer.BYTES;
+
+    @Value("${rocketchat.journal.enabled:true}")
+    private boolean enabled;
+
+    @Value("${rocketchat.journal.dir:data/journal}")
+    private Path directory;
+
+    @Value("${rocketchat.journal.segment-size:64MB}")
+    private DataSize segmentSize;
+
+    @Value("${rocketchat.journal.retention-age:7d}")
+    private Duration retentionAge;
+
+    @Value("${rocketchat.journal.retention-size:1GB}")
+    private DataSize retentionSize;
+
+    private final ConcurrentNavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final Map<String, RoomIndex> index = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService retentionScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "journal-retention");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final CRC32 crc = new CRC32();
+    private final AtomicLong coverageEpochs = new AtomicLong();
+
+    private ByteBuffer encodeBuffer = ByteBuffer.allocate(4096);
+    private int segmentBytes;
+    private Segment active;
+    private long records;
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        // Segments are memory-mapped, and a single mapping is limited to Integer.MAX_VALUE bytes
+        long size = segmentSize.toBytes();
+        if (size <= HEADER_BYTES || size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("rocketchat.journal.segment-size must be more than " + HEADER_BYTES
+                    + " bytes and less than 2GB, was " + segmentSize);
+        }
+        segmentBytes = (int) size;
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+        }
+        for (Path file : files) {
+            Segment segment = Segment.open(file, segmentBytes);
+            segments.put(segment.baseOffset, segment);
+            recover(segment);
+        }
+        active = segments.isEmpty() ? newSegment(0L) : segments.lastEntry().getValue();
+        retentionScheduler.scheduleWithFixedDelay(this::enforceRetention, 1, 1, TimeUnit.MINUTES);
+        log.info("Message journal opened | dir={}, segments={}, records={}, rooms={}", directory, segments.size(), records, index.size());
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        retentionScheduler.shutdownNow();
+        for (Segment segment : segments.values()) {
+            segment.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized void append(RoomMessage message) {
+        if (!enabled) {
+            return;
+        }
+        ByteBuffer record = encode(message);
+        if (record.remaining() > active.capacity()) {
+            log.warn("Message {} of {} bytes exceeds journal segment size; not journaled", message.getId(), record.remaining());
+            endCoverage(message.getRoomId());
+            return;
+        }
+        if (record.remaining() + Integer.BYTES > active.freeBytes()) {
+            roll();
+        }
+        long position = active.baseOffset + active.writePosition;
+        active.write(record, message.getTimestamp());
+        records++;
+
+        RoomIndex roomIndex = index.computeIfAbsent(message.getRoomId(), id -> new RoomIndex(coverageEpochs.incrementAndGet()));
+        roomIndex.add(position, message.getTimestamp(), true);
+        roomIndex.appended(message.getId());
+    }
+
+    /**
+     * Returns up to {@code count} messages of a room, newest first, with timestamps strictly
+     * between {@code oldest} and {@code latest} (either may be null) and not older than the
+     * room's coverage start.
+     */
+    public List<RoomMessage> readRecent(String roomId, int count, Long latest, Long oldest) {
+        RoomIndex roomIndex = index.get(roomId);
+        if (!enabled || roomIndex == null) {
+            return List.of();
+        }
+        long[] positions = roomIndex.collect(count, latest, oldest);
+        List<RoomMessage> messages = new ArrayList<>(positions.length);
+        for (long position : positions) {
+            RoomMessage message = read(position);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        messages.sort(Comparator.comparingLong(RoomMessage::getTimestamp).reversed()
+                .thenComparing(RoomMessage::getId, Comparator.nullsLast(Comparator.naturalOrder())));
+        return messages;
+    }
+
+    /** Epoch millis from which the journal holds every message of the room, or null if it holds none. */
+    public Long coveredSince(String roomId) {
+        RoomIndex roomIndex = index.get(roomId);
+        if (!enabled || roomIndex == null) {
+            return null;
+        }
+        long since = roomIndex.coveredSince();
+        return since == Long.MAX_VALUE ? null : since;
+    }
+
+    /**
+     * Stops counting the room as covered, e.g. when its subscription is lost or one of its
+     * messages could not be journaled: what follows may have a gap until a backfill closes it.
+     */
+    public void endCoverage(String roomId) {
+        RoomIndex roomIndex = index.get(roomId);
+        if (roomIndex != null) {
+            roomIndex.end(coverageEpochs.incrementAndGet());
+        }
+    }
+
+    /** Token to pass to {@link #restoreCoverage}, read before a backfill starts fetching. */
+    public long coverageEpoch(String roomId) {
+        RoomIndex roomIndex = index.get(roomId);
+        return roomIndex == null ? 0L : roomIndex.epoch();
+    }
+
+    /**
+     * Records that every message of the room newer than {@code since} has been submitted for
+     * journaling, the last of them being {@code lastId} (null when none was). Coverage returns
+     * once that message is journaled, unless it ended again after {@code epoch} was read.
+     */
+    public void restoreCoverage(String roomId, long epoch, long since, String lastId) {
+        RoomIndex roomIndex = index.get(roomId);
+        if (enabled && roomIndex != null) {
+            roomIndex.restore(epoch, since, lastId);
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("enabled", enabled);
+        snapshot.put("segments", segments.size());
+        snapshot.put("bytes", segments.values().stream().mapToLong(segment -> segment.writePosition).sum());
+        snapshot.put("records", records);
+        snapshot.put("rooms", index.size());
+        return snapshot;
+    }
+
+    private RoomMessage read(long position) {
+        Map.Entry<Long, Segment> entry = segments.floorEntry(position);
+        if (entry == null) {
+            return null;
+        }
+        ByteBuffer buffer = entry.getValue().buffer.duplicate();
+        buffer.position((int) (position - entry.getKey()) + HEADER_BYTES);
+        long timestamp = buffer.getLong();
+        String id = readString(buffer);
+        String roomId = readString(buffer);
+        String sender = readString(buffer);
+        String text = readString(buffer);
+        String roomType = readString(buffer);
+        return new RoomMessage(id, roomId, sender, text, timestamp, roomType);
+    }
+
+    private ByteBuffer encode(RoomMessage message) {
+        while (true) {
+            try {
+                ByteBuffer buffer = encodeBuffer.clear();
+                buffer.position(HEADER_BYTES);
+                buffer.putLong(message.getTimestamp());
+                writeString(buffer, message.getId());
+                writeString(buffer, message.getRoomId());
+                writeString(buffer, message.getSender());
+                writeString(buffer, message.getText());
+                writeString(buffer, message.getRoomType());
+                int end = buffer.position();
+                crc.reset();
+                crc.update(buffer.array(), HEADER_BYTES, end - HEADER_BYTES);
+                buffer.putInt(0, end - HEADER_BYTES);
+                buffer.putInt(Integer.BYTES, (int) crc.getValue());
+                return buffer.flip();
+            } catch (java.nio.BufferOverflowException e) {
+                encodeBuffer = ByteBuffer.allocate(encodeBuffer.capacity() * 2);
+            }
+        }
+    }
+
+    private void recover(Segment segment) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        CRC32 check = new CRC32();
+        int position = 0;
+        while (position + HEADER_BYTES <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            int crcValue = buffer.getInt(position + Integer.BYTES);
+            if (length < Long.BYTES || position + HEADER_BYTES + length > buffer.capacity()) {
+                log.warn("Truncating journal segment {} at {} (invalid length {})", segment.baseOffset, position, length);
+                segment.truncate(position);
+                break;
+            }
+            check.reset();
+            check.update(buffer.slice(position + HEADER_BYTES, length));
+            if ((int) check.getValue() != crcValue) {
+                log.warn("Truncating journal segment {} at {} (checksum mismatch)", segment.baseOffset, position);
+                segment.truncate(position);
+                break;
+            }
+            RoomMessage message = read(segment.baseOffset + position);
+            index.computeIfAbsent(message.getRoomId(), id -> new RoomIndex(coverageEpochs.incrementAndGet()))
+                    .add(segment.baseOffset + position, message.getTimestamp(), false);
+            segment.observe(message.getTimestamp());
+            records++;
+            position += HEADER_BYTES + length;
+        }
+        segment.writePosition = position;
+    }
+
+    private void roll() {
+        active.buffer.force();
+        active = newSegment(active.baseOffset + active.capacity());
+        log.info("Rolled message journal to segment {}", active.baseOffset);
+    }
+
+    private Segment newSegment(long baseOffset) {
+        try {
+            Path file = directory.resolve(String.format("%020d%s", baseOffset, SEGMENT_SUFFIX));
+            Segment segment = Segment.open(file, segmentBytes);
+            segments.put(baseOffset, segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create journal segment", e);
+        }
+    }
+
+    private void enforceRetention() {
+        try {
+            long cutoff = System.currentTimeMillis() - retentionAge.toMillis();
+            while (true) {
+                Segment oldest;
+                synchronized (this) {
+                    oldest = segments.firstEntry().getValue();
+                    long totalBytes = (long) segments.size() * oldest.capacity();
+                    boolean overSize = totalBytes > retentionSize.toBytes();
+                    boolean expired = oldest.lastTimestamp < cutoff;
+                    if (oldest == active || !(overSize || expired)) {
+                        return;
+                    }
+                    segments.remove(oldest.baseOffset);
+                }
+                long nextBase = oldest.baseOffset + oldest.capacity();
+                index.values().removeIf(roomIndex -> roomIndex.dropBefore(nextBase));
+                oldest.delete();
+                log.info("Deleted journal segment {} by retention", oldest.baseOffset);
+            }
+        } catch (Exception e) {
+            log.error("Journal retention failed", e);
+        }
+    }
+
+    private static void writeString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class Segment {
+        private final Path file;
+        private final long baseOffset;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        private volatile long lastTimestamp;
+
+        private Segment(Path file, long baseOffset, FileChannel channel, MappedByteBuffer buffer) {
+            this.file = file;
+            this.baseOffset = baseOffset;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        static Segment open(Path file, int size) throws IOException {
+            String name = file.getFileName().toString();
+            long baseOffset = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            // Existing segments keep the size they were written with
+            long length = Math.max(channel.size(), size);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            return new Segment(file, baseOffset, channel, buffer);
+        }
+
+        int capacity() {
+            return buffer.capacity();
+        }
+
+        int freeBytes() {
+            return buffer.capacity() - writePosition;
+        }
+
+        void write(ByteBuffer record, long timestamp) {
+            int length = record.remaining();
+            // Write the body before the length so a torn write never looks like a complete record
+            buffer.put(writePosition + Integer.BYTES, record, Integer.BYTES, length - Integer.BYTES);
+            buffer.putInt(writePosition, record.getInt(0));
+            writePosition += length;
+            observe(timestamp);
+        }
+
+        void observe(long timestamp) {
+            if (timestamp > lastTimestamp) {
+                lastTimestamp = timestamp;
+            }
+        }
+
+        void truncate(int position) {
+            for (int i = position; i < buffer.capacity(); i++) {
+                buffer.put(i, (byte) 0);
+            }
+            buffer.force();
+        }
+
+        void close() {
+            try {
+                buffer.force();
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Failed to close journal segment {}", file, e);
+            }
+        }
+
+        void delete() {
+            close();
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Failed to delete journal segment {}", file, e);
+            }
+        }
+    }
+
+    private static final class RoomIndex {
+        // Sorted by timestamp; equal timestamps keep journal order
+        private long[] positions = new long[16];
+        private long[] timestamps = new long[16];
+        private int size;
+        private long coveredSince = Long.MAX_VALUE;
+        // Earlier covered ranges, [from, to] inclusive, that a backfill can join back up with
+        private final List<long[]> closedRanges = new ArrayList<>();
+        private boolean broken;
+        private long epoch;
+        private String pendingId;
+        private long pendingSince;
+
+        RoomIndex(long epoch) {
+            this.epoch = epoch;
+        }
+
+        synchronized void add(long position, long timestamp, boolean live) {
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+            }
+            int at = size;
+            while (at > 0 && timestamps[at - 1] > timestamp) {
+                at--;
+            }
+            if (at < size) {
+                // Backfilled messages arrive after newer live ones
+                System.arraycopy(positions, at, positions, at + 1, size - at);
+                System.arraycopy(timestamps, at, timestamps, at + 1, size - at);
+            }
+            positions[at] = position;
+            timestamps[at] = timestamp;
+            size++;
+            if (live && !broken && coveredSince == Long.MAX_VALUE) {
+                coveredSince = timestamp;
+            }
+        }
+
+        synchronized long coveredSince() {
+            return coveredSince;
+        }
+
+        synchronized long epoch() {
+            return epoch;
+        }
+
+        /** Closes the covered range at the newest entry; nothing counts as covered until {@link #restore}. */
+        synchronized void end(long nextEpoch) {
+            if (coveredSince != Long.MAX_VALUE) {
+                closedRanges.add(new long[]{coveredSince, size == 0 ? coveredSince : Math.max(coveredSince, timestamps[size - 1])});
+                coveredSince = Long.MAX_VALUE;
+            }
+            broken = true;
+            epoch = nextEpoch;
+            pendingId = null;
+        }
+
+        /** Restores coverage after {@code since} once {@code lastId} is journaled, unless it ended again since {@code expectedEpoch}. */
+        synchronized void restore(long expectedEpoch, long since, String lastId) {
+            if (epoch != expectedEpoch) {
+                return;
+            }
+            if (lastId == null) {
+                cover(since);
+            } else {
+                pendingId = lastId;
+                pendingSince = since;
+            }
+        }
+
+        synchronized void appended(String id) {
+            if (pendingId != null && pendingId.equals(id)) {
+                pendingId = null;
+                cover(pendingSince);
+            }
+        }
+
+        private void cover(long since) {
+            long from = Math.min(coveredSince, since + 1);
+            for (Iterator<long[]> it = closedRanges.iterator(); it.hasNext(); ) {
+                long[] range = it.next();
+                if (range[1] >= since) {
+                    from = Math.min(from, range[0]);
+                    it.remove();
+                }
+            }
+            coveredSince = from;
+            broken = false;
+        }
+
+        /** Newest-first positions of up to count entries inside the (oldest, latest) window. */
+        synchronized long[] collect(int count, Long latest, Long oldest) {
+            long floor = Math.max(oldest == null ? Long.MIN_VALUE : oldest + 1, coveredSince);
+            long[] result = new long[Math.min(count, size)];
+            int found = 0;
+            for (int i = size - 1; i >= 0 && found < result.length; i--) {
+                long timestamp = timestamps[i];
+                if (latest != null && timestamp >= latest) {
+                    continue;
+                }
+                if (timestamp < floor) {
+                    break;
+                }
+                result[found++] = positions[i];
+            }
+            return found == result.length ? result : Arrays.copyOf(result, found);
+        }
+
+        /** Drops entries stored before the given position; returns true when the room is now empty. */
+        synchronized boolean dropBefore(long position) {
+            long newestDropped = Long.MIN_VALUE;
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (positions[i] < position) {
+                    newestDropped = Math.max(newestDropped, timestamps[i]);
+                } else {
+                    positions[kept] = positions[i];
+                    timestamps[kept] = timestamps[i];
+                    kept++;
+                }
+            }
+            if (kept == size) {
+                return false;
+            }
+            size = kept;
+            if (size == 0) {
+                coveredSince = Long.MAX_VALUE;
+                closedRanges.clear();
+            } else {
+                // Retention may cut into a covered range, so coverage shrinks to what is left
+                long floor = newestDropped + 1;
+                if (coveredSince != Long.MAX_VALUE) {
+                    coveredSince = Math.max(coveredSince, floor);
+                }
+                closedRanges.removeIf(range -> (range[0] = Math.max(range[0], floor)) > range[1]);
+            }
+            if (size < positions.length / 4 && positions.length > 16) {
+                positions = Arrays.copyOf(positions, Math.max(size * 2, 16));
+                timestamps = Arrays.copyOf(timestamps, Math.max(size * 2, 16));
+            }
+            return size == 0 && !broken && pendingId == null;
+        }
+    }
+}
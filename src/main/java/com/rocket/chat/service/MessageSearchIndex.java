@@ -0,0 +1,704 @@
+package com.rocket.chat.service;
+
+import com.rocket.chat.dto.RoomMessage;
+import com.rocket.chat.dto.SearchHit;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Incremental in-memory inverted index over received chat messages.
+ *
+ * <p>New messages go into a mutable segment; once it holds {@code segmentDocs}
+ * messages it is sealed into an immutable segment whose posting lists are
+ * delta + varint encoded. A maintenance task drops segments past the age or
+ * document limit and merges adjacent small segments, purging expired messages
+ * as it goes; room IDs and senders no message refers to any more are dropped
+ * with them. Queries are AND over all terms, ranked with BM25.
+ */
+@Component
+public class MessageSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageSearchIndex.class);
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int MAX_TERM_LENGTH = 40;
+
+    private final int segmentDocs;
+    private final int maxDocs;
+    private final int maxSegments;
+    private final int storedTextLength;
+    private final long maxAgeMs;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Dictionary rooms = new Dictionary();
+    private final Dictionary senders = new Dictionary();
+    private final ScheduledExecutorService maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "search-index-maintenance");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong merges = new AtomicLong();
+
+    private MutableSegment active;
+    private volatile List<SealedSegment> sealed = List.of();
+
+    public MessageSearchIndex(@Value("${rocketchat.search.segment-docs:65536}") int segmentDocs,
+                              @Value("${rocketchat.search.max-docs:5000000}") int maxDocs,
+                              @Value("${rocketchat.search.max-segments:16}") int maxSegments,
+                              @Value("${rocketchat.search.max-age:7d}") Duration maxAge,
+                              @Value("${rocketchat.search.stored-text-length:256}") int storedTextLength) {
+        this.segmentDocs = segmentDocs;
+        this.maxDocs = maxDocs;
+        this.maxSegments = Math.max(maxSegments, 1);
+        this.maxAgeMs = maxAge.toMillis();
+        this.storedTextLength = storedTextLength;
+        this.active = new MutableSegment(segmentDocs);
+    }
+
+    @PostConstruct
+    public void start() {
+        maintenance.scheduleWithFixedDelay(this::maintain, 30, 30, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        maintenance.shutdownNow();
+    }
+
+    public void index(RoomMessage message) {
+        String text = message.getText();
+        if (text == null || text.isBlank() || message.getRoomId() == null) {
+            return;
+        }
+        Map<String, Integer> termFrequencies = new HashMap<>();
+        int length = 0;
+        for (String term : tokenize(text)) {
+            termFrequencies.merge(term, 1, Integer::sum);
+            length++;
+        }
+        if (length == 0) {
+            return;
+        }
+        String stored = text.length() > storedTextLength ? text.substring(0, storedTextLength) : text;
+
+        lock.writeLock().lock();
+        try {
+            int room = rooms.acquire(message.getRoomId());
+            int sender = senders.acquire(message.getSender());
+            active.add(message.getId(), room, sender, message.getTimestamp(), stored, length, termFrequencies);
+            if (active.docCount == segmentDocs) {
+                List<SealedSegment> segments = new ArrayList<>(sealed);
+                segments.add(active.seal());
+                sealed = List.copyOf(segments);
+                active = new MutableSegment(segmentDocs);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        indexed.incrementAndGet();
+    }
+
+    /** Top-k messages containing every query term, optionally restricted to a room and/or sender. */
+    public List<SearchHit> search(String query, String roomId, String sender, int limit) {
+        List<String> terms = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+        if (terms.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        long cutoff = System.currentTimeMillis() - maxAgeMs;
+        PriorityQueue<Candidate> top = new PriorityQueue<>(limit + 1, Comparator.comparingDouble(Candidate::score));
+        List<SealedSegment> segments;
+        int roomFilter;
+        int senderFilter;
+        double[] idf = new double[terms.size()];
+        double avgLength;
+
+        lock.readLock().lock();
+        try {
+            // Sealing swaps the list under the write lock, so this view and the active segment agree
+            segments = sealed;
+            roomFilter = roomId == null ? -1 : rooms.lookup(roomId);
+            senderFilter = sender == null ? -1 : senders.lookup(sender);
+            if ((roomId != null && roomFilter < 0) || (sender != null && senderFilter < 0)) {
+                return List.of();
+            }
+            long docs = active.docCount;
+            long totalLength = active.totalLength;
+            double[] df = new double[terms.size()];
+            for (int t = 0; t < terms.size(); t++) {
+                df[t] = active.docFrequency(terms.get(t));
+            }
+            for (SealedSegment segment : segments) {
+                docs += segment.docCount;
+                totalLength += segment.totalLength;
+                for (int t = 0; t < terms.size(); t++) {
+                    df[t] += segment.docFrequency(terms.get(t));
+                }
+            }
+            avgLength = docs == 0 ? 1.0 : (double) totalLength / docs;
+            for (int t = 0; t < terms.size(); t++) {
+                idf[t] = Math.log(1 + (docs - df[t] + 0.5) / (df[t] + 0.5));
+            }
+            // The mutable segment must be read under the lock; sealed segments are immutable
+            active.search(terms, idf, avgLength, roomFilter, senderFilter, cutoff, limit, top);
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (SealedSegment segment : segments) {
+            segment.search(terms, idf, avgLength, roomFilter, senderFilter, cutoff, limit, top);
+        }
+
+        List<SearchHit> hits = new ArrayList<>(top.size());
+        lock.readLock().lock();
+        try {
+            while (!top.isEmpty()) {
+                Candidate candidate = top.poll();
+                Segment segment = candidate.segment();
+                int doc = candidate.doc();
+                hits.add(new SearchHit(segment.messageIds[doc], rooms.name(segment.rooms[doc]),
+                        senders.name(segment.senders[doc]), segment.texts[doc], segment.timestamps[doc], candidate.score()));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Collections.reverse(hits);
+        return hits;
+    }
+
+    public Map<String, Object> snapshot() {
+        List<SealedSegment> segments = sealed;
+        long docs = segments.stream().mapToLong(segment -> segment.docCount).sum();
+        long postingBytes = segments.stream().mapToLong(segment -> segment.postingBytes).sum();
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("indexed", indexed.get());
+        snapshot.put("sealedSegments", segments.size());
+        snapshot.put("sealedDocs", docs);
+        snapshot.put("activeDocs", active.docCount);
+        snapshot.put("postingBytes", postingBytes);
+        snapshot.put("evictedDocs", evicted.get());
+        snapshot.put("merges", merges.get());
+        snapshot.put("maxDocs", maxDocs);
+        lock.readLock().lock();
+        try {
+            snapshot.put("rooms", rooms.size());
+            snapshot.put("senders", senders.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Drops segments past the age or document limit, then merges adjacent segments down to
+     * maxSegments. Room IDs and senders released by the previous run are freed first.
+     */
+    void maintain() {
+        try {
+            lock.writeLock().lock();
+            try {
+                rooms.reclaim();
+                senders.reclaim();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            long cutoff = System.currentTimeMillis() - maxAgeMs;
+            List<SealedSegment> segments = new ArrayList<>(sealed);
+            long docs = segments.stream().mapToLong(segment -> segment.docCount).sum();
+            List<SealedSegment> dropped = new ArrayList<>();
+            while (!segments.isEmpty() && (segments.get(0).maxTimestamp < cutoff || docs > maxDocs)) {
+                SealedSegment oldest = segments.remove(0);
+                docs -= oldest.docCount;
+                dropped.add(oldest);
+            }
+            Map<SealedSegment, SealedSegment[]> merged = new HashMap<>();
+            while (segments.size() > maxSegments) {
+                int best = 0;
+                for (int i = 1; i < segments.size() - 1; i++) {
+                    if (segments.get(i).docCount + segments.get(i + 1).docCount
+                            < segments.get(best).docCount + segments.get(best + 1).docCount) {
+                        best = i;
+                    }
+                }
+                SealedSegment first = segments.get(best);
+                SealedSegment second = segments.get(best + 1);
+                SealedSegment combined = SealedSegment.merge(first, second, cutoff);
+                segments.set(best, combined);
+                segments.remove(best + 1);
+                merged.put(combined, new SealedSegment[] {first, second});
+                merges.incrementAndGet();
+            }
+            if (dropped.isEmpty() && merged.isEmpty()) {
+                return;
+            }
+            lock.writeLock().lock();
+            try {
+                // Segments sealed while we worked are appended after the ones we rewrote
+                List<SealedSegment> current = new ArrayList<>(segments);
+                Set<SealedSegment> known = Collections.newSetFromMap(new IdentityHashMap<>());
+                known.addAll(dropped);
+                known.addAll(segments);
+                merged.values().forEach(parts -> known.addAll(Arrays.asList(parts)));
+                for (SealedSegment segment : sealed) {
+                    if (!known.contains(segment)) {
+                        current.add(segment);
+                    }
+                }
+                sealed = List.copyOf(current);
+                dropped.forEach(segment -> release(segment, Long.MAX_VALUE));
+                merged.values().forEach(parts -> {
+                    release(parts[0], cutoff);
+                    release(parts[1], cutoff);
+                });
+            } finally {
+                lock.writeLock().unlock();
+            }
+            long droppedDocs = dropped.stream().mapToLong(segment -> segment.docCount).sum();
+            evicted.addAndGet(droppedDocs);
+            log.debug("Search index maintenance | dropped {} docs, {} merges, {} segments", droppedDocs, merged.size(), segments.size());
+        } catch (Exception e) {
+            log.error("Search index maintenance failed", e);
+        }
+    }
+
+    /** Releases the room and sender of every document older than the cutoff; caller holds the write lock. */
+    private void release(SealedSegment segment, long cutoff) {
+        for (int doc = 0; doc < segment.docCount; doc++) {
+            if (segment.timestamps[doc] < cutoff) {
+                rooms.release(segment.rooms[doc]);
+                senders.release(segment.senders[doc]);
+            }
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                current.append(Character.toLowerCase(c));
+            } else if (!current.isEmpty()) {
+                if (current.length() > 1 && current.length() <= MAX_TERM_LENGTH) {
+                    tokens.add(current.toString());
+                }
+                current.setLength(0);
+            }
+        }
+        return tokens;
+    }
+
+    private record Candidate(Segment segment, int doc, double score) {
+    }
+
+    /** Decoded postings of one term within one segment, doc IDs ascending. */
+    private record Postings(int[] docs, int[] freqs, int size) {
+    }
+
+    private abstract static class Segment {
+        long[] timestamps;
+        int[] rooms;
+        int[] senders;
+        int[] lengths;
+        String[] messageIds;
+        String[] texts;
+        int docCount;
+        long totalLength;
+        long maxTimestamp = Long.MIN_VALUE;
+
+        abstract int docFrequency(String term);
+
+        abstract Postings postings(String term);
+
+        void search(List<String> terms, double[] idf, double avgLength, int roomFilter, int senderFilter,
+                    long cutoff, int limit, PriorityQueue<Candidate> top) {
+            if (docCount == 0 || maxTimestamp < cutoff) {
+                return;
+            }
+            Postings[] lists = new Postings[terms.size()];
+            Integer[] order = new Integer[terms.size()];
+            for (int t = 0; t < terms.size(); t++) {
+                lists[t] = postings(terms.get(t));
+                if (lists[t] == null) {
+                    return;
+                }
+                order[t] = t;
+            }
+            // Drive the intersection from the rarest term
+            Arrays.sort(order, Comparator.comparingInt(t -> lists[t].size()));
+            Postings lead = lists[order[0]];
+            int[] cursor = new int[terms.size()];
+
+            candidates:
+            for (int i = 0; i < lead.size(); i++) {
+                int doc = lead.docs()[i];
+                if ((roomFilter >= 0 && rooms[doc] != roomFilter) || (senderFilter >= 0 && senders[doc] != senderFilter)
+                        || timestamps[doc] < cutoff) {
+                    continue;
+                }
+                double norm = K1 * (1 - B + B * lengths[doc] / avgLength);
+                double score = idf[order[0]] * lead.freqs()[i] * (K1 + 1) / (lead.freqs()[i] + norm);
+                for (int o = 1; o < order.length; o++) {
+                    Postings list = lists[order[o]];
+                    while (cursor[o] < list.size() && list.docs()[cursor[o]] < doc) {
+                        cursor[o]++;
+                    }
+                    if (cursor[o] == list.size()) {
+                        break candidates;
+                    }
+                    if (list.docs()[cursor[o]] != doc) {
+                        continue candidates;
+                    }
+                    int freq = list.freqs()[cursor[o]];
+                    score += idf[order[o]] * freq * (K1 + 1) / (freq + norm);
+                }
+                if (top.size() < limit) {
+                    top.add(new Candidate(this, doc, score));
+                } else if (score > top.peek().score()) {
+                    top.poll();
+                    top.add(new Candidate(this, doc, score));
+                }
+            }
+        }
+    }
+
+    private static final class MutableSegment extends Segment {
+        private final Map<String, IntPairs> postings = new HashMap<>();
+
+        MutableSegment(int capacity) {
+            timestamps = new long[capacity];
+            rooms = new int[capacity];
+            senders = new int[capacity];
+            lengths = new int[capacity];
+            messageIds = new String[capacity];
+            texts = new String[capacity];
+        }
+
+        void add(String messageId, int room, int sender, long timestamp, String text, int length,
+                 Map<String, Integer> termFrequencies) {
+            int doc = docCount++;
+            messageIds[doc] = messageId;
+            rooms[doc] = room;
+            senders[doc] = sender;
+            timestamps[doc] = timestamp;
+            texts[doc] = text;
+            lengths[doc] = length;
+            totalLength += length;
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+            termFrequencies.forEach((term, freq) -> postings.computeIfAbsent(term, t -> new IntPairs()).add(doc, freq));
+        }
+
+        @Override
+        int docFrequency(String term) {
+            IntPairs pairs = postings.get(term);
+            return pairs == null ? 0 : pairs.size;
+        }
+
+        @Override
+        Postings postings(String term) {
+            IntPairs pairs = postings.get(term);
+            return pairs == null ? null : pairs.toPostings();
+        }
+
+        SealedSegment seal() {
+            Map<String, byte[]> encoded = new HashMap<>(postings.size() * 2);
+            postings.forEach((term, pairs) -> {
+                Postings decoded = pairs.toPostings();
+                encoded.put(term, SealedSegment.encode(decoded.docs(), decoded.freqs(), decoded.size()));
+            });
+            return new SealedSegment(encoded, Arrays.copyOf(timestamps, docCount), Arrays.copyOf(rooms, docCount),
+                    Arrays.copyOf(senders, docCount), Arrays.copyOf(lengths, docCount),
+                    Arrays.copyOf(messageIds, docCount), Arrays.copyOf(texts, docCount));
+        }
+    }
+
+    private static final class SealedSegment extends Segment {
+        private final Map<String, byte[]> postings;
+        private final long postingBytes;
+
+        SealedSegment(Map<String, byte[]> postings, long[] timestamps, int[] rooms, int[] senders, int[] lengths,
+                      String[] messageIds, String[] texts) {
+            this.postings = postings;
+            this.timestamps = timestamps;
+            this.rooms = rooms;
+            this.senders = senders;
+            this.lengths = lengths;
+            this.messageIds = messageIds;
+            this.texts = texts;
+            this.docCount = timestamps.length;
+            long bytes = 0;
+            for (byte[] list : postings.values()) {
+                bytes += list.length;
+            }
+            this.postingBytes = bytes;
+            for (int doc = 0; doc < docCount; doc++) {
+                totalLength += lengths[doc];
+                maxTimestamp = Math.max(maxTimestamp, timestamps[doc]);
+            }
+        }
+
+        @Override
+        int docFrequency(String term) {
+            byte[] list = postings.get(term);
+            return list == null ? 0 : readVarint(list, new int[1]);
+        }
+
+        @Override
+        Postings postings(String term) {
+            byte[] list = postings.get(term);
+            return list == null ? null : decode(list);
+        }
+
+        /** Layout: varint count, then (varint docDelta, varint freq) pairs. */
+        static byte[] encode(int[] docs, int[] freqs, int size) {
+            byte[] out = new byte[5 + size * 10];
+            int[] position = {0};
+            writeVarint(out, position, size);
+            int previous = 0;
+            for (int i = 0; i < size; i++) {
+                writeVarint(out, position, docs[i] - previous);
+                writeVarint(out, position, freqs[i]);
+                previous = docs[i];
+            }
+            return Arrays.copyOf(out, position[0]);
+        }
+
+        static Postings decode(byte[] list) {
+            int[] position = {0};
+            int size = readVarint(list, position);
+            int[] docs = new int[size];
+            int[] freqs = new int[size];
+            int doc = 0;
+            for (int i = 0; i < size; i++) {
+                doc += readVarint(list, position);
+                docs[i] = doc;
+                freqs[i] = readVarint(list, position);
+            }
+            return new Postings(docs, freqs, size);
+        }
+
+        /** Concatenates two segments, leaving out messages older than the cutoff. */
+        static SealedSegment merge(SealedSegment first, SealedSegment second, long cutoff) {
+            int[] firstMap = remap(first, cutoff, 0);
+            int firstKept = countKept(firstMap);
+            int[] secondMap = remap(second, cutoff, firstKept);
+            int kept = firstKept + countKept(secondMap);
+
+            long[] timestamps = new long[kept];
+            int[] rooms = new int[kept];
+            int[] senders = new int[kept];
+            int[] lengths = new int[kept];
+            String[] messageIds = new String[kept];
+            String[] texts = new String[kept];
+            copyDocs(first, firstMap, timestamps, rooms, senders, lengths, messageIds, texts);
+            copyDocs(second, secondMap, timestamps, rooms, senders, lengths, messageIds, texts);
+
+            Set<String> terms = new HashSet<>(first.postings.keySet());
+            terms.addAll(second.postings.keySet());
+            Map<String, byte[]> postings = new HashMap<>(terms.size() * 2);
+            int[] docs = new int[kept];
+            int[] freqs = new int[kept];
+            for (String term : terms) {
+                int size = appendMapped(first.postings.get(term), firstMap, docs, freqs, 0);
+                size = appendMapped(second.postings.get(term), secondMap, docs, freqs, size);
+                if (size > 0) {
+                    postings.put(term, encode(docs, freqs, size));
+                }
+            }
+            return new SealedSegment(postings, timestamps, rooms, senders, lengths, messageIds, texts);
+        }
+
+        private static int[] remap(SealedSegment segment, long cutoff, int base) {
+            int[] map = new int[segment.docCount];
+            int next = base;
+            for (int doc = 0; doc < segment.docCount; doc++) {
+                map[doc] = segment.timestamps[doc] < cutoff ? -1 : next++;
+            }
+            return map;
+        }
+
+        private static int countKept(int[] map) {
+            int kept = 0;
+            for (int target : map) {
+                if (target >= 0) {
+                    kept++;
+                }
+            }
+            return kept;
+        }
+
+        private static void copyDocs(SealedSegment segment, int[] map, long[] timestamps, int[] rooms, int[] senders,
+                                     int[] lengths, String[] messageIds, String[] texts) {
+            for (int doc = 0; doc < map.length; doc++) {
+                int target = map[doc];
+                if (target >= 0) {
+                    timestamps[target] = segment.timestamps[doc];
+                    rooms[target] = segment.rooms[doc];
+                    senders[target] = segment.senders[doc];
+                    lengths[target] = segment.lengths[doc];
+                    messageIds[target] = segment.messageIds[doc];
+                    texts[target] = segment.texts[doc];
+                }
+            }
+        }
+
+        private static int appendMapped(byte[] list, int[] map, int[] docs, int[] freqs, int size) {
+            if (list == null) {
+                return size;
+            }
+            Postings decoded = decode(list);
+            for (int i = 0; i < decoded.size(); i++) {
+                int target = map[decoded.docs()[i]];
+                if (target >= 0) {
+                    docs[size] = target;
+                    freqs[size] = decoded.freqs()[i];
+                    size++;
+                }
+            }
+            return size;
+        }
+
+        private static void writeVarint(byte[] out, int[] position, int value) {
+            while ((value & ~0x7F) != 0) {
+                out[position[0]++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out[position[0]++] = (byte) value;
+        }
+
+        private static int readVarint(byte[] in, int[] position) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = in[position[0]++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+
+    /** Growable interleaved (doc, freq) list for the mutable segment. */
+    private static final class IntPairs {
+        private int[] data = new int[4];
+        private int size;
+
+        void add(int doc, int freq) {
+            if (size * 2 == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size * 2] = doc;
+            data[size * 2 + 1] = freq;
+            size++;
+        }
+
+        Postings toPostings() {
+            int[] docs = new int[size];
+            int[] freqs = new int[size];
+            for (int i = 0; i < size; i++) {
+                docs[i] = data[i * 2];
+                freqs[i] = data[i * 2 + 1];
+            }
+            return new Postings(docs, freqs, size);
+        }
+    }
+
+    /**
+     * String to dense int mapping for room IDs and senders, guarded by the index lock.
+     * Each indexed document holds a reference to its IDs; an ID left without references is
+     * reused only after a later {@link #reclaim}, so searches still scoring the documents
+     * that dropped it resolve the old name.
+     */
+    private static final class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+        private final Deque<Integer> free = new ArrayDeque<>();
+        private int[] references = new int[16];
+        private Set<Integer> retired = new HashSet<>();
+        private Set<Integer> reclaimable = new HashSet<>();
+
+        int acquire(String name) {
+            if (name == null) {
+                return -1;
+            }
+            Integer id = ids.get(name);
+            if (id == null) {
+                id = free.isEmpty() ? names.size() : free.pop();
+                if (id == names.size()) {
+                    names.add(name);
+                    if (id == references.length) {
+                        references = Arrays.copyOf(references, id * 2);
+                    }
+                } else {
+                    names.set(id, name);
+                }
+                ids.put(name, id);
+            }
+            references[id]++;
+            return id;
+        }
+
+        void release(int id) {
+            if (id >= 0 && --references[id] == 0) {
+                retired.add(id);
+            }
+        }
+
+        /** Frees the IDs retired before the previous call that are still unreferenced. */
+        void reclaim() {
+            for (int id : reclaimable) {
+                if (references[id] == 0 && !retired.contains(id)) {
+                    ids.remove(names.get(id));
+                    names.set(id, null);
+                    free.push(id);
+                }
+            }
+            reclaimable = retired;
+            retired = new HashSet<>();
+        }
+
+        int lookup(String name) {
+            Integer id = ids.get(name);
+            return id == null ? -1 : id;
+        }
+
+        String name(int id) {
+            return id < 0 ? null : names.get(id);
+        }
+
+        int size() {
+            return ids.size();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.rocket.chat.service;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Posts chat messages to Rocket.Chat. The future completes with a
+ * {@code chat.postMessage}-shaped JSON body ({@code {"message": {...}, "success": true}}).
+ */
+public interface MessageTransport {
+
+    /**
+     * Sends one logical message. {@code messageId} is minted once per message and reused
+     * on every retry, so a transport that passes it on lets the server refuse a repeat.
+     */
+    CompletableFuture<String> sendMessage(String messageId, String roomId, String text);
+
+    /** Whether the transport can send right now. */
+    default boolean isAvailable() {
+        return true;
+    }
+}
@@ -0,0 +1,194 @@
+package com.rocket.chat.service;
+
+import com.rocket.chat.dto.RoomMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closes the gap a dropped subscription leaves in a room. A room is tracked from
+ * its first acknowledged subscription, and every live message records the room's
+ * newest timestamp; when the room's subscription is acknowledged again (after a reconnect, or after moving to
+ * another connection) the history since that timestamp is fetched over REST and
+ * whatever was not seen live is submitted to the {@link InboundMessagePipeline},
+ * oldest first. Live and backfilled messages both pass the {@link MessageDedupFilter},
+ * which covers the overlap between the two and keeps edits and replays out of the
+ * processing path. Losing a subscription ends the room's {@link MessageJournal} coverage;
+ * a backfill that fetched the whole gap restores it. One cut short by {@code max-messages}
+ * restores it only for the newest part it did fetch, and one that fails leaves it off;
+ * both drop the room's cached pages.
+ */
+@Component
+public class MissedMessageBackfill {
+
+    private static final Logger log = LoggerFactory.getLogger(MissedMessageBackfill.class);
+    /** Refetch this much before the last-seen time, in case our clock runs ahead of the server's. */
+    private static final long CLOCK_SKEW_MARGIN_MS = 5_000;
+
+    private final UserService userService;
+    private final InboundMessagePipeline inboundPipeline;
+    private final MessageDedupFilter dedupFilter;
+    private final MessageJournal messageJournal;
+    private final ReadResponseCache readCache;
+    private final Map<String, RoomState> rooms = new ConcurrentHashMap<>();
+    private final AtomicLong backfills = new AtomicLong();
+    private final AtomicLong recovered = new AtomicLong();
+    private final AtomicLong truncated = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    @Value("${rocketchat.backfill.enabled:true}")
+    private boolean enabled;
+
+    @Value("${rocketchat.backfill.max-messages:500}")
+    private int maxMessages;
+
+    @Value("${rocketchat.backfill.page-size:100}")
+    private int pageSize;
+
+    private final Semaphore concurrency;
+
+    public MissedMessageBackfill(UserService userService,
+                                 InboundMessagePipeline inboundPipeline,
+                                 MessageDedupFilter dedupFilter,
+                                 MessageJournal messageJournal,
+                                 ReadResponseCache readCache,
+                                 @Value("${rocketchat.backfill.concurrency:4}") int concurrency) {
+        this.userService = userService;
+        this.inboundPipeline = inboundPipeline;
+        this.dedupFilter = dedupFilter;
+        this.messageJournal = messageJournal;
+        this.readCache = readCache;
+        this.concurrency = new Semaphore(Math.max(concurrency, 1));
+    }
+
+    /**
+     * Records a live message and returns true when it is new. Edits, reactions and
+     * replays of a seen message return false and must not be processed again.
+     */
+    public boolean accept(RoomMessage message) {
+        return classify(message) == MessageDedupFilter.Verdict.NEW;
+    }
+
+    /** As {@link #accept}, but tells an edit ({@code UPDATE}) apart from a replay ({@code DUPLICATE}). */
+    public MessageDedupFilter.Verdict classify(RoomMessage message) {
+        RoomState room = rooms.computeIfAbsent(message.getRoomId(), id -> new RoomState(System.currentTimeMillis()));
+        room.record(message.getTimestamp());
+        return dedupFilter.classify(message);
+    }
+
+    /** Stops tracking a room that is no longer followed. */
+    public void forget(String roomId) {
+        rooms.remove(roomId);
+    }
+
+    /**
+     * Newest message timestamp seen in the room, or when tracking started if it has
+     * been quiet; null for a room that is not tracked.
+     */
+    public Long lastSeen(String roomId) {
+        RoomState room = rooms.get(roomId);
+        return room == null ? null : room.lastSeen();
+    }
+
+    /** Called when a room's subscription is dropped or rejected, or its connection closes. */
+    public void onSubscriptionLost(String roomId) {
+        messageJournal.endCoverage(roomId);
+    }
+
+    /**
+     * Called when a room's subscription is acknowledged. The first subscription
+     * starts tracking the room; later ones backfill it on a virtual thread.
+     */
+    public void onSubscribed(String roomId) {
+        RoomState room = rooms.putIfAbsent(roomId, new RoomState(System.currentTimeMillis()));
+        if (!enabled || room == null) {
+            return;
+        }
+        long since = room.lastSeen() - CLOCK_SKEW_MARGIN_MS;
+        Thread.ofVirtual().name("backfill-" + roomId).start(() -> backfill(roomId, since));
+    }
+
+    private void backfill(String roomId, long since) {
+        try {
+            concurrency.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            long epoch = messageJournal.coverageEpoch(roomId);
+            List<RoomMessage> missed = new ArrayList<>();
+            int fetched = userService.streamMessagesInRoom(userService.getServiceSession(), roomId, pageSize, null, since, maxMessages, missed::add);
+            Collections.reverse(missed);
+            int submitted = 0;
+            String lastSubmitted = null;
+            for (RoomMessage message : missed) {
+                if (accept(message)) {
+                    inboundPipeline.submit(message);
+                    submitted++;
+                    lastSubmitted = message.getId();
+                }
+            }
+            if (fetched < maxMessages || missed.isEmpty()) {
+                messageJournal.restoreCoverage(roomId, epoch, since, lastSubmitted);
+            } else {
+                // The newest part of the gap was fetched, complete down to its oldest millisecond
+                long oldestFetched = missed.get(0).getTimestamp();
+                messageJournal.restoreCoverage(roomId, epoch, oldestFetched - 1, lastSubmitted);
+                readCache.invalidateRoom(roomId);
+                truncated.incrementAndGet();
+                log.warn("Backfill of room {} stopped at {} messages; missed history between {} and {} is left to REST",
+                        roomId, fetched, since, oldestFetched);
+            }
+            backfills.incrementAndGet();
+            recovered.addAndGet(submitted);
+            if (submitted > 0) {
+                log.info("Backfilled {} missed messages in room {} since {}", submitted, roomId, since);
+            }
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            messageJournal.endCoverage(roomId);
+            readCache.invalidateRoom(roomId);
+            log.warn("Backfill failed for room {} since {}; missed history is left to REST: {}", roomId, since, e.getMessage());
+        } finally {
+            concurrency.release();
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("enabled", enabled);
+        snapshot.put("trackedRooms", rooms.size());
+        snapshot.put("backfills", backfills.get());
+        snapshot.put("recovered", recovered.get());
+        snapshot.put("truncated", truncated.get());
+        snapshot.put("failures", failures.get());
+        return snapshot;
+    }
+
+    private static final class RoomState {
+        private long lastSeen;
+
+        RoomState(long trackedSince) {
+            this.lastSeen = trackedSince;
+        }
+
+        synchronized void record(long timestamp) {
+            lastSeen = Math.max(lastSeen, timestamp);
+        }
+
+        synchronized long lastSeen() {
+            return lastSeen;
+        }
+    }
+}
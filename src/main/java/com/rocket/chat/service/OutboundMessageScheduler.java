@@ -0,0 +1,263 @@
+package com.rocket.chat.service;
+
+import com.rocket.chat.config.AdaptiveTokenBucket;
+import com.rocket.chat.config.ConcurrencyLimitException;
+import com.rocket.chat.config.DdpMethodException;
+import com.rocket.chat.exception.RocketChatException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Paces outgoing messages so bursts do not run into Rocket.Chat's rate limiter.
+ * Each room has its own FIFO queue and at most one message in flight, so a room's
+ * messages are posted in order; rooms take turns on a shared ready queue. A fixed
+ * number of virtual-thread workers bounds concurrency, every post takes a token
+ * from the {@link AdaptiveTokenBucket}, and a rate-limited post (HTTP 429 or the
+ * DDP {@code too-many-requests} error) stays at the head of its room and is
+ * retried after the server's reset time or an exponential backoff.
+ */
+@Component
+public class OutboundMessageScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboundMessageScheduler.class);
+    private static final long BASE_BACKOFF_MS = 500;
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    private final AdaptiveTokenBucket bucket;
+    private final Map<String, RoomQueue> rooms = new ConcurrentHashMap<>();
+    private final LinkedBlockingQueue<RoomQueue> ready = new LinkedBlockingQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    @Value("${rocketchat.outbound.max-concurrency:8}")
+    private int maxConcurrency;
+
+    @Value("${rocketchat.outbound.max-retries:5}")
+    private int maxRetries;
+
+    @Value("${rocketchat.outbound.max-queued:10000}")
+    private int maxQueued;
+
+    private Thread[] workers;
+    private volatile boolean running;
+
+    public OutboundMessageScheduler(AdaptiveTokenBucket bucket) {
+        this.bucket = bucket;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        workers = new Thread[Math.max(maxConcurrency, 1)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = Thread.ofVirtual().name("outbound-" + i).start(this::work);
+        }
+        log.info("Outbound scheduler started | workers={}, maxQueued={}, maxRetries={}", workers.length, maxQueued, maxRetries);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        for (RoomQueue room : rooms.values()) {
+            OutboundMessage message;
+            while ((message = room.messages.poll()) != null) {
+                message.future.completeExceptionally(new RocketChatException("Outbound scheduler stopped"));
+            }
+        }
+    }
+
+    /**
+     * Queues a send behind the room's earlier messages. The future completes with the
+     * send's result once it has been posted, or fails when retries run out.
+     */
+    public CompletableFuture<String> submit(String roomId, Supplier<CompletableFuture<String>> send) {
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            rejected.incrementAndGet();
+            return CompletableFuture.failedFuture(new RocketChatException("Outbound queue full, message to room " + roomId + " rejected"));
+        }
+        OutboundMessage message = new OutboundMessage(send);
+        rooms.compute(roomId, (id, room) -> {
+            if (room == null) {
+                room = new RoomQueue(id);
+            }
+            room.messages.add(message);
+            if (!room.scheduled) {
+                room.scheduled = true;
+                ready.add(room);
+            }
+            return room;
+        });
+        return message.future;
+    }
+
+    public int queued() {
+        return queued.get();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("workers", workers == null ? 0 : workers.length);
+        snapshot.put("queued", queued.get());
+        snapshot.put("inFlight", inFlight.get());
+        snapshot.put("rooms", rooms.size());
+        snapshot.put("readyRooms", ready.size());
+        snapshot.put("sent", sent.get());
+        snapshot.put("retried", retried.get());
+        snapshot.put("failed", failed.get());
+        snapshot.put("rejected", rejected.get());
+        snapshot.put("bucket", bucket.snapshot());
+        return snapshot;
+    }
+
+    private void work() {
+        while (running) {
+            try {
+                // A room is on the ready queue at most once, so only this worker touches its head
+                RoomQueue room = ready.take();
+                OutboundMessage message = room.messages.peek();
+                bucket.acquire();
+                inFlight.incrementAndGet();
+                try {
+                    send(room, message);
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void send(RoomQueue room, OutboundMessage message) {
+        try {
+            String body = message.send.get().join();
+            sent.incrementAndGet();
+            advance(room);
+            message.future.complete(body);
+        } catch (RuntimeException e) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            long resetMillis = rateLimitResetMillis(cause);
+            if (resetMillis >= 0 && message.attempts < maxRetries) {
+                message.attempts++;
+                long delay = resetMillis > 0 ? resetMillis : backoffMillis(message.attempts);
+                bucket.pause(Duration.ofMillis(delay));
+                retried.incrementAndGet();
+                log.warn("Rate limited posting to room {} | retry {}/{} in {} ms", room.roomId, message.attempts, maxRetries, delay);
+                // Keep the message at the head so the room's order holds
+                ready.add(room);
+                return;
+            }
+            failed.incrementAndGet();
+            advance(room);
+            message.future.completeExceptionally(cause);
+        }
+    }
+
+    /** Drops the room's head and either requeues the room or forgets it when empty. */
+    private void advance(RoomQueue room) {
+        queued.decrementAndGet();
+        rooms.compute(room.roomId, (id, current) -> {
+            room.messages.poll();
+            if (room.messages.isEmpty()) {
+                room.scheduled = false;
+                return null;
+            }
+            ready.add(room);
+            return room;
+        });
+    }
+
+    /**
+     * Returns how long the server asked us to wait when the failure is a rate limit
+     * (0 when it did not say, or when the local concurrency limit turned the call
+     * away), or -1 for any other failure.
+     */
+    static long rateLimitResetMillis(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof HttpStatusCodeException http && http.getStatusCode().value() == 429) {
+                return resetFromHeaders(http.getResponseHeaders());
+            }
+            if (t instanceof DdpMethodException ddp && ddp.isRateLimited()) {
+                return Math.max(ddp.getTimeToResetMillis(), 0);
+            }
+            if (t instanceof ConcurrencyLimitException) {
+                // Turned away locally before reaching Rocket.Chat; back off like a 429 without a reset time
+                return 0;
+            }
+        }
+        return -1;
+    }
+
+    private static long resetFromHeaders(HttpHeaders headers) {
+        if (headers == null) {
+            return 0;
+        }
+        try {
+            String reset = headers.getFirst("X-RateLimit-Reset");
+            if (reset != null) {
+                return Math.max(Long.parseLong(reset.trim()) - System.currentTimeMillis(), 0);
+            }
+            String retryAfter = headers.getFirst(HttpHeaders.RETRY_AFTER);
+            if (retryAfter != null) {
+                return Math.max(Long.parseLong(retryAfter.trim()) * 1000, 0);
+            }
+        } catch (NumberFormatException ignored) {
+            // Fall back to backoff
+        }
+        return 0;
+    }
+
+    /** Exponential backoff with full jitter. */
+    static long backoffMillis(int attempt) {
+        long cap = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(attempt, 16));
+        return ThreadLocalRandom.current().nextLong(BASE_BACKOFF_MS, Math.max(cap, BASE_BACKOFF_MS + 1));
+    }
+
+    private static final class RoomQueue {
+        private final String roomId;
+        private final ConcurrentLinkedQueue<OutboundMessage> messages = new ConcurrentLinkedQueue<>();
+        private boolean scheduled;
+
+        RoomQueue(String roomId) {
+            this.roomId = roomId;
+        }
+    }
+
+    private static final class OutboundMessage {
+        private final Supplier<CompletableFuture<String>> send;
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+        private int attempts;
+
+        OutboundMessage(Supplier<CompletableFuture<String>> send) {
+            this.send = send;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.rocket.chat.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rocket.chat.dto.UserProvisioningRow;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads provisioning rows one record at a time from a CSV (with a header naming the
+ * {@code username}, {@code email}, {@code name} and {@code password} columns, in any
+ * order) or NDJSON upload. Only the current record is held in memory. A record that
+ * cannot be parsed comes back with an error instead of ending the upload.
+ */
+final class ProvisioningRowReader implements Closeable {
+
+    /** A single record larger than this ends the upload rather than being buffered. */
+    private static final int MAX_RECORD_CHARS = 64 * 1024;
+
+    record Parsed(long row, UserProvisioningRow value, String error) {
+    }
+
+    private final BufferedReader reader;
+    private final BulkUserProvisioner.Format format;
+    private final ObjectMapper objectMapper;
+    private Map<String, Integer> columns;
+    private long row;
+
+    ProvisioningRowReader(InputStream in, BulkUserProvisioner.Format format, ObjectMapper objectMapper) {
+        this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        this.format = format;
+        this.objectMapper = objectMapper;
+    }
+
+    /** The next record, or null at the end of the upload. */
+    Parsed next() throws IOException {
+        return format == BulkUserProvisioner.Format.CSV ? nextCsv() : nextJson();
+    }
+
+    private Parsed nextJson() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+        } while (line.isBlank());
+        row++;
+        if (line.length() > MAX_RECORD_CHARS) {
+            return new Parsed(row, null, "Record longer than " + MAX_RECORD_CHARS + " characters");
+        }
+        try {
+            return new Parsed(row, objectMapper.readValue(line, UserProvisioningRow.class), null);
+        } catch (JsonProcessingException e) {
+            return new Parsed(row, null, "Malformed JSON: " + e.getOriginalMessage());
+        }
+    }
+
+    private Parsed nextCsv() throws IOException {
+        if (columns == null) {
+            List<String> header = readCsvRecord();
+            if (header == null) {
+                return null;
+            }
+            columns = new HashMap<>();
+            for (int i = 0; i < header.size(); i++) {
+                // Strip a UTF-8 byte order mark from the first column name
+                String name = (i == 0 ? header.get(i).replace("\uFEFF", "") : header.get(i)).trim().toLowerCase(Locale.ROOT);
+                columns.putIfAbsent(name, i);
+            }
+            if (!columns.containsKey("username")) {
+                throw new IOException("CSV header must name a username column");
+            }
+        }
+        List<String> fields;
+        do {
+            fields = readCsvRecord();
+            if (fields == null) {
+                return null;
+            }
+        } while (fields.size() == 1 && fields.get(0).isBlank());
+        row++;
+        UserProvisioningRow value = new UserProvisioningRow();
+        value.setUsername(field(fields, "username"));
+        value.setEmail(field(fields, "email"));
+        value.setName(field(fields, "name"));
+        value.setPassword(field(fields, "password"));
+        return new Parsed(row, value, null);
+    }
+
+    private String field(List<String> fields, String column) {
+        Integer index = columns.get(column);
+        if (index == null || index >= fields.size()) {
+            return null;
+        }
+        String value = fields.get(index).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    /** One RFC 4180 record: quoted fields may hold commas, doubled quotes and line breaks. */
+    private List<String> readCsvRecord() throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean any = false;
+        int length = 0;
+        int c;
+        while ((c = reader.read()) != -1) {
+            any = true;
+            if (++length > MAX_RECORD_CHARS) {
+                throw new IOException("CSV record " + (row + 1) + " is longer than " + MAX_RECORD_CHARS + " characters");
+            }
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        if (next != -1) {
+                            reader.reset();
+                        }
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+        }
+        if (!any) {
+            return null;
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,414 @@
+package com.rocket.chat.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rocket.chat.config.RocketChatWebSocketManager;
+import com.rocket.chat.dto.MessagePage;
+import com.rocket.chat.dto.RoomMessage;
+import com.rocket.chat.dto.UserSession;
+import com.rocket.chat.exception.RocketChatException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache for the polled read endpoints: room history pages per room and
+ * user, and each user's direct message list. Responses are kept serialized with an
+ * ETag, so a hit costs no Rocket.Chat call and no JSON encoding, and an unchanged
+ * one can be answered with a 304.
+ *
+ * <p>Room pages stay fresh from the WebSocket: a new message is prepended to the
+ * cached newest pages of its room, and an edit or an out-of-order message drops the
+ * room's pages. That only holds while the room is followed, so a page is kept for
+ * {@code ttl} only while the subscription it was cached under is still live; after
+ * a reconnect (a new subscription, which may have missed messages) or for rooms
+ * nobody follows it is kept for {@code unwatched-ttl}. Direct message lists are
+ * dropped on any direct message or room change and otherwise kept for {@code direct-ttl}.
+ * Concurrent misses for the same key share one load.
+ *
+ * <p>Entries belong to the caller's user ID together with a digest of its token, so a
+ * hit is only served to a request carrying the token the entry was loaded with, which
+ * Rocket.Chat accepted at the time; any other token misses and goes to Rocket.Chat.
+ */
+@Component
+public class ReadResponseCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadResponseCache.class);
+    private static final String DIRECT_ROOM_TYPE = "d";
+
+    /** A cached response body and its ETag. */
+    public record Response(byte[] body, String etag) {
+    }
+
+    private record PageKey(String principal, int count, int offset, Long latest, Long oldest) {
+    }
+
+    private final UserService userService;
+    private final ObjectMapper objectMapper;
+    private final ObjectProvider<RocketChatWebSocketManager> webSocketManager;
+    private final Map<String, Room> rooms = new ConcurrentHashMap<>();
+    private final Map<String, Entry<String>> directLists = new ConcurrentHashMap<>();
+    private final Map<Object, CompletableFuture<Response>> loading = new ConcurrentHashMap<>();
+    private final AtomicLong directVersion = new AtomicLong();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong patched = new AtomicLong();
+    private final AtomicLong invalidated = new AtomicLong();
+
+    @Value("${rocketchat.read-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${rocketchat.read-cache.ttl:5m}")
+    private Duration ttl;
+
+    @Value("${rocketchat.read-cache.unwatched-ttl:2s}")
+    private Duration unwatchedTtl;
+
+    @Value("${rocketchat.read-cache.direct-ttl:10s}")
+    private Duration directTtl;
+
+    @Value("${rocketchat.read-cache.max-entries:10000}")
+    private int maxEntries;
+
+    public ReadResponseCache(UserService userService,
+                             ObjectMapper objectMapper,
+                             ObjectProvider<RocketChatWebSocketManager> webSocketManager) {
+        this.userService = userService;
+        this.objectMapper = objectMapper;
+        this.webSocketManager = webSocketManager;
+    }
+
+    /** A page of room history as {@link UserService#getMessagesInRoom} returns it, from the cache when fresh. */
+    public CompletableFuture<Response> roomMessages(UserSession session, String roomId, int count, int offset, Long latest, Long oldest) {
+        if (!enabled) {
+            return userService.getMessagesInRoomAsync(session, roomId, count, offset, latest, oldest)
+                    .thenApply(page -> new Entry<>(page, 0, ttl, null).response());
+        }
+        PageKey key = new PageKey(principal(session), count, offset, latest, oldest);
+        Room room = rooms.computeIfAbsent(roomId, id -> new Room());
+        String subscriptionId = liveSubscriptionId(roomId);
+        long now = System.currentTimeMillis();
+        long version;
+        synchronized (room) {
+            Entry<MessagePage> entry = room.pages.get(key);
+            if (entry != null && entry.isFresh(now, subscriptionId)) {
+                hits.incrementAndGet();
+                return CompletableFuture.completedFuture(entry.response());
+            }
+            version = room.version;
+        }
+        return load(List.of(roomId, key), () -> userService.getMessagesInRoomAsync(session, roomId, count, offset, latest, oldest)
+                .thenApply(page -> {
+                    sweepIfFull();
+                    Entry<MessagePage> entry = new Entry<>(page, now, ttl, subscriptionId);
+                    synchronized (room) {
+                        if (room.version != version) {
+                            // A message arrived while loading; the page may predate it, so trust it only briefly
+                            entry = new Entry<>(page, now, ttl, null);
+                        }
+                        store(room.pages, key, entry);
+                    }
+                    return entry.response();
+                }));
+    }
+
+    /** The user's direct message list as {@link UserService#getDirectRoomMessages} returns it, from the cache when fresh. */
+    public CompletableFuture<Response> directMessages(UserSession session) {
+        if (!enabled) {
+            return userService.getDirectRoomMessagesAsync(session).thenApply(body -> new Entry<>(body, 0, directTtl, null).response());
+        }
+        String principal = principal(session);
+        long now = System.currentTimeMillis();
+        Entry<String> cached = directLists.get(principal);
+        if (cached != null && cached.isFresh(now)) {
+            hits.incrementAndGet();
+            return CompletableFuture.completedFuture(cached.response());
+        }
+        long version = directVersion.get();
+        return load(List.of(DIRECT_ROOM_TYPE, principal), () -> userService.getDirectRoomMessagesAsync(session)
+                .thenApply(body -> {
+                    sweepIfFull();
+                    Entry<String> entry = new Entry<>(body, now, directTtl, null);
+                    synchronized (directLists) {
+                        if (directVersion.get() == version) {
+                            store(directLists, principal, entry);
+                        }
+                    }
+                    return entry.response();
+                }));
+    }
+
+    /** User ID plus a digest of the token, so entries never outlive or cross the credentials that loaded them. */
+    private static String principal(UserSession session) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            String token = session.getAuthToken() == null ? "" : session.getAuthToken();
+            return session.getUserId() + ":" + HexFormat.of().formatHex(sha256.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private CompletableFuture<Response> load(Object key, Supplier<CompletableFuture<Response>> loader) {
+        misses.incrementAndGet();
+        CompletableFuture<Response> mine = new CompletableFuture<>();
+        CompletableFuture<Response> existing = loading.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return existing;
+        }
+        loader.get().whenComplete((response, error) -> {
+            loading.remove(key, mine);
+            if (error != null) {
+                mine.completeExceptionally(error);
+            } else {
+                mine.complete(response);
+            }
+        });
+        return mine;
+    }
+
+    private <K, T> void store(Map<K, Entry<T>> entries, K key, Entry<T> entry) {
+        if (size.get() >= maxEntries && !entries.containsKey(key)) {
+            return;
+        }
+        if (entries.put(key, entry) == null) {
+            size.incrementAndGet();
+        }
+    }
+
+    /** Drops entries that can no longer be served once the cache is full; called holding no lock. */
+    private void sweepIfFull() {
+        if (size.get() < maxEntries) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (Room room : rooms.values()) {
+            synchronized (room) {
+                removeIf(room.pages.values().iterator(), entry -> entry.isExpired(now));
+            }
+        }
+        synchronized (directLists) {
+            removeIf(directLists.values().iterator(), entry -> entry.isExpired(now));
+        }
+    }
+
+    private <T> void removeIf(Iterator<Entry<T>> entries, Predicate<Entry<T>> expired) {
+        while (entries.hasNext()) {
+            if (expired.test(entries.next())) {
+                entries.remove();
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Applies a message seen on the WebSocket. A new message is prepended to the room's
+     * cached newest pages and drops pages it would shift (offset > 0) or cannot be placed
+     * in; an edit drops all of the room's pages. Any direct message drops the direct lists.
+     */
+    public void onRoomMessage(RoomMessage message, boolean isNew) {
+        if (DIRECT_ROOM_TYPE.equals(message.getRoomType())) {
+            invalidateDirectLists();
+        }
+        Room room = rooms.get(message.getRoomId());
+        if (room == null) {
+            return;
+        }
+        synchronized (room) {
+            room.version++;
+            Iterator<Map.Entry<PageKey, Entry<MessagePage>>> pages = room.pages.entrySet().iterator();
+            while (pages.hasNext()) {
+                Map.Entry<PageKey, Entry<MessagePage>> page = pages.next();
+                Entry<MessagePage> patchedEntry = isNew ? patch(page.getKey(), page.getValue(), message) : null;
+                if (patchedEntry == page.getValue()) {
+                    continue;
+                }
+                if (patchedEntry != null) {
+                    page.setValue(patchedEntry);
+                    patched.incrementAndGet();
+                } else {
+                    pages.remove();
+                    size.decrementAndGet();
+                    invalidated.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * The entry with the message applied: the same entry when the page does not cover
+     * it, a new one when it was prepended, or null when the page must be reloaded.
+     */
+    private Entry<MessagePage> patch(PageKey key, Entry<MessagePage> entry, RoomMessage message) {
+        long timestamp = message.getTimestamp();
+        if (key.latest() != null && timestamp >= key.latest()) {
+            return entry;
+        }
+        if (key.oldest() != null && timestamp <= key.oldest()) {
+            return entry;
+        }
+        if (key.offset() > 0 || key.latest() != null) {
+            return null;
+        }
+        List<RoomMessage> messages = entry.value.getMessages();
+        if (message.getId() != null && messages.stream().anyMatch(m -> message.getId().equals(m.getId()))) {
+            return entry;
+        }
+        if (!messages.isEmpty() && timestamp < messages.get(0).getTimestamp()) {
+            return null;
+        }
+        int pageSize = userService.clampPageSize(key.count());
+        List<RoomMessage> patchedMessages = new ArrayList<>(messages.size() + 1);
+        patchedMessages.add(message);
+        patchedMessages.addAll(messages);
+        Long nextCursor = entry.value.getNextCursor();
+        if (patchedMessages.size() > pageSize) {
+            // The oldest message moves to the next page, so the cursor has to move up to it
+            patchedMessages.subList(pageSize, patchedMessages.size()).clear();
+            if (patchedMessages.get(0).getTimestamp() == patchedMessages.get(pageSize - 1).getTimestamp()) {
+                return null;
+            }
+            nextCursor = UserService.nextCursor(patchedMessages);
+        }
+        MessagePage page = new MessagePage(entry.value.getRoomId(), patchedMessages, entry.value.getOffset(), nextCursor);
+        return entry.withValue(page);
+    }
+
+    /** Drops the room's cached pages, e.g. when messages it missed could not all be backfilled. */
+    public void invalidateRoom(String roomId) {
+        Room room = rooms.get(roomId);
+        if (room == null) {
+            return;
+        }
+        synchronized (room) {
+            room.version++;
+            int removed = room.pages.size();
+            room.pages.clear();
+            size.addAndGet(-removed);
+            invalidated.addAndGet(removed);
+        }
+    }
+
+    /** Drops every user's direct message list, e.g. when a direct room is created or removed. */
+    public void invalidateDirectLists() {
+        synchronized (directLists) {
+            directVersion.incrementAndGet();
+            int removed = directLists.size();
+            directLists.clear();
+            size.addAndGet(-removed);
+            invalidated.addAndGet(removed);
+        }
+    }
+
+    private String liveSubscriptionId(String roomId) {
+        RocketChatWebSocketManager manager = webSocketManager.getIfAvailable();
+        return manager == null ? null : manager.liveSubscriptionId(roomId);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("enabled", enabled);
+        snapshot.put("entries", size.get());
+        snapshot.put("maxEntries", maxEntries);
+        snapshot.put("rooms", rooms.size());
+        snapshot.put("hits", hits.get());
+        snapshot.put("misses", misses.get());
+        snapshot.put("coalescedLoads", coalesced.get());
+        snapshot.put("patched", patched.get());
+        snapshot.put("invalidated", invalidated.get());
+        long lookups = hits.get() + misses.get();
+        snapshot.put("hitRatio", lookups == 0 ? 0.0 : (double) hits.get() / lookups);
+        return snapshot;
+    }
+
+    private static final class Room {
+        private final Map<PageKey, Entry<MessagePage>> pages = new HashMap<>();
+        private long version;
+    }
+
+    private final class Entry<T> {
+        private final T value;
+        private final long storedAt;
+        private final Duration ttl;
+        private final String subscriptionId;
+        private volatile Response response;
+
+        Entry(T value, long storedAt, Duration ttl, String subscriptionId) {
+            this.value = value;
+            this.storedAt = storedAt;
+            this.ttl = ttl;
+            this.subscriptionId = subscriptionId;
+        }
+
+        Entry<T> withValue(T patchedValue) {
+            return new Entry<>(patchedValue, storedAt, ttl, subscriptionId);
+        }
+
+        boolean isFresh(long now) {
+            return now - storedAt < ttl.toMillis();
+        }
+
+        /** Fresh for the full TTL while cached under the room's current live subscription, else only briefly. */
+        boolean isFresh(long now, String currentSubscriptionId) {
+            boolean watched = subscriptionId != null && subscriptionId.equals(currentSubscriptionId);
+            return now - storedAt < (watched ? ttl : unwatchedTtl).toMillis();
+        }
+
+        boolean isExpired(long now) {
+            return now - storedAt >= Math.max(ttl.toMillis(), unwatchedTtl.toMillis());
+        }
+
+        /** Serialized on first use, so patches on the WebSocket thread do not encode JSON. */
+        Response response() {
+            Response serialized = response;
+            if (serialized == null) {
+                byte[] body = value instanceof String text ? text.getBytes(StandardCharsets.UTF_8) : encode(value);
+                serialized = new Response(body, etag(body));
+                response = serialized;
+            }
+            return serialized;
+        }
+    }
+
+    private byte[] encode(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            log.error("Failed to encode cached response", e);
+            throw new RocketChatException("Failed to encode response", e);
+        }
+    }
+
+    /** Strong ETag from a 64-bit FNV-1a hash of the body. */
+    static String etag(byte[] body) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : body) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return "\"" + Long.toHexString(hash) + "\"";
+    }
+}
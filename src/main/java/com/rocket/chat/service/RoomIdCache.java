@@ -0,0 +1,228 @@
+package com.rocket.chat.service;
+
+import com.rocket.chat.exception.RocketChatException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Caches room name to room ID resolution. Entries expire after a TTL, the map is
+ * bounded with LRU eviction, and "not found" answers are cached for a shorter
+ * time. Concurrent loads of the same name collapse into a single in-flight call.
+ */
+@Component
+public class RoomIdCache {
+
+    private final Map<String, Entry> entries;
+    private final Map<String, String> namesByRoomId = new HashMap<>();
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong loadFailures = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final long ttlMs;
+    private final long negativeTtlMs;
+    private final int maxSize;
+
+    public RoomIdCache(@Value("${rocketchat.room-cache.ttl:10m}") Duration ttl,
+                       @Value("${rocketchat.room-cache.negative-ttl:30s}") Duration negativeTtl,
+                       @Value("${rocketchat.room-cache.max-size:10000}") int maxSize) {
+        this.ttlMs = ttl.toMillis();
+        this.negativeTtlMs = negativeTtl.toMillis();
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > RoomIdCache.this.maxSize) {
+                    namesByRoomId.remove(eldest.getValue().roomId);
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached room ID, or loads it. A null result from the loader means
+     * "no such room" and is cached negatively, so this method may return null.
+     */
+    public String get(String roomName, Function<String, String> loader) {
+        Entry entry = lookup(roomName);
+        if (entry != null) {
+            if (entry.roomId == null) {
+                negativeHits.incrementAndGet();
+            } else {
+                hits.incrementAndGet();
+            }
+            return entry.roomId;
+        }
+        misses.incrementAndGet();
+        return singleFlight(roomName, loader, false);
+    }
+
+    /**
+     * Returns the cached room ID, or runs the creator once across concurrent callers.
+     * A negative entry does not short-circuit this call: it is replaced by the created room.
+     */
+    public String getOrCreate(String roomName, Function<String, String> creator) {
+        while (true) {
+            Entry entry = lookup(roomName);
+            if (entry != null && entry.roomId != null) {
+                hits.incrementAndGet();
+                return entry.roomId;
+            }
+            String roomId = singleFlight(roomName, creator, true);
+            // A null here means we joined a concurrent negative lookup rather than our own creation
+            if (roomId != null) {
+                return roomId;
+            }
+            invalidate(roomName);
+        }
+    }
+
+    public void put(String roomName, String roomId) {
+        store(roomName, roomId, ttlMs);
+    }
+
+    public void invalidate(String roomName) {
+        synchronized (entries) {
+            Entry removed = entries.remove(roomName);
+            if (removed != null && removed.roomId != null) {
+                namesByRoomId.remove(removed.roomId);
+            }
+        }
+    }
+
+    public void invalidateRoomId(String roomId) {
+        synchronized (entries) {
+            String roomName = namesByRoomId.remove(roomId);
+            if (roomName != null) {
+                entries.remove(roomName);
+            }
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        long loadCount = loads.get();
+        long failureCount = loadFailures.get();
+        synchronized (entries) {
+            snapshot.put("size", entries.size());
+        }
+        snapshot.put("maxSize", maxSize);
+        snapshot.put("hits", hits.get());
+        snapshot.put("negativeHits", negativeHits.get());
+        snapshot.put("misses", misses.get());
+        snapshot.put("coalescedLoads", coalesced.get());
+        snapshot.put("loads", loadCount);
+        snapshot.put("loadFailures", failureCount);
+        // Failed loads are timed too, so they count towards the average
+        long attempts = loadCount + failureCount;
+        snapshot.put("averageLoadMs", attempts == 0 ? 0.0 : loadNanos.get() / 1_000_000.0 / attempts);
+        snapshot.put("evictions", evictions.get());
+        return snapshot;
+    }
+
+    private Entry lookup(String roomName) {
+        synchronized (entries) {
+            Entry entry = entries.get(roomName);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt <= System.currentTimeMillis()) {
+                entries.remove(roomName);
+                if (entry.roomId != null) {
+                    namesByRoomId.remove(entry.roomId);
+                }
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Runs the loader once across concurrent callers. With {@code create} set, only a
+     * room ID counts as an answer; a cached "not found" does not stop the creator.
+     */
+    private String singleFlight(String roomName, Function<String, String> loader, boolean create) {
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(roomName, mine);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return await(existing);
+        }
+        // A flight may have stored its result and unregistered between our lookup and putIfAbsent
+        Entry stored = lookup(roomName);
+        if (stored != null && (stored.roomId != null || !create)) {
+            inFlight.remove(roomName, mine);
+            mine.complete(stored.roomId);
+            return stored.roomId;
+        }
+        long start = System.nanoTime();
+        try {
+            String roomId = loader.apply(roomName);
+            loads.incrementAndGet();
+            store(roomName, roomId, roomId == null ? negativeTtlMs : ttlMs);
+            // Unregister before completing so nobody joins a call whose result is already stale
+            inFlight.remove(roomName, mine);
+            mine.complete(roomId);
+            return roomId;
+        } catch (RuntimeException e) {
+            loadFailures.incrementAndGet();
+            inFlight.remove(roomName, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    private String await(CompletableFuture<String> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RocketChatException("Room lookup failed", e.getCause());
+        }
+    }
+
+    private void store(String roomName, String roomId, long ttl) {
+        synchronized (entries) {
+            Entry previous = entries.put(roomName, new Entry(roomId, System.currentTimeMillis() + ttl));
+            if (previous != null && previous.roomId != null) {
+                namesByRoomId.remove(previous.roomId);
+            }
+            if (roomId != null) {
+                namesByRoomId.put(roomId, roomName);
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final String roomId;
+        private final long expiresAt;
+
+        private Entry(String roomId, long expiresAt) {
+            this.roomId = roomId;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -2,50 +2,136 @@ package com.rocket.chat.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rocket.chat.config.DdpFrameEncoder;
+import com.rocket.chat.config.RestCallExecutor;
+import com.rocket.chat.config.RocketChatMetrics;
+import com.rocket.chat.config.WebSocketMessageTransport;
+import com.rocket.chat.dto.MessagePage;
+import com.rocket.chat.dto.RoomMessage;
+import com.rocket.chat.dto.SearchHit;
 import com.rocket.chat.dto.UserSession;
 import com.rocket.chat.exception.RocketChatException;
+import io.micrometer.core.instrument.Gauge;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 @Service
 public class UserService {
 
     private static final Logger log = LoggerFactory.getLogger(UserService.class);
+    private static final String DIRECT_ROOM_TYPE = "d";
 
     private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private final MessageHistoryReader historyReader = new MessageHistoryReader(objectMapper);
+    private final DdpFrameEncoder payloadEncoder = new DdpFrameEncoder(objectMapper);
     private final Map<String, Long> lastActivityMap = new ConcurrentHashMap<>();
     private final Set<String> autoRepliedRooms = ConcurrentHashMap.newKeySet();
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-
-    private static final long INACTIVITY_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(10);
+    private final InactivityTracker inactivityTracker;
+    private final RoomIdCache roomIdCache;
+    private final MessageJournal messageJournal;
+    private final MessageSearchIndex searchIndex;
+    private final RocketChatMetrics metrics;
+    private final ObjectProvider<WebSocketMessageTransport> webSocketTransport;
+    private final OutboundMessageScheduler outboundScheduler;
+    private final UserSessionCache sessionCache;
+    private final RestCallExecutor restCalls;
 
     @Value("${rocketchat.base-url}")
     private String baseUrl;
 
-    private String authToken;
-    private String userId;
-
-    public UserService(RestTemplate restTemplate) {
+    @Value("${rocketchat.history.max-page-size:100}")
+    private int maxPageSize;
+
+    @Value("${rocketchat.search.max-results:100}")
+    private int maxSearchResults;
+
+    /** {@code rest} posts every message with chat.postMessage; {@code websocket} uses the open DDP connections. */
+    @Value("${rocketchat.message-transport:rest}")
+    private String messageTransport;
+
+    /** Identity for work no request owns: auto-replies, inactivity notices, backfills. */
+    private volatile UserSession serviceSession;
+
+    public UserService(RestTemplate restTemplate,
+                       InactivityTracker inactivityTracker,
+                       RoomIdCache roomIdCache,
+                       MessageJournal messageJournal,
+                       MessageSearchIndex searchIndex,
+                       RocketChatMetrics metrics,
+                       ObjectProvider<WebSocketMessageTransport> webSocketTransport,
+                       OutboundMessageScheduler outboundScheduler,
+                       UserSessionCache sessionCache,
+                       RestCallExecutor restCalls) {
         this.restTemplate = restTemplate;
+        this.inactivityTracker = inactivityTracker;
+        this.roomIdCache = roomIdCache;
+        this.messageJournal = messageJournal;
+        this.searchIndex = searchIndex;
+        this.metrics = metrics;
+        this.webSocketTransport = webSocketTransport;
+        this.outboundScheduler = outboundScheduler;
+        this.sessionCache = sessionCache;
+        this.restCalls = restCalls;
+        inactivityTracker.onExpiry(this::closeInactiveSession);
+        Gauge.builder("rocketchat.sessions.active", lastActivityMap, Map::size)
+                .description("Rooms with an open session")
+                .register(metrics.registry());
     }
 
-    public void setAuth(String token, String userId) {
-        this.authToken = token;
-        this.userId = userId;
+    public void setServiceSession(UserSession session) {
+        this.serviceSession = session;
     }
 
+    public UserSession getServiceSession() {
+        UserSession session = serviceSession;
+        if (session == null) {
+            throw new IllegalStateException("No service session. Log in as admin first.");
+        }
+        return session;
+    }
+
+    /**
+     * The session a request acts as: the caller's own when it sent credentials, else the
+     * service session. A token issued by {@link #loginUser} resolves to its latest renewal.
+     */
+    public UserSession session(String userId, String authToken) {
+        if (userId == null && authToken == null) {
+            return getServiceSession();
+        }
+        if (userId == null || authToken == null) {
+            throw new RocketChatException("Both X-User-Id and X-Auth-Token are required");
+        }
+        return sessionCache.resolve(userId, authToken);
+    }
+
+    /** Logs the user in, reusing a cached token for the same credentials while it is valid. */
     public UserSession loginUser(String username, String password) {
+        return sessionCache.login(username, password, this::authenticate);
+    }
+
+    public CompletableFuture<UserSession> loginUserAsync(String username, String password) {
+        return restCalls.submit(() -> loginUser(username, password));
+    }
+
+    private UserSession authenticate(String username, String password) {
         String url = baseUrl + "/login";
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
@@ -58,21 +144,102 @@ public class UserService {
             ResponseEntity<String> response = restTemplate.postForEntity(url, request, String.class);
             JsonNode json = objectMapper.readTree(response.getBody());
 
-            String userId = json.get("data").get("userId").asText();
-            String authToken = json.get("data").get("authToken").asText();
-            return new UserSession(userId, authToken);
+            JsonNode data = json.get("data");
+            String userId = data.get("userId").asText();
+            String authToken = data.get("authToken").asText();
+            log.info("Logged in user {}", username);
+            return new UserSession(userId, authToken, username, tokenExpiry(data.path("tokenExpires")));
         } catch (Exception e) {
             log.error("Login failed for user: {}", username, e);
             throw new RocketChatException("User login failed", e);
         }
     }
 
-    public String sendMessage(String roomId, String message) {
+    /**
+     * The token expiry the server reported, as an EJSON date, ISO-8601 string or epoch
+     * millis, else the configured token TTL from now.
+     */
+    private long tokenExpiry(JsonNode tokenExpires) {
+        JsonNode value = tokenExpires.has("$date") ? tokenExpires.get("$date") : tokenExpires;
+        if (value.isNumber()) {
+            return value.asLong();
+        }
+        if (value.isTextual()) {
+            try {
+                return Instant.parse(value.asText()).toEpochMilli();
+            } catch (DateTimeParseException e) {
+                log.warn("Ignoring unparseable tokenExpires {}", value.asText());
+            }
+        }
+        return sessionCache.expiryFromNow();
+    }
+
+    public String sendMessage(UserSession session, String roomId, String message) {
+        try {
+            return sendMessageAsync(session, roomId, message).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RocketChatException rocketChatException) {
+                throw rocketChatException;
+            }
+            log.error("Error sending message to room {}", roomId, cause);
+            throw new RocketChatException("Failed to send message", cause);
+        }
+    }
+
+    /**
+     * Queues the message on the {@link OutboundMessageScheduler}, which keeps per-room
+     * order and paces posts to stay under the server's rate limit. The message ID is
+     * minted here, once, so the scheduler's retries all send the same one.
+     */
+    public CompletableFuture<String> sendMessageAsync(UserSession session, String roomId, String message) {
+        String messageId = MessageIds.next();
+        return outboundScheduler.submit(roomId, () -> transmit(session, roomId, messageId, message));
+    }
+
+    /**
+     * Sends over the WebSocket when that transport is selected and a connection is
+     * logged in, otherwise over REST. Many WebSocket sends can be in flight at once.
+     * The DDP connections are logged in as the service user, so other users always post over REST.
+     * {@code chat.postMessage} takes no message ID, so only the WebSocket path is safe to retry.
+     */
+    private CompletableFuture<String> transmit(UserSession session, String roomId, String messageId, String message) {
+        MessageTransport transport = isServiceSession(session) ? selectedTransport() : null;
+        if (transport != null) {
+            return transport.sendMessage(messageId, roomId, message)
+                    .whenComplete((body, error) -> {
+                        if (error == null) {
+                            log.info("Message sent to room {} over WebSocket: {}", roomId, message);
+                        }
+                    });
+        }
+        try {
+            return CompletableFuture.completedFuture(postMessage(session, roomId, message));
+        } catch (RocketChatException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /** The WebSocket transport when selected and usable; null means post over REST. */
+    private MessageTransport selectedTransport() {
+        if (!"websocket".equalsIgnoreCase(messageTransport)) {
+            return null;
+        }
+        MessageTransport transport = webSocketTransport.getIfAvailable();
+        return transport != null && transport.isAvailable() ? transport : null;
+    }
+
+    private boolean isServiceSession(UserSession session) {
+        UserSession service = serviceSession;
+        return service != null && service.getUserId().equals(session.getUserId());
+    }
+
+    private String postMessage(UserSession session, String roomId, String message) {
         String url = baseUrl + "/chat.postMessage";
-        HttpHeaders headers = authHeaders();
+        HttpHeaders headers = authHeaders(session);
         headers.setContentType(MediaType.APPLICATION_JSON);
 
-        String json = String.format("{\"roomId\": \"%s\", \"text\": \"%s\"}", roomId, message);
+        String json = payloadEncoder.fields("roomId", roomId, "text", message);
         HttpEntity<String> request = new HttpEntity<>(json, headers);
 
         try {
@@ -85,34 +252,160 @@ public class UserService {
         }
     }
 
-    public List<String> getMessagesInRoom(String roomId) {
-        String url = baseUrl + "/channels.messages?roomId=" + roomId;
-        HttpEntity<Void> request = new HttpEntity<>(authHeaders());
+    /**
+     * Fetches one page of room history, newest first. {@code latest}/{@code oldest} are epoch
+     * millis bounds (exclusive); pass the returned cursor as {@code latest} to page backwards.
+     * When the page boundary falls inside a millisecond, the page ends before that millisecond,
+     * which starts the next page instead, so none of its messages are skipped; a page within a
+     * single millisecond holds all of that millisecond, even beyond {@code count}.
+     */
+    public MessagePage getMessagesInRoom(UserSession session, String roomId, int count, int offset, Long latest, Long oldest) {
+        int pageSize = clampPageSize(count);
+        // One message past the page tells whether its last millisecond continues on the next one
+        int wanted = pageSize + 1;
+        List<RoomMessage> messages = new ArrayList<>(wanted);
+        Long restLatest = latest;
+        // Serve the range the local journal covers from disk; REST only for what is older
+        Long coveredSince = offset == 0 ? messageJournal.coveredSince(roomId) : null;
+        if (coveredSince != null && (latest == null || latest > coveredSince)) {
+            messages.addAll(messageJournal.readRecent(roomId, wanted, latest, oldest));
+            restLatest = coveredSince;
+        }
+        int local = messages.size();
+        if (messages.size() < wanted && (oldest == null || restLatest == null || restLatest > oldest)) {
+            fetchHistoryPage(session, roomId, wanted - messages.size(), offset, restLatest, oldest, messages::add);
+        }
+        Long nextCursor = null;
+        if (messages.size() == wanted) {
+            RoomMessage next = messages.remove(pageSize);
+            long last = messages.get(pageSize - 1).getTimestamp();
+            if (next.getTimestamp() != last) {
+                nextCursor = last;
+            } else if (messages.get(0).getTimestamp() == last) {
+                // One millisecond throughout: widen the page to all of it so the cursor can move past it
+                messages.clear();
+                streamMillisecond(session, roomId, pageSize, last, messages::add);
+                local = 0;
+                nextCursor = last;
+            } else {
+                nextCursor = nextCursor(messages);
+            }
+        }
+        log.info("Fetched {} messages from room {} ({} from journal)", messages.size(), roomId, Math.min(local, messages.size()));
+        return new MessagePage(roomId, messages, offset, nextCursor);
+    }
 
-        try {
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET, request, String.class);
-            JsonNode json = objectMapper.readTree(response.getBody());
+    public CompletableFuture<MessagePage> getMessagesInRoomAsync(UserSession session, String roomId, int count, int offset,
+                                                                 Long latest, Long oldest) {
+        return restCalls.submit(() -> getMessagesInRoom(session, roomId, count, offset, latest, oldest));
+    }
 
-            List<String> messages = new ArrayList<>();
-            JsonNode messagesNode = json.get("messages");
+    /**
+     * Walks room history page by page, newest first, handing each message to the sink as it is
+     * parsed. Memory use is bounded by one message regardless of channel size.
+     */
+    public int streamMessagesInRoom(UserSession session, String roomId, int pageSize, Long latest, Long oldest, Consumer<RoomMessage> sink) {
+        return streamMessagesInRoom(session, roomId, pageSize, latest, oldest, Integer.MAX_VALUE, sink);
+    }
 
-            if (messagesNode != null && messagesNode.isArray()) {
-                for (JsonNode messageNode : messagesNode) {
-                    String text = messageNode.get("msg").asText();
-                    messages.add(text);
+    /** As above, but stops after the page that reaches {@code limit} messages. */
+    public int streamMessagesInRoom(UserSession session, String roomId, int pageSize, Long latest, Long oldest, int limit, Consumer<RoomMessage> sink) {
+        int size = clampPageSize(pageSize);
+        Long cursor = latest;
+        // Messages sharing the newest-seen millisecond are held back until an older one shows
+        // that millisecond is complete; the rest of it may be on the next page
+        List<RoomMessage> boundary = new ArrayList<>();
+        int total = 0;
+        while (true) {
+            int[] emitted = {0};
+            boundary.clear();
+            int read = fetchHistoryPage(session, roomId, size, 0, cursor, oldest, message -> {
+                if (!boundary.isEmpty() && boundary.get(0).getTimestamp() != message.getTimestamp()) {
+                    boundary.forEach(sink);
+                    emitted[0] += boundary.size();
+                    boundary.clear();
                 }
+                boundary.add(message);
+            });
+            total += emitted[0];
+            if (read < size) {
+                boundary.forEach(sink);
+                total += boundary.size();
+                break;
             }
-            log.info("Fetched {} messages from room {}", messages.size(), roomId);
-            return messages;
+            long timestamp = boundary.get(0).getTimestamp();
+            if (emitted[0] == 0) {
+                // A whole page in one millisecond: page through just that millisecond by offset
+                total += streamMillisecond(session, roomId, size, timestamp, sink);
+                cursor = timestamp;
+            } else {
+                // Re-read the held-back millisecond in full at the top of the next page
+                cursor = timestamp + 1;
+            }
+            if (total >= limit) {
+                break;
+            }
+        }
+        log.info("Streamed {} messages from room {}", total, roomId);
+        return total;
+    }
+
+    private int streamMillisecond(UserSession session, String roomId, int size, long timestamp, Consumer<RoomMessage> sink) {
+        int total = 0;
+        int read;
+        do {
+            read = fetchHistoryPage(session, roomId, size, total, timestamp + 1, timestamp - 1, sink);
+            total += read;
+        } while (read == size);
+        return total;
+    }
+
+    /**
+     * The cursor for the page after a full one, which must span more than one millisecond.
+     * Messages sharing the last message's millisecond may continue past the page, so they are
+     * removed here and the (exclusive) cursor is set just above them.
+     */
+    static long nextCursor(List<RoomMessage> messages) {
+        long last = messages.get(messages.size() - 1).getTimestamp();
+        int keep = messages.size();
+        while (messages.get(keep - 1).getTimestamp() == last) {
+            keep--;
+        }
+        messages.subList(keep, messages.size()).clear();
+        return last + 1;
+    }
+
+    private int fetchHistoryPage(UserSession session, String roomId, int count, int offset, Long latest, Long oldest, Consumer<RoomMessage> sink) {
+        UriComponentsBuilder uri = UriComponentsBuilder.fromUriString(baseUrl + "/channels.history")
+                .queryParam("roomId", roomId)
+                .queryParam("count", count)
+                .queryParam("offset", offset);
+        if (latest != null) {
+            uri.queryParam("latest", Instant.ofEpochMilli(latest));
+        }
+        if (oldest != null) {
+            uri.queryParam("oldest", Instant.ofEpochMilli(oldest));
+        }
+        HttpHeaders headers = authHeaders(session);
+
+        try {
+            Integer read = restTemplate.execute(uri.encode().build().toUri(), HttpMethod.GET,
+                    request -> request.getHeaders().putAll(headers),
+                    response -> historyReader.read(response.getBody(), roomId, sink));
+            return read == null ? 0 : read;
         } catch (Exception e) {
             log.error("Failed to fetch messages for room {}: {}", roomId, e.getMessage());
             throw new RocketChatException("Unable to fetch messages", e);
         }
     }
 
-    public String getDirectRoomMessages() {
+    int clampPageSize(int count) {
+        return Math.max(1, Math.min(count, maxPageSize));
+    }
+
+    public String getDirectRoomMessages(UserSession session) {
         String url = baseUrl + "/im.list";
-        HttpEntity<Void> request = new HttpEntity<>(authHeaders());
+        HttpEntity<Void> request = new HttpEntity<>(authHeaders(session));
 
         try {
             ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET, request, String.class);
@@ -124,9 +417,49 @@ public class UserService {
         }
     }
 
-    public String createDirectMessageRoom(String username) {
+    public CompletableFuture<String> getDirectRoomMessagesAsync(UserSession session) {
+        return restCalls.submit(() -> getDirectRoomMessages(session));
+    }
+
+    /**
+     * The rooms a live-event subscription of this session may follow, out of those requested
+     * (everything it may read when none are). Null means every room, for the service session;
+     * any other session gets only channels and groups it is subscribed to, never direct rooms,
+     * and nothing when Rocket.Chat rejects its token.
+     */
+    public List<String> liveEventRooms(UserSession session, Collection<String> requested) {
+        UserSession service = serviceSession;
+        // The token is checked too: nothing else verifies it before events start flowing
+        if (isServiceSession(session) && service.getAuthToken().equals(session.getAuthToken())) {
+            return requested == null || requested.isEmpty() ? null : List.copyOf(requested);
+        }
+        String url = baseUrl + "/subscriptions.get";
+        HttpEntity<Void> request = new HttpEntity<>(authHeaders(session));
+        Set<String> readable = new LinkedHashSet<>();
+        try {
+            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET, request, String.class);
+            for (JsonNode subscription : objectMapper.readTree(response.getBody()).path("update")) {
+                String roomId = subscription.path("rid").asText(null);
+                if (roomId != null && !DIRECT_ROOM_TYPE.equals(subscription.path("t").asText(null))) {
+                    readable.add(roomId);
+                }
+            }
+        } catch (HttpClientErrorException.Unauthorized e) {
+            log.warn("Live events refused for user {}: token rejected", session.getUserId());
+            return List.of();
+        } catch (Exception e) {
+            log.error("Error fetching subscriptions of user {}", session.getUserId(), e);
+            throw new RocketChatException("Failed to fetch room subscriptions", e);
+        }
+        if (requested == null || requested.isEmpty()) {
+            return List.copyOf(readable);
+        }
+        return requested.stream().filter(readable::contains).distinct().toList();
+    }
+
+    public String createDirectMessageRoom(UserSession session, String username) {
         String url = baseUrl + "/api/v1/im.create";
-        HttpHeaders headers = authHeaders();
+        HttpHeaders headers = authHeaders(session);
         headers.setContentType(MediaType.APPLICATION_JSON);
 
         Map<String, Object> body = new HashMap<>();
@@ -145,42 +478,58 @@ public class UserService {
         }
     }
 
+    public CompletableFuture<String> createDirectMessageRoomAsync(UserSession session, String username) {
+        return restCalls.submit(() -> createDirectMessageRoom(session, username));
+    }
+
     public void processReceivedMessage(String roomId, String sender, String message) {
-        log.info("Received message from roomId={}, sender={}, message={}", roomId, sender, message);
+        processReceivedMessage(new RoomMessage(null, roomId, sender, message, System.currentTimeMillis(), null, System.nanoTime()));
+    }
+
+    public void processReceivedMessage(RoomMessage roomMessage) {
+        String roomId = roomMessage.getRoomId();
+        log.info("Received message from roomId={}, sender={}, message={}", roomId, roomMessage.getSender(), roomMessage.getText());
         // Update last activity time
         lastActivityMap.put(roomId, System.currentTimeMillis());
+        searchIndex.index(roomMessage);
         // Auto-reply only once per session
         if (!autoRepliedRooms.contains(roomId)) {
             String autoReply = "Thank you for your message! An admin will respond shortly.";
             try {
-                sendMessage(roomId, autoReply);
+                sendMessage(getServiceSession(), roomId, autoReply);
+                metrics.autoReplyPosted(roomMessage);
                 autoRepliedRooms.add(roomId);
                 log.info("Sent auto-reply to room {}", roomId);
-            } catch (RocketChatException e) {
+            } catch (RocketChatException | IllegalStateException e) {
                 log.error("Failed to send auto-reply", e);
             }
         }
-        // Schedule session close (resets timer on every message)
-        scheduleSessionClose(roomId);
+        // Re-arm the room's inactivity timer (one timer per room, moved on every message)
+        inactivityTracker.touch(roomId, roomMessage.getRoomType());
     }
 
-    public String createOrGetUserPublicRoom(String username) {
+    public List<SearchHit> searchMessages(String query, String roomId, String sender, int limit) {
+        List<SearchHit> hits = searchIndex.search(query, roomId, sender, Math.min(limit, maxSearchResults));
+        log.info("Search '{}' returned {} hits", query, hits.size());
+        return hits;
+    }
+
+    public String createOrGetUserPublicRoom(UserSession session, String username) {
         String roomName = "support-" + username;
-        // Get the room if it already exists
-        try {
-            String existingRoomId = getPublicRoomIdByName(roomName);
-            log.info("Public room already exists for user {}: {}", username, existingRoomId);
+        // Get the room if it already exists (cached, one channels.info per name across concurrent callers)
+        String existingRoomId = roomIdCache.get(roomName, name -> findPublicRoomIdByName(session, name));
+        if (existingRoomId != null) {
+            log.debug("Public room already exists for user {}: {}", username, existingRoomId);
             return existingRoomId;
-        } catch (Exception e) {
-            log.info("No existing room found for user {}, creating new one...", username);
         }
-        // Create a new room and add the user
-        return createPublicRoomAndJoinUser(roomName, username);
+        log.info("No existing room found for user {}, creating new one...", username);
+        // Create a new room and add the user; concurrent first-time callers share one creation
+        return roomIdCache.getOrCreate(roomName, name -> createPublicRoomAndJoinUser(session, name, username));
     }
 
-    public String createPublicRoomAndJoinUser(String roomName, String username) {
+    public String createPublicRoomAndJoinUser(UserSession session, String roomName, String username) {
         String createUrl = baseUrl + "/channels.create";
-        HttpHeaders headers = authHeaders();
+        HttpHeaders headers = authHeaders(session);
         headers.setContentType(MediaType.APPLICATION_JSON);
 
         Map<String, Object> body = new HashMap<>();
@@ -194,8 +543,9 @@ public class UserService {
             JsonNode json = objectMapper.readTree(response.getBody());
             String roomId = json.get("channel").get("_id").asText();
             log.info("Created public room: {}", roomName);
+            roomIdCache.put(roomName, roomId);
 
-            joinUserToRoom(username, roomId);
+            joinUserToRoom(session, username, roomId);
             return roomId;
         } catch (Exception e) {
             log.error("Failed to create room: {}", e.getMessage());
@@ -203,23 +553,89 @@ public class UserService {
         }
     }
 
-    public String getPublicRoomIdByName(String roomName) {
+    public String getPublicRoomIdByName(UserSession session, String roomName) {
+        String roomId = roomIdCache.get(roomName, name -> findPublicRoomIdByName(session, name));
+        if (roomId == null) {
+            throw new RocketChatException("Public room not found: " + roomName);
+        }
+        return roomId;
+    }
+
+    /**
+     * Public rooms whose name starts with {@code prefix}, as name to ID, paging through
+     * channels.list. Names are matched here because recent Rocket.Chat versions reject a
+     * {@code query} parameter by default. Every room found is also put in the room ID cache.
+     */
+    public Map<String, String> findPublicRoomsByPrefix(UserSession session, String prefix) {
+        Map<String, String> rooms = new LinkedHashMap<>();
+        HttpEntity<Void> request = new HttpEntity<>(authHeaders(session));
+        int offset = 0;
+        try {
+            while (true) {
+                URI uri = UriComponentsBuilder.fromUriString(baseUrl + "/channels.list")
+                        .queryParam("count", maxPageSize)
+                        .queryParam("offset", offset)
+                        .encode().build().toUri();
+                JsonNode json = objectMapper.readTree(restTemplate.exchange(uri, HttpMethod.GET, request, String.class).getBody());
+                JsonNode channels = json.path("channels");
+                for (JsonNode channel : channels) {
+                    String name = channel.path("name").asText();
+                    if (name.startsWith(prefix)) {
+                        String roomId = channel.path("_id").asText();
+                        rooms.put(name, roomId);
+                        roomIdCache.put(name, roomId);
+                    }
+                }
+                offset += channels.size();
+                if (channels.isEmpty() || offset >= json.path("total").asInt(offset)) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            log.error("Failed to list public rooms with prefix {}", prefix, e);
+            throw new RocketChatException("Failed to list public rooms", e);
+        }
+        log.info("Found {} public rooms with prefix {}", rooms.size(), prefix);
+        return rooms;
+    }
+
+    /** Rooms that received a message within {@code within}, most recently active first. */
+    public List<String> recentlyActiveRooms(Duration within) {
+        long since = System.currentTimeMillis() - within.toMillis();
+        return lastActivityMap.entrySet().stream()
+                .filter(entry -> entry.getValue() >= since)
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    /**
+     * Looks a channel up by name, returning null when Rocket.Chat reports that it does not exist.
+     */
+    private String findPublicRoomIdByName(UserSession session, String roomName) {
         String url = baseUrl + "/channels.info?roomName=" + roomName;
-        HttpEntity<Void> request = new HttpEntity<>(authHeaders());
+        HttpEntity<Void> request = new HttpEntity<>(authHeaders(session));
 
         try {
             ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET, request, String.class);
             JsonNode json = objectMapper.readTree(response.getBody());
             return json.get("channel").get("_id").asText();
+        } catch (HttpClientErrorException e) {
+            if (e.getStatusCode() == HttpStatus.BAD_REQUEST || e.getStatusCode() == HttpStatus.NOT_FOUND) {
+                log.debug("Public room {} does not exist", roomName);
+                return null;
+            }
+            log.error("Error fetching public room ID for {}", roomName, e);
+            throw new RocketChatException("Failed to get public room ID", e);
         } catch (Exception e) {
             log.error("Error fetching public room ID for {}", roomName, e);
             throw new RocketChatException("Failed to get public room ID", e);
         }
     }
 
-    public void joinUserToRoom(String username, String roomId) {
+    public void joinUserToRoom(UserSession session, String username, String roomId) {
         String url = baseUrl + "/channels.invite";
-        HttpHeaders headers = authHeaders();
+        HttpHeaders headers = authHeaders(session);
         headers.setContentType(MediaType.APPLICATION_JSON);
 
         Map<String, Object> body = new HashMap<>();
@@ -235,32 +651,24 @@ public class UserService {
         }
     }
 
-    private void scheduleSessionClose(String roomId) {
-        scheduler.schedule(() -> {
-            long lastActivity = lastActivityMap.getOrDefault(roomId, 0L);
-            long now = System.currentTimeMillis();
-
-            if (now - lastActivity >= INACTIVITY_TIMEOUT_MS) {
-                try {
-                    String closingMessage = "This session has been closed due to inactivity. Please start a new chat if needed.";
-                    sendMessage(roomId, closingMessage);
-                    log.info("Closed session for room {} due to inactivity", roomId);
-                    lastActivityMap.remove(roomId);
-                    autoRepliedRooms.remove(roomId);
-                } catch (RocketChatException e) {
-                    log.error("Failed to send session close message", e);
-                }
-            }
-        }, INACTIVITY_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    private void closeInactiveSession(String roomId) {
+        try {
+            String closingMessage = "This session has been closed due to inactivity. Please start a new chat if needed.";
+            sendMessage(getServiceSession(), roomId, closingMessage);
+            log.info("Closed session for room {} due to inactivity", roomId);
+            lastActivityMap.remove(roomId);
+            autoRepliedRooms.remove(roomId);
+        } catch (RocketChatException | IllegalStateException e) {
+            log.error("Failed to send session close message", e);
+        }
     }
 
-    private HttpHeaders authHeaders() {
-        if (authToken == null || userId == null) {
-            throw new IllegalStateException("Auth headers not set. Call setAuth() first.");
-        }
+    /** Headers for the session's latest token, so holders of a renewed session keep working. */
+    HttpHeaders authHeaders(UserSession session) {
+        UserSession current = sessionCache.current(session);
         HttpHeaders headers = new HttpHeaders();
-        headers.set("X-Auth-Token", authToken);
-        headers.set("X-User-Id", userId);
+        headers.set("X-Auth-Token", current.getAuthToken());
+        headers.set("X-User-Id", current.getUserId());
         return headers;
     }
 }
\ No newline at end of file
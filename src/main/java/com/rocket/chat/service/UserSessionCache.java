@@ -0,0 +1,327 @@
+package com.rocket.chat.service;
+
+import com.rocket.chat.dto.UserSession;
+import com.rocket.chat.exception.RocketChatException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * Caches Rocket.Chat login sessions by username, so a user who logs in again, or
+ * many requests on behalf of the same user, reuse one auth token instead of each
+ * calling {@code /login}. The map is bounded with LRU eviction, entries expire
+ * with their token, and concurrent logins of the same user with the same password
+ * collapse into one call. A cached token is only handed out for the password that
+ * produced it; passwords are kept as salted digests, never in clear.
+ *
+ * <p>A resume login hands back the same token with its original expiry, so tokens
+ * are renewed with a fresh credential login instead: once a session is within
+ * {@code refresh-ahead} of expiry, the next {@link #login} for it goes to
+ * {@code /login} and replaces it, and callers still holding the old token get the
+ * new one from {@link #current(UserSession)}. A background sweep drops expired
+ * sessions and ones unused for {@code idle-timeout}.
+ */
+@Component
+public class UserSessionCache {
+
+    private static final Logger log = LoggerFactory.getLogger(UserSessionCache.class);
+
+    private final Map<String, Entry> entries;
+    private final Map<String, String> usernamesByUserId = new HashMap<>();
+    private final Map<String, Flight> inFlight = new ConcurrentHashMap<>();
+    private final byte[] salt = new byte[16];
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "user-session-sweep");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong logins = new AtomicLong();
+    private final AtomicLong loginFailures = new AtomicLong();
+    private final AtomicLong renewals = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong idleDrops = new AtomicLong();
+
+    private final long tokenTtlMs;
+    private final long refreshAheadMs;
+    private final long idleTimeoutMs;
+    private final long sweepMs;
+    private final int maxSize;
+
+    public UserSessionCache(@Value("${rocketchat.user-sessions.token-ttl:90d}") Duration tokenTtl,
+                            @Value("${rocketchat.user-sessions.refresh-ahead:1d}") Duration refreshAhead,
+                            @Value("${rocketchat.user-sessions.idle-timeout:12h}") Duration idleTimeout,
+                            @Value("${rocketchat.user-sessions.sweep-interval:1m}") Duration sweepInterval,
+                            @Value("${rocketchat.user-sessions.max-size:10000}") int maxSize) {
+        this.tokenTtlMs = tokenTtl.toMillis();
+        this.refreshAheadMs = Math.min(refreshAhead.toMillis(), tokenTtlMs / 2);
+        this.idleTimeoutMs = idleTimeout.toMillis();
+        this.sweepMs = Math.max(sweepInterval.toMillis(), 1);
+        this.maxSize = maxSize;
+        new SecureRandom().nextBytes(salt);
+        this.entries = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > UserSessionCache.this.maxSize) {
+                    usernamesByUserId.remove(eldest.getValue().session.getUserId());
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @PostConstruct
+    public void start() {
+        sweeper.scheduleWithFixedDelay(this::sweep, sweepMs, sweepMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        sweeper.shutdownNow();
+    }
+
+    /** Returns the cached session for these credentials, or logs in once across concurrent callers. */
+    public UserSession login(String username, String password, BiFunction<String, String, UserSession> authenticator) {
+        byte[] digest = digest(username, password);
+        UserSession cached = lookup(username, digest);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        Flight mine = new Flight(digest);
+        Flight existing = inFlight.putIfAbsent(username, mine);
+        if (existing != null) {
+            if (MessageDigest.isEqual(existing.digest, digest)) {
+                coalesced.incrementAndGet();
+                return await(existing.result);
+            }
+            // A login with a different password is under way; ours must be checked on its own
+            return authenticate(username, password, digest, authenticator);
+        }
+        try {
+            UserSession session = authenticate(username, password, digest, authenticator);
+            inFlight.remove(username, mine);
+            mine.result.complete(session);
+            return session;
+        } catch (RuntimeException e) {
+            inFlight.remove(username, mine);
+            mine.result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the latest cached session for the caller's user when the token is one this
+     * cache issued, else a session built from the given credentials as-is.
+     */
+    public UserSession resolve(String userId, String authToken) {
+        synchronized (entries) {
+            String username = usernamesByUserId.get(userId);
+            Entry entry = username == null ? null : entries.get(username);
+            if (entry != null && entry.issued(authToken)) {
+                entry.lastUsedAt = System.currentTimeMillis();
+                return entry.session;
+            }
+        }
+        return new UserSession(userId, authToken);
+    }
+
+    /** The renewed copy of a session issued by this cache, or the session itself. */
+    public UserSession current(UserSession session) {
+        if (session.getUsername() == null) {
+            return session;
+        }
+        synchronized (entries) {
+            Entry entry = entries.get(session.getUsername());
+            if (entry != null && entry.issued(session.getAuthToken())) {
+                entry.lastUsedAt = System.currentTimeMillis();
+                return entry.session;
+            }
+        }
+        return session;
+    }
+
+    /** Drops a session the server rejected, so the next login goes to {@code /login}. */
+    public void invalidate(UserSession session) {
+        if (session.getUsername() == null) {
+            return;
+        }
+        synchronized (entries) {
+            Entry entry = entries.get(session.getUsername());
+            if (entry != null && entry.issued(session.getAuthToken())) {
+                entries.remove(session.getUsername());
+                usernamesByUserId.remove(entry.session.getUserId());
+            }
+        }
+    }
+
+    /** Expiry of a token issued now, for logins whose response does not carry one. */
+    public long expiryFromNow() {
+        return System.currentTimeMillis() + tokenTtlMs;
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        synchronized (entries) {
+            snapshot.put("size", entries.size());
+        }
+        snapshot.put("maxSize", maxSize);
+        snapshot.put("hits", hits.get());
+        snapshot.put("misses", misses.get());
+        snapshot.put("coalescedLogins", coalesced.get());
+        snapshot.put("logins", logins.get());
+        snapshot.put("loginFailures", loginFailures.get());
+        snapshot.put("renewals", renewals.get());
+        snapshot.put("evictions", evictions.get());
+        snapshot.put("expired", expired.get());
+        snapshot.put("idleDropped", idleDrops.get());
+        return snapshot;
+    }
+
+    private UserSession authenticate(String username, String password, byte[] digest,
+                                     BiFunction<String, String, UserSession> authenticator) {
+        try {
+            UserSession session = authenticator.apply(username, password);
+            logins.incrementAndGet();
+            store(username, new Entry(session, digest));
+            return session;
+        } catch (RuntimeException e) {
+            loginFailures.incrementAndGet();
+            throw e;
+        }
+    }
+
+    private UserSession lookup(String username, byte[] digest) {
+        synchronized (entries) {
+            Entry entry = entries.get(username);
+            if (entry == null) {
+                return null;
+            }
+            long now = System.currentTimeMillis();
+            if (entry.session.getExpiresAt() <= now) {
+                entries.remove(username);
+                usernamesByUserId.remove(entry.session.getUserId());
+                expired.incrementAndGet();
+                return null;
+            }
+            if (!MessageDigest.isEqual(entry.digest, digest)) {
+                return null;
+            }
+            if (entry.session.getExpiresAt() - now <= refreshAheadMs) {
+                // Close to expiry: log in again for a new token, which replaces this one
+                return null;
+            }
+            entry.lastUsedAt = now;
+            return entry.session;
+        }
+    }
+
+    private void store(String username, Entry entry) {
+        synchronized (entries) {
+            Entry previous = entries.put(username, entry);
+            if (previous != null) {
+                usernamesByUserId.remove(previous.session.getUserId());
+                if (previous.session.getUserId().equals(entry.session.getUserId())
+                        && previous.session.getExpiresAt() > System.currentTimeMillis()) {
+                    entry.previousToken = previous.session.getAuthToken();
+                    renewals.incrementAndGet();
+                }
+            }
+            usernamesByUserId.put(entry.session.getUserId(), username);
+        }
+    }
+
+    /** Drops expired and idle sessions. */
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            var it = entries.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                boolean isExpired = entry.session.getExpiresAt() <= now;
+                if (isExpired || now - entry.lastUsedAt > idleTimeoutMs) {
+                    it.remove();
+                    usernamesByUserId.remove(entry.session.getUserId());
+                    (isExpired ? expired : idleDrops).incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private byte[] digest(String username, String password) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            sha256.update(salt);
+            sha256.update(username.getBytes(StandardCharsets.UTF_8));
+            sha256.update((byte) 0);
+            sha256.update(password.getBytes(StandardCharsets.UTF_8));
+            return sha256.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private UserSession await(CompletableFuture<UserSession> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RocketChatException("User login failed", e.getCause());
+        }
+    }
+
+    private static final class Flight {
+        private final byte[] digest;
+        private final CompletableFuture<UserSession> result = new CompletableFuture<>();
+
+        private Flight(byte[] digest) {
+            this.digest = digest;
+        }
+    }
+
+    private static final class Entry {
+        private final byte[] digest;
+        private final UserSession session;
+        /** The token this login replaced; clients that were handed it still resolve here. */
+        private String previousToken;
+        private long lastUsedAt = System.currentTimeMillis();
+
+        private Entry(UserSession session, byte[] digest) {
+            this.session = session;
+            this.digest = digest;
+        }
+
+        private boolean issued(String authToken) {
+            return authToken != null && (authToken.equals(session.getAuthToken()) || authToken.equals(previousToken));
+        }
+    }
+}
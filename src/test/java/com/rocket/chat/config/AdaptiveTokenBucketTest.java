@@ -0,0 +1,90 @@
+package com.rocket.chat.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveTokenBucketTest {
+
+    @Test
+    void burstIsSpentThenTokensArriveAtTheConfiguredRate() {
+        AdaptiveTokenBucket bucket = new AdaptiveTokenBucket(10, 2);
+
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(0, bucket.tryAcquire());
+        long wait = bucket.tryAcquire();
+
+        // One token every 100ms
+        assertTrue(wait > 0 && wait <= TimeUnit.MILLISECONDS.toNanos(100) + 1, "wait " + wait);
+    }
+
+    @Test
+    void serverRemainingCapsTokensAndSpreadsThemUntilReset() {
+        AdaptiveTokenBucket bucket = new AdaptiveTokenBucket(10, 20);
+
+        bucket.observe(2, System.currentTimeMillis() + 10_000);
+
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(0, bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire() > 0);
+        assertEquals(2L, bucket.snapshot().get("serverRemaining"));
+        // Two calls over ten seconds, well under the configured 10/s
+        assertEquals(0.2, (double) bucket.snapshot().get("currentRate"), 0.01);
+    }
+
+    @Test
+    void exhaustedWindowPausesUntilReset() {
+        AdaptiveTokenBucket bucket = new AdaptiveTokenBucket(10, 20);
+
+        bucket.observe(0, System.currentTimeMillis() + 1_000);
+
+        long wait = bucket.tryAcquire();
+        assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(900) && wait <= TimeUnit.SECONDS.toNanos(1), "wait " + wait);
+        assertEquals(1L, bucket.snapshot().get("pauses"));
+    }
+
+    @Test
+    void missingHeadersLeaveTheBucketAlone() {
+        AdaptiveTokenBucket bucket = new AdaptiveTokenBucket(10, 20);
+
+        bucket.observe(-1, -1);
+        bucket.observe(-1, System.currentTimeMillis() + 1_000);
+
+        assertEquals(-1L, bucket.snapshot().get("serverRemaining"));
+        assertEquals(10.0, (double) bucket.snapshot().get("currentRate"));
+        assertEquals(20.0, (double) bucket.snapshot().get("tokens"));
+    }
+
+    @Test
+    void pauseEmptiesTheBucketAndOnlyExtends() throws Exception {
+        AdaptiveTokenBucket bucket = new AdaptiveTokenBucket(1000, 20);
+
+        bucket.pause(Duration.ofMillis(30));
+        bucket.pause(Duration.ofMillis(5));
+
+        assertEquals(1L, bucket.snapshot().get("pauses"));
+        assertEquals(0.0, (double) bucket.snapshot().get("tokens"));
+        long wait = bucket.tryAcquire();
+        assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(20), "wait " + wait);
+
+        Thread.sleep(45);
+        assertEquals(0, bucket.tryAcquire());
+    }
+
+    @Test
+    void configuredRateReturnsWhenTheServerWindowEnds() throws Exception {
+        AdaptiveTokenBucket bucket = new AdaptiveTokenBucket(1000, 20);
+
+        bucket.observe(5, System.currentTimeMillis() + 50);
+        assertTrue((double) bucket.snapshot().get("currentRate") < 1000.0);
+
+        Thread.sleep(70);
+
+        assertEquals(1000.0, (double) bucket.snapshot().get("currentRate"));
+        assertEquals(-1L, bucket.snapshot().get("serverRemaining"));
+    }
+}
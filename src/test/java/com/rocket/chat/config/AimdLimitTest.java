@@ -0,0 +1,134 @@
+package com.rocket.chat.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AimdLimitTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void fastCallsGrowTheLimitByAboutOnePerRound() throws Exception {
+        AimdLimit limit = new AimdLimit(4, 1, 10, 0.5, Duration.ofSeconds(1));
+
+        for (int i = 0; i < 4; i++) {
+            limit.release(limit.acquire(), false);
+        }
+        assertEquals(4, limit.limit());
+        // 4 + 1/4 + 1/4.25 + ... crosses 5 on the fifth call
+        limit.release(limit.acquire(), false);
+
+        assertEquals(5, limit.limit());
+        assertEquals(5L, limit.snapshot().get("increases"));
+    }
+
+    @Test
+    void limitStopsAtTheMaximum() throws Exception {
+        AimdLimit limit = new AimdLimit(2, 1, 3, 0.5, Duration.ofSeconds(1));
+
+        for (int i = 0; i < 100; i++) {
+            limit.release(limit.acquire(), false);
+        }
+
+        assertEquals(3, limit.limit());
+    }
+
+    @Test
+    void failedOrSlowCallsShrinkTheLimit() throws Exception {
+        AimdLimit limit = new AimdLimit(8, 1, 10, 0.5, Duration.ofMillis(10));
+
+        limit.release(limit.acquire(), true);
+        assertEquals(4, limit.limit());
+
+        long start = limit.acquire();
+        Thread.sleep(20);
+        limit.release(start, false);
+        assertEquals(2, limit.limit());
+        assertEquals(2L, limit.snapshot().get("decreases"));
+    }
+
+    @Test
+    void oneRoundOfFailuresDecreasesOnce() throws Exception {
+        AimdLimit limit = new AimdLimit(8, 1, 10, 0.5, Duration.ofSeconds(1));
+        long[] round = new long[4];
+        for (int i = 0; i < round.length; i++) {
+            round[i] = limit.acquire();
+        }
+
+        for (long start : round) {
+            limit.release(start, true);
+        }
+        assertEquals(4, limit.limit());
+        assertEquals(1L, limit.snapshot().get("decreases"));
+
+        // A call started after the decrease is a new round and may decrease again
+        limit.release(limit.acquire(), true);
+        assertEquals(2, limit.limit());
+    }
+
+    @Test
+    void limitNeverDropsBelowTheMinimum() throws Exception {
+        AimdLimit limit = new AimdLimit(2, 2, 10, 0.1, Duration.ofSeconds(1));
+
+        limit.release(limit.acquire(), true);
+        limit.release(limit.acquire(), true);
+
+        assertEquals(2, limit.limit());
+    }
+
+    @Test
+    void queuedCallerGivesUpAfterTheTimeout() throws Exception {
+        AimdLimit limit = new AimdLimit(1, 1, 1, 0.5, Duration.ofSeconds(1));
+        long held = limit.acquire();
+
+        assertEquals(-1, limit.acquire(TimeUnit.MILLISECONDS.toNanos(20), 10));
+        assertEquals(0, limit.waiting());
+        assertEquals(1L, limit.snapshot().get("rejected"));
+
+        limit.release(held, false);
+        assertTrue(limit.acquire(0, 0) >= 0);
+    }
+
+    @Test
+    void fullQueueRejectsWithoutWaiting() throws Exception {
+        AimdLimit limit = new AimdLimit(1, 1, 1, 0.5, Duration.ofSeconds(1));
+        limit.acquire();
+
+        long started = System.nanoTime();
+        assertEquals(-1, limit.acquire(10 * SECOND, 0));
+
+        assertTrue(System.nanoTime() - started < SECOND);
+        assertEquals(1L, limit.snapshot().get("rejected"));
+    }
+
+    @Test
+    void releaseHandsTheSlotToAQueuedCaller() throws Exception {
+        AimdLimit limit = new AimdLimit(1, 1, 1, 0.5, Duration.ofSeconds(1));
+        long held = limit.acquire();
+
+        CompletableFuture<Long> queued = CompletableFuture.supplyAsync(() -> {
+            try {
+                return limit.acquire(10 * SECOND, 10);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        long deadline = System.nanoTime() + 5 * SECOND;
+        while (limit.waiting() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertFalse(queued.isDone());
+
+        limit.release(held, false);
+
+        assertTrue(queued.get(5, TimeUnit.SECONDS) >= 0);
+        assertEquals(1, limit.inFlight());
+    }
+}
@@ -0,0 +1,54 @@
+package com.rocket.chat.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DdpFrameDecoderTest {
+
+    private final DdpFrameDecoder decoder = new DdpFrameDecoder(new ObjectMapper());
+
+    @Test
+    void foreignCollectionBeforeMsgStillYieldsTheType() throws Exception {
+        DdpFrame frame = decoder.decode("""
+                {"collection":"users","id":"u1","fields":{"status":"online"},"msg":"changed"}""");
+
+        assertEquals("changed", frame.getType());
+        assertEquals("users", frame.getCollection());
+        assertNull(frame.getRoomMessage());
+    }
+
+    @Test
+    void foreignCollectionAfterMsgStopsEarly() throws Exception {
+        DdpFrame frame = decoder.decode("""
+                {"msg":"changed","collection":"users","id":"u1","fields":{"status":"online"}}""");
+
+        assertEquals("changed", frame.getType());
+        assertEquals("users", frame.getCollection());
+        assertNull(frame.getRoomMessage());
+    }
+
+    @Test
+    void roomMessageIsBoundInAnyFieldOrder() throws Exception {
+        DdpFrame frame = decoder.decode("""
+                {"fields":{"eventName":"room-1","args":[{"_id":"m1","rid":"room-1","msg":"hello",
+                "u":{"username":"customer.one"},"ts":{"$date":1718009834212}},{"roomType":"c"}]},
+                "collection":"stream-room-messages","id":"id","msg":"changed"}""");
+
+        assertEquals("changed", frame.getType());
+        assertEquals("m1", frame.getRoomMessage().getId());
+        assertEquals("customer.one", frame.getRoomMessage().getSender());
+        assertEquals(1718009834212L, frame.getRoomMessage().getTimestamp());
+    }
+
+    @Test
+    void unhandledTypeStopsEarly() throws Exception {
+        DdpFrame frame = decoder.decode("""
+                {"msg":"added","collection":"users","id":"u1","fields":{"username":"a"}}""");
+
+        assertEquals("added", frame.getType());
+        assertNull(frame.getCollection());
+    }
+}
@@ -0,0 +1,18 @@
+package com.rocket.chat.config;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RocketChatWebSocketClientTest {
+
+    @Test
+    void reconnectDelayNeverDropsBelowTheBase() {
+        assertEquals(1_000, RocketChatWebSocketClient.reconnectDelayMillis(0));
+        for (int attempt = 1; attempt < 40; attempt++) {
+            long delay = RocketChatWebSocketClient.reconnectDelayMillis(attempt);
+            assertTrue(delay >= 1_000 && delay <= 60_000, "attempt " + attempt + ": " + delay);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.rocket.chat.service;
+
+import com.rocket.chat.dto.RoomMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class InboundMessagePipelineTest {
+
+    @Test
+    void messagesStillQueuedAtShutdownAreCounted() throws Exception {
+        UserService userService = mock(UserService.class);
+        CountDownLatch processing = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            processing.countDown();
+            try {
+                // Held until shutdown interrupts the worker
+                new CountDownLatch(1).await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }).when(userService).processReceivedMessage(any());
+
+        InboundMessagePipeline pipeline = new InboundMessagePipeline(userService, mock(MessageJournal.class));
+        ReflectionTestUtils.setField(pipeline, "partitionCount", 1);
+        ReflectionTestUtils.setField(pipeline, "queueCapacity", 16);
+        ReflectionTestUtils.setField(pipeline, "overflowPolicy", InboundMessagePipeline.OverflowPolicy.BLOCK);
+        pipeline.start();
+
+        pipeline.submit(message("m0"));
+        assertTrue(processing.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 4; i++) {
+            pipeline.submit(message("m" + i));
+        }
+        pipeline.stop();
+
+        Map<String, Object> snapshot = pipeline.snapshot();
+        assertEquals(4L, snapshot.get("discardedAtShutdown"));
+        assertEquals(0, snapshot.get("depth"));
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> partitions = (List<Map<String, Object>>) snapshot.get("partitions");
+        assertEquals(4, partitions.get(0).get("maxDepth"));
+    }
+
+    private static RoomMessage message(String id) {
+        return new RoomMessage(id, "room-1", "customer.one", "text " + id, 1718009834212L, "c");
+    }
+}
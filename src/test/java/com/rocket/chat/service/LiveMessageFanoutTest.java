@@ -0,0 +1,205 @@
+package com.rocket.chat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rocket.chat.dto.RoomMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LiveMessageFanoutTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private LiveMessageFanout fanout;
+
+    @AfterEach
+    void tearDown() {
+        if (fanout != null) {
+            fanout.stop();
+        }
+    }
+
+    @Test
+    void subscribersOnlyGetTheirRooms() throws Exception {
+        fanout = start(16, LiveMessageFanout.OverflowPolicy.DROP_OLDEST, Duration.ofMinutes(1), 64);
+        RecordingSink general = new RecordingSink();
+        RecordingSink everything = new RecordingSink();
+        fanout.subscribe(Set.of("general"), general);
+        fanout.subscribe(Set.of(), everything);
+
+        fanout.publish(message("a", "general"), true);
+        fanout.publish(message("b", "random"), true);
+        fanout.publish(message("c", "general"), false);
+
+        waitFor(() -> everything.events.size() == 3 && general.events.size() == 2);
+        assertEquals(List.of("a", "c"), general.messageIds());
+        assertEquals(List.of("a", "b", "c"), everything.messageIds());
+        assertEquals(LiveMessageFanout.Event.Type.UPDATE, general.events.get(1).getType());
+    }
+
+    @Test
+    void fullBufferDropsTheOldestAndTellsTheClient() throws Exception {
+        fanout = start(4, LiveMessageFanout.OverflowPolicy.DROP_OLDEST, Duration.ofMinutes(1), 64);
+        RecordingSink sink = new RecordingSink();
+        sink.blockFirstSend();
+        fanout.subscribe(Set.of("general"), sink);
+
+        fanout.publish(message("m1", "general"), true);
+        assertTrue(sink.sending.await(5, TimeUnit.SECONDS));
+        for (int i = 2; i <= 7; i++) {
+            fanout.publish(message("m" + i, "general"), true);
+        }
+        // m1 is being written; m2..m7 do not fit in four slots
+        waitFor(() -> (long) fanout.snapshot().get("dropped") == 2);
+        sink.release.countDown();
+
+        waitFor(() -> sink.events.size() == 6);
+        assertEquals(LiveMessageFanout.Event.Type.DROPPED, sink.events.get(1).getType());
+        assertEquals("{\"dropped\":2}", sink.events.get(1).getData());
+        assertEquals(List.of("m1", "m4", "m5", "m6", "m7"), sink.messageIds());
+    }
+
+    @Test
+    void fullBufferDisconnectsUnderDisconnectPolicy() throws Exception {
+        fanout = start(4, LiveMessageFanout.OverflowPolicy.DISCONNECT, Duration.ofMinutes(1), 64);
+        RecordingSink sink = new RecordingSink();
+        sink.blockFirstSend();
+        fanout.subscribe(Set.of(), sink);
+
+        fanout.publish(message("m1", "general"), true);
+        assertTrue(sink.sending.await(5, TimeUnit.SECONDS));
+        for (int i = 2; i <= 6; i++) {
+            fanout.publish(message("m" + i, "general"), true);
+        }
+
+        assertEquals("Too slow", sink.closed.get(5, TimeUnit.SECONDS));
+        assertEquals(1L, fanout.snapshot().get("disconnectedSlow"));
+        assertEquals(0, fanout.subscriberCount());
+        sink.release.countDown();
+    }
+
+    @Test
+    void clientThatAcceptsNothingIsClosedAfterTheStallTimeout() throws Exception {
+        fanout = start(16, LiveMessageFanout.OverflowPolicy.DROP_OLDEST, Duration.ofMillis(50), 64);
+        RecordingSink sink = new RecordingSink();
+        sink.writable = false;
+        fanout.subscribe(Set.of(), sink);
+
+        fanout.publish(message("m1", "general"), true);
+
+        assertEquals("Delivery failed", sink.closed.get(5, TimeUnit.SECONDS));
+        assertTrue(sink.events.isEmpty());
+        assertEquals(0, fanout.subscriberCount());
+    }
+
+    @Test
+    void lostMessagesAreReportedOncePerSubscriber() throws Exception {
+        fanout = start(100_000, LiveMessageFanout.OverflowPolicy.DROP_OLDEST, Duration.ofMinutes(1), 1);
+        RecordingSink sink = new RecordingSink();
+        // In three rooms' indexes at once
+        fanout.subscribe(Set.of("a", "b", "c"), sink);
+
+        for (int i = 0; (long) fanout.snapshot().get("lost") == 0 && i < 100; i++) {
+            for (int j = 0; j < 10_000; j++) {
+                fanout.publish(message("m" + j, "a"), true);
+            }
+        }
+        long lost = (long) fanout.snapshot().get("lost");
+        assertTrue(lost > 0, "dispatch queue never overflowed");
+        waitFor(() -> (int) fanout.snapshot().get("dispatchQueued") == 0);
+        // Carries the pending gap notice to the subscriber
+        fanout.publish(message("last", "a"), true);
+
+        waitFor(() -> sink.messageIds().contains("last"));
+        long reported = sink.events.stream()
+                .filter(event -> event.getType() == LiveMessageFanout.Event.Type.DROPPED)
+                .mapToLong(event -> Long.parseLong(event.getData().replaceAll("\\D", "")))
+                .sum();
+        assertEquals(lost, reported);
+    }
+
+    private LiveMessageFanout start(int bufferSize, LiveMessageFanout.OverflowPolicy policy, Duration stallTimeout, int dispatchQueue) {
+        LiveMessageFanout started = new LiveMessageFanout(objectMapper, 100, bufferSize, policy, stallTimeout,
+                Duration.ofMinutes(1), 1, dispatchQueue);
+        started.start();
+        return started;
+    }
+
+    private static RoomMessage message(String id, String roomId) {
+        return new RoomMessage(id, roomId, "customer.one", "text " + id, 1718009834212L, "c");
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not reached");
+            Thread.sleep(1);
+        }
+    }
+
+    private final class RecordingSink implements LiveMessageFanout.Sink {
+
+        private final List<LiveMessageFanout.Event> events = new CopyOnWriteArrayList<>();
+        private final CompletableFuture<String> closed = new CompletableFuture<>();
+        private final CountDownLatch sending = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private volatile boolean blockFirst;
+        private volatile boolean writable = true;
+
+        void blockFirstSend() {
+            blockFirst = true;
+        }
+
+        @Override
+        public void send(LiveMessageFanout.Event event) throws IOException {
+            events.add(event);
+            if (blockFirst) {
+                blockFirst = false;
+                sending.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+        }
+
+        @Override
+        public void heartbeat() {
+        }
+
+        @Override
+        public boolean writable() {
+            return writable;
+        }
+
+        @Override
+        public void close(String reason) {
+            closed.complete(reason);
+        }
+
+        List<String> messageIds() {
+            return events.stream()
+                    .filter(event -> event.getType() != LiveMessageFanout.Event.Type.DROPPED)
+                    .map(event -> {
+                        try {
+                            return objectMapper.readTree(event.getData()).get("id").asText();
+                        } catch (IOException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    })
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.rocket.chat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rocket.chat.dto.RoomMessage;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MessageDedupFilterTest {
+
+    @Test
+    void recentMessagesAreAnsweredByTheLru() {
+        MessageDedupFilter filter = new MessageDedupFilter(1000, 0.001, 100);
+
+        assertEquals(MessageDedupFilter.Verdict.NEW, filter.classify(message("a", 10)));
+        assertEquals(MessageDedupFilter.Verdict.DUPLICATE, filter.classify(message("a", 10)));
+        assertEquals(MessageDedupFilter.Verdict.UPDATE, filter.classify(message("a", 20)));
+        assertEquals(MessageDedupFilter.Verdict.DUPLICATE, filter.classify(message("a", 10)));
+    }
+
+    @Test
+    void evictedMessagesAreAnsweredByTheBloomFilter() {
+        MessageDedupFilter filter = new MessageDedupFilter(1000, 0.001, 1);
+        filter.classify(message("a", 10));
+        // Pushes "a" out of the one-entry LRU
+        filter.classify(message("b", 10));
+
+        assertEquals(MessageDedupFilter.Verdict.DUPLICATE, filter.classify(message("a", 10)));
+        filter.classify(message("b", 10));
+        assertEquals(MessageDedupFilter.Verdict.UPDATE, filter.classify(message("a", 20)));
+        filter.classify(message("b", 10));
+        assertEquals(MessageDedupFilter.Verdict.DUPLICATE, filter.classify(message("a", 20)));
+    }
+
+    @Test
+    void previousGenerationIsCheckedUntilItRotatesOut() {
+        MessageDedupFilter filter = new MessageDedupFilter(2, 0.001, 1);
+        filter.classify(message("a", 10));
+        filter.classify(message("b", 10));
+        // Third new message starts a generation; "a" is now only in the previous one
+        filter.classify(message("c", 10));
+        assertEquals(1L, filter.snapshot().get("rotations"));
+
+        assertEquals(MessageDedupFilter.Verdict.DUPLICATE, filter.classify(message("a", 10)));
+
+        filter.classify(message("d", 10));
+        // Drops the generation holding "a"
+        filter.classify(message("e", 10));
+        assertEquals(2L, filter.snapshot().get("rotations"));
+
+        assertEquals(MessageDedupFilter.Verdict.NEW, filter.classify(message("a", 10)));
+    }
+
+    @Test
+    void historyReplayOfAnEvictedMessageIsDuplicate() throws Exception {
+        MessageDedupFilter filter = new MessageDedupFilter(1000, 0.001, 1);
+        long updatedAt = 1718009834300L;
+        filter.classify(new RoomMessage("a", "room-1", "customer.one", "hello", 1718009834212L, "c", 0L, updatedAt));
+        filter.classify(message("b", 10));
+
+        String body = """
+                {"messages":[{"_id":"a","rid":"room-1","msg":"hello","ts":"2024-06-10T08:57:14.212Z",
+                "u":{"username":"customer.one"},"_updatedAt":"2024-06-10T08:57:14.300Z"}],"success":true}""";
+        List<RoomMessage> history = new ArrayList<>();
+        new MessageHistoryReader(new ObjectMapper())
+                .read(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), "room-1", history::add);
+
+        assertEquals(updatedAt, history.get(0).getUpdatedAt());
+        assertEquals(MessageDedupFilter.Verdict.DUPLICATE, filter.classify(history.get(0)));
+    }
+
+    private static RoomMessage message(String id, long updatedAt) {
+        return new RoomMessage(id, "room-1", "customer.one", "text " + id, 1718009834212L, "c", 0L, updatedAt);
+    }
+}
@@ -0,0 +1,138 @@
+package com.rocket.chat.service;
+
+import com.rocket.chat.dto.RoomMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageJournalTest {
+
+    private static final String ROOM = "room-1";
+
+    @TempDir
+    Path directory;
+
+    private MessageJournal journal;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        journal = new MessageJournal();
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "directory", directory);
+        ReflectionTestUtils.setField(journal, "segmentSize", DataSize.ofKilobytes(64));
+        ReflectionTestUtils.setField(journal, "retentionAge", Duration.ofDays(7));
+        ReflectionTestUtils.setField(journal, "retentionSize", DataSize.ofMegabytes(1));
+        journal.open();
+    }
+
+    @AfterEach
+    void tearDown() {
+        journal.close();
+    }
+
+    @Test
+    void coverageStartsAtFirstLiveMessage() {
+        assertNull(journal.coveredSince(ROOM));
+        journal.append(message("a", 100));
+        journal.append(message("b", 200));
+
+        assertEquals(100L, journal.coveredSince(ROOM));
+        assertEquals(List.of("b", "a"), ids(journal.readRecent(ROOM, 10, null, null)));
+    }
+
+    @Test
+    void backfilledMessagesAreReadInTimestampOrder() {
+        journal.append(message("a", 100));
+        journal.append(message("d", 400));
+        // Backfilled after the newer live message
+        journal.append(message("c", 300));
+        journal.append(message("b", 200));
+
+        assertEquals(List.of("d", "c", "b", "a"), ids(journal.readRecent(ROOM, 10, null, null)));
+        assertEquals(List.of("c", "b"), ids(journal.readRecent(ROOM, 2, 400L, null)));
+        assertEquals(List.of("d", "c"), ids(journal.readRecent(ROOM, 10, null, 200L)));
+    }
+
+    @Test
+    void equalTimestampsAreOrderedById() {
+        journal.append(message("c", 100));
+        journal.append(message("a", 100));
+        journal.append(message("b", 100));
+
+        assertEquals(List.of("a", "b", "c"), ids(journal.readRecent(ROOM, 10, null, null)));
+    }
+
+    @Test
+    void lostSubscriptionEndsCoverageUntilBackfillCompletes() {
+        journal.append(message("a", 100));
+        journal.append(message("b", 200));
+        journal.endCoverage(ROOM);
+        long epoch = journal.coverageEpoch(ROOM);
+
+        // Live messages after the gap do not bring coverage back on their own
+        journal.append(message("d", 400));
+        assertNull(journal.coveredSince(ROOM));
+
+        journal.restoreCoverage(ROOM, epoch, 150, "c");
+        assertNull(journal.coveredSince(ROOM));
+        journal.append(message("c", 300));
+
+        assertEquals(100L, journal.coveredSince(ROOM));
+        assertEquals(List.of("d", "c", "b", "a"), ids(journal.readRecent(ROOM, 10, null, null)));
+    }
+
+    @Test
+    void backfillStartedBeforeAnotherLossDoesNotRestoreCoverage() {
+        journal.append(message("a", 100));
+        journal.endCoverage(ROOM);
+        long epoch = journal.coverageEpoch(ROOM);
+        journal.endCoverage(ROOM);
+
+        journal.restoreCoverage(ROOM, epoch, 50, null);
+
+        assertNull(journal.coveredSince(ROOM));
+    }
+
+    @Test
+    void backfillNotReachingEarlierCoverageStartsAfterItsWindow() {
+        journal.append(message("a", 100));
+        journal.append(message("b", 200));
+        journal.endCoverage(ROOM);
+
+        journal.restoreCoverage(ROOM, journal.coverageEpoch(ROOM), 250, null);
+
+        assertEquals(251L, journal.coveredSince(ROOM));
+        assertEquals(List.of(), ids(journal.readRecent(ROOM, 10, null, null)));
+    }
+
+    @Test
+    void segmentSizeThatCannotBeMappedIsRejectedAtStartup() {
+        MessageJournal oversized = new MessageJournal();
+        ReflectionTestUtils.setField(oversized, "enabled", true);
+        ReflectionTestUtils.setField(oversized, "directory", directory.resolve("oversized"));
+        ReflectionTestUtils.setField(oversized, "segmentSize", DataSize.ofGigabytes(2));
+
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class, oversized::open);
+        assertTrue(error.getMessage().contains("rocketchat.journal.segment-size"));
+    }
+
+    private static RoomMessage message(String id, long timestamp) {
+        return new RoomMessage(id, ROOM, "customer.one", "text " + id, timestamp, "c");
+    }
+
+    private static List<String> ids(List<RoomMessage> messages) {
+        return messages.stream().map(RoomMessage::getId).toList();
+    }
+}
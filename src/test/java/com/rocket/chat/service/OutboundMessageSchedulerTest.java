@@ -0,0 +1,201 @@
+package com.rocket.chat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rocket.chat.config.AdaptiveTokenBucket;
+import com.rocket.chat.config.DdpMethodException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class OutboundMessageSchedulerTest {
+
+    private AdaptiveTokenBucket bucket;
+    private OutboundMessageScheduler scheduler;
+    private final List<String> posted = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void setUp() {
+        // The mock hands out tokens at once and records pauses instead of sleeping
+        bucket = mock(AdaptiveTokenBucket.class);
+        scheduler = new OutboundMessageScheduler(bucket);
+        ReflectionTestUtils.setField(scheduler, "maxConcurrency", 4);
+        ReflectionTestUtils.setField(scheduler, "maxRetries", 3);
+        ReflectionTestUtils.setField(scheduler, "maxQueued", 10_000);
+        scheduler.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.stop();
+    }
+
+    @Test
+    void roomKeepsItsOrderWhileTheHeadIsRetried() throws Exception {
+        AtomicInteger firstAttempts = new AtomicInteger();
+        Supplier<CompletableFuture<String>> limitedTwice = () -> firstAttempts.incrementAndGet() <= 2
+                ? CompletableFuture.failedFuture(tooManyRequests(1))
+                : post("m1");
+
+        CompletableFuture<String> first = scheduler.submit("room-1", limitedTwice);
+        CompletableFuture<String> second = scheduler.submit("room-1", () -> post("m2"));
+        CompletableFuture<String> third = scheduler.submit("room-1", () -> post("m3"));
+
+        assertEquals("m3", third.get(5, TimeUnit.SECONDS));
+        assertEquals("m1", first.join());
+        assertEquals("m2", second.join());
+        assertEquals(List.of("m1", "m2", "m3"), posted);
+        assertEquals(3, firstAttempts.get());
+        assertEquals(2L, scheduler.snapshot().get("retried"));
+        verify(bucket, times(2)).pause(Duration.ofMillis(1));
+    }
+
+    @Test
+    void retriesRunOutAndTheRoomMovesOn() throws Exception {
+        CompletableFuture<String> doomed = scheduler.submit("room-1",
+                () -> CompletableFuture.failedFuture(tooManyRequests(1)));
+        CompletableFuture<String> next = scheduler.submit("room-1", () -> post("m2"));
+
+        assertEquals("m2", next.get(5, TimeUnit.SECONDS));
+        CompletionException failure = assertThrows(CompletionException.class, doomed::join);
+        assertInstanceOf(DdpMethodException.class, failure.getCause());
+        // maxRetries is 3: four attempts in all
+        assertEquals(3L, scheduler.snapshot().get("retried"));
+        assertEquals(1L, scheduler.snapshot().get("failed"));
+    }
+
+    @Test
+    void otherFailuresAreNotRetried() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        CompletableFuture<String> broken = scheduler.submit("room-1", () -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.failedFuture(new IllegalStateException("boom"));
+        });
+        scheduler.submit("room-1", () -> post("m2")).get(5, TimeUnit.SECONDS);
+
+        assertThrows(CompletionException.class, broken::join);
+        assertEquals(1, attempts.get());
+        verify(bucket, never()).pause(any());
+    }
+
+    @Test
+    void submitsRacingTheLastSendAreNeitherLostNorReordered() throws Exception {
+        int producers = 4;
+        int perProducer = 500;
+        ExecutorService pool = Executors.newFixedThreadPool(producers);
+        List<CompletableFuture<String>> results = Collections.synchronizedList(new ArrayList<>());
+        try {
+            List<CompletableFuture<?>> done = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                String producer = "p" + p;
+                done.add(CompletableFuture.runAsync(() -> {
+                    for (int i = 0; i < perProducer; i++) {
+                        String text = producer + ":" + i;
+                        // Sends finish at once, so the room keeps emptying and being re-created under these submits
+                        results.add(scheduler.submit("room-1", () -> post(text)));
+                    }
+                }, pool));
+            }
+            CompletableFuture.allOf(done.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+            CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(producers * perProducer, posted.size());
+        for (int p = 0; p < producers; p++) {
+            String prefix = "p" + p + ":";
+            List<Integer> order = posted.stream()
+                    .filter(text -> text.startsWith(prefix))
+                    .map(text -> Integer.parseInt(text.substring(prefix.length())))
+                    .toList();
+            for (int i = 0; i < order.size(); i++) {
+                assertEquals(i, order.get(i));
+            }
+        }
+        assertEquals(0, scheduler.queued());
+        assertEquals(0, scheduler.snapshot().get("rooms"));
+    }
+
+    @Test
+    void fullQueueRejectsNewMessages() {
+        ReflectionTestUtils.setField(scheduler, "maxQueued", 1);
+        CompletableFuture<String> blocked = new CompletableFuture<>();
+        scheduler.submit("room-1", () -> blocked);
+
+        CompletableFuture<String> rejected = scheduler.submit("room-1", () -> post("m2"));
+
+        assertTrue(rejected.isCompletedExceptionally());
+        assertEquals(1L, scheduler.snapshot().get("rejected"));
+        blocked.complete("m1");
+    }
+
+    @Test
+    void rateLimitResetComesFromTheServer() {
+        long now = System.currentTimeMillis();
+        HttpHeaders reset = new HttpHeaders();
+        reset.add("X-RateLimit-Reset", String.valueOf(now + 2_000));
+        HttpHeaders retryAfter = new HttpHeaders();
+        retryAfter.add(HttpHeaders.RETRY_AFTER, "3");
+        HttpHeaders garbage = new HttpHeaders();
+        garbage.add("X-RateLimit-Reset", "soon");
+
+        long fromReset = OutboundMessageScheduler.rateLimitResetMillis(tooManyRequests(reset));
+        assertTrue(fromReset > 1_000 && fromReset <= 2_000, "reset " + fromReset);
+        assertEquals(3_000, OutboundMessageScheduler.rateLimitResetMillis(tooManyRequests(retryAfter)));
+        // Unreadable or missing headers fall back to backoff
+        assertEquals(0, OutboundMessageScheduler.rateLimitResetMillis(tooManyRequests(garbage)));
+        assertEquals(0, OutboundMessageScheduler.rateLimitResetMillis(tooManyRequests(new HttpHeaders())));
+        assertEquals(250, OutboundMessageScheduler.rateLimitResetMillis(new CompletionException(tooManyRequests(250))));
+        assertEquals(-1, OutboundMessageScheduler.rateLimitResetMillis(
+                HttpClientErrorException.create(HttpStatus.FORBIDDEN, "Forbidden", new HttpHeaders(), null, null)));
+    }
+
+    @Test
+    void backoffStaysBetweenTheBaseAndTheCap() {
+        for (int attempt = 1; attempt < 40; attempt++) {
+            long delay = OutboundMessageScheduler.backoffMillis(attempt);
+            assertTrue(delay >= 500 && delay <= 30_000, "attempt " + attempt + ": " + delay);
+        }
+    }
+
+    private CompletableFuture<String> post(String text) {
+        posted.add(text);
+        return CompletableFuture.completedFuture(text);
+    }
+
+    private static DdpMethodException tooManyRequests(long timeToResetMillis) {
+        ObjectMapper mapper = new ObjectMapper();
+        return new DdpMethodException("too-many-requests", "Too many requests",
+                mapper.createObjectNode().put("timeToReset", timeToResetMillis));
+    }
+
+    private static HttpClientErrorException tooManyRequests(HttpHeaders headers) {
+        return HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "Too Many Requests", headers, null, null);
+    }
+}
@@ -0,0 +1,91 @@
+package com.rocket.chat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rocket.chat.config.RocketChatWebSocketManager;
+import com.rocket.chat.dto.MessagePage;
+import com.rocket.chat.dto.UserSession;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReadResponseCacheTest {
+
+    private static final UserSession OWNER = new UserSession("user-1", "owner-token");
+    private static final UserSession IMPOSTOR = new UserSession("user-1", "junk-token");
+
+    private UserService userService;
+    private ReadResponseCache cache;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        userService = mock(UserService.class);
+        ObjectProvider<RocketChatWebSocketManager> manager = mock(ObjectProvider.class);
+        cache = new ReadResponseCache(userService, new ObjectMapper(), manager);
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "ttl", Duration.ofMinutes(5));
+        ReflectionTestUtils.setField(cache, "unwatchedTtl", Duration.ofMinutes(5));
+        ReflectionTestUtils.setField(cache, "directTtl", Duration.ofMinutes(5));
+        ReflectionTestUtils.setField(cache, "maxEntries", 100);
+    }
+
+    @Test
+    void directListIsOnlyServedToTheTokenThatLoadedIt() {
+        when(userService.getDirectRoomMessagesAsync(any()))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture("{\"ims\":[\"secret\"]}"));
+
+        ReadResponseCache.Response first = cache.directMessages(OWNER).join();
+        ReadResponseCache.Response hit = cache.directMessages(OWNER).join();
+        cache.directMessages(IMPOSTOR).join();
+
+        assertArrayEquals(first.body(), hit.body());
+        verify(userService, times(1)).getDirectRoomMessagesAsync(OWNER);
+        // The mismatched token went to Rocket.Chat, which gets to reject it
+        verify(userService, times(1)).getDirectRoomMessagesAsync(IMPOSTOR);
+    }
+
+    @Test
+    void roomPageIsOnlyServedToTheTokenThatLoadedIt() {
+        when(userService.getMessagesInRoomAsync(any(), eq("room-1"), anyInt(), anyInt(), any(), any()))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(new MessagePage("room-1", List.of(), 0, null)));
+
+        ReadResponseCache.Response first = cache.roomMessages(OWNER, "room-1", 20, 0, null, null).join();
+        ReadResponseCache.Response hit = cache.roomMessages(OWNER, "room-1", 20, 0, null, null).join();
+        ReadResponseCache.Response other = cache.roomMessages(IMPOSTOR, "room-1", 20, 0, null, null).join();
+
+        assertArrayEquals(first.body(), hit.body());
+        assertNotSame(hit, other);
+        verify(userService, times(1)).getMessagesInRoomAsync(OWNER, "room-1", 20, 0, null, null);
+        verify(userService, times(1)).getMessagesInRoomAsync(IMPOSTOR, "room-1", 20, 0, null, null);
+    }
+
+    @Test
+    void mismatchedTokenDoesNotJoinAnInFlightLoad() {
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        when(userService.getDirectRoomMessagesAsync(OWNER)).thenReturn(pending);
+        when(userService.getDirectRoomMessagesAsync(IMPOSTOR)).thenReturn(CompletableFuture.failedFuture(new RuntimeException("401")));
+
+        CompletableFuture<ReadResponseCache.Response> owner = cache.directMessages(OWNER);
+        CompletableFuture<ReadResponseCache.Response> impostor = cache.directMessages(IMPOSTOR);
+        pending.complete("{\"ims\":[\"secret\"]}");
+
+        owner.join();
+        assertTrue(impostor.isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,160 @@
+package com.rocket.chat.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoomIdCacheTest {
+
+    private final RoomIdCache cache = new RoomIdCache(Duration.ofMinutes(10), Duration.ofSeconds(30), 100);
+
+    @Test
+    void concurrentGetOrCreateCreatesTheRoomOnce() throws Exception {
+        int callers = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        try {
+            for (int round = 0; round < 50; round++) {
+                String roomName = "room-" + round;
+                AtomicInteger creates = new AtomicInteger();
+                Function<String, String> creator = name -> name + "-id-" + creates.incrementAndGet();
+                CountDownLatch start = new CountDownLatch(1);
+                List<CompletableFuture<String>> results = new ArrayList<>();
+                for (int i = 0; i < callers; i++) {
+                    results.add(CompletableFuture.supplyAsync(() -> {
+                        awaitQuietly(start);
+                        return cache.getOrCreate(roomName, creator);
+                    }, pool));
+                }
+                start.countDown();
+
+                for (CompletableFuture<String> result : results) {
+                    assertEquals(roomName + "-id-1", result.get(5, TimeUnit.SECONDS));
+                }
+                assertEquals(1, creates.get(), roomName);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void concurrentLookupsShareOneLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Function<String, String> loader = name -> {
+            loads.incrementAndGet();
+            entered.countDown();
+            awaitQuietly(release);
+            return "id-1";
+        };
+
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> cache.get("general", loader));
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(() -> cache.get("general", loader));
+        waitFor(() -> (long) cache.snapshot().get("coalescedLoads") == 1);
+        release.countDown();
+
+        assertEquals("id-1", first.get(5, TimeUnit.SECONDS));
+        assertEquals("id-1", second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void missingRoomIsCachedNegativelyUntilCreated() {
+        AtomicInteger loads = new AtomicInteger();
+        Function<String, String> loader = name -> {
+            loads.incrementAndGet();
+            return null;
+        };
+
+        assertNull(cache.get("nowhere", loader));
+        assertNull(cache.get("nowhere", loader));
+        assertEquals(1, loads.get());
+        assertEquals(1L, cache.snapshot().get("negativeHits"));
+
+        assertEquals("id-1", cache.getOrCreate("nowhere", name -> "id-1"));
+        assertEquals("id-1", cache.get("nowhere", loader));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void createJoiningANegativeLookupStillCreates() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Function<String, String> loader = name -> {
+            entered.countDown();
+            awaitQuietly(release);
+            return null;
+        };
+        AtomicInteger creates = new AtomicInteger();
+
+        CompletableFuture<String> lookup = CompletableFuture.supplyAsync(() -> cache.get("new-room", loader));
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> create = CompletableFuture.supplyAsync(
+                () -> cache.getOrCreate("new-room", name -> "id-" + creates.incrementAndGet()));
+        waitFor(() -> (long) cache.snapshot().get("coalescedLoads") == 1);
+        release.countDown();
+
+        assertNull(lookup.get(5, TimeUnit.SECONDS));
+        assertEquals("id-1", create.get(5, TimeUnit.SECONDS));
+        assertEquals(1, creates.get());
+        assertEquals("id-1", cache.get("new-room", loader));
+    }
+
+    @Test
+    void averageLoadTimeCountsFailedLoads() {
+        cache.get("a", name -> "id-a");
+        try {
+            cache.get("b", name -> {
+                sleepQuietly(40);
+                throw new IllegalStateException("boom");
+            });
+        } catch (IllegalStateException expected) {
+            // counted as a failed load
+        }
+
+        assertEquals(1L, cache.snapshot().get("loads"));
+        assertEquals(1L, cache.snapshot().get("loadFailures"));
+        // One instant load and one 40ms failure average to about 20ms, not 40ms over one load
+        assertTrue((double) cache.snapshot().get("averageLoadMs") < 35.0);
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not reached");
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.rocket.chat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rocket.chat.config.AdaptiveTokenBucket;
+import com.rocket.chat.config.DdpMethodException;
+import com.rocket.chat.config.RestCallExecutor;
+import com.rocket.chat.config.RocketChatMetrics;
+import com.rocket.chat.config.WebSocketMessageTransport;
+import com.rocket.chat.dto.UserSession;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserServiceTest {
+
+    private static final UserSession SERVICE = new UserSession("service-user", "service-token");
+
+    private WebSocketMessageTransport transport;
+    private OutboundMessageScheduler scheduler;
+    private UserService userService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        transport = mock(WebSocketMessageTransport.class);
+        when(transport.isAvailable()).thenReturn(true);
+        ObjectProvider<WebSocketMessageTransport> transports = mock(ObjectProvider.class);
+        when(transports.getIfAvailable()).thenReturn(transport);
+
+        scheduler = new OutboundMessageScheduler(mock(AdaptiveTokenBucket.class));
+        ReflectionTestUtils.setField(scheduler, "maxConcurrency", 1);
+        ReflectionTestUtils.setField(scheduler, "maxRetries", 3);
+        ReflectionTestUtils.setField(scheduler, "maxQueued", 100);
+        scheduler.start();
+
+        userService = new UserService(mock(RestTemplate.class), mock(InactivityTracker.class), null, null, null,
+                new RocketChatMetrics(new SimpleMeterRegistry()), transports, scheduler,
+                mock(UserSessionCache.class), mock(RestCallExecutor.class));
+        ReflectionTestUtils.setField(userService, "messageTransport", "websocket");
+        userService.setServiceSession(SERVICE);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.stop();
+    }
+
+    @Test
+    void retriedSendKeepsItsMessageId() throws Exception {
+        DdpMethodException rateLimited = new DdpMethodException("too-many-requests", "Too many requests",
+                new ObjectMapper().createObjectNode().put("timeToReset", 1));
+        when(transport.sendMessage(anyString(), eq("room-1"), eq("hello")))
+                .thenReturn(CompletableFuture.failedFuture(rateLimited))
+                .thenReturn(CompletableFuture.completedFuture("{\"success\":true}"));
+        when(transport.sendMessage(anyString(), eq("room-1"), eq("again")))
+                .thenReturn(CompletableFuture.completedFuture("{\"success\":true}"));
+
+        userService.sendMessageAsync(SERVICE, "room-1", "hello").get(5, TimeUnit.SECONDS);
+        userService.sendMessageAsync(SERVICE, "room-1", "again").get(5, TimeUnit.SECONDS);
+
+        ArgumentCaptor<String> ids = ArgumentCaptor.forClass(String.class);
+        verify(transport, times(2)).sendMessage(ids.capture(), eq("room-1"), eq("hello"));
+        List<String> attempts = ids.getAllValues();
+        assertEquals(attempts.get(0), attempts.get(1));
+        assertEquals(17, attempts.get(0).length());
+
+        ArgumentCaptor<String> next = ArgumentCaptor.forClass(String.class);
+        verify(transport).sendMessage(next.capture(), eq("room-1"), eq("again"));
+        assertNotEquals(attempts.get(0), next.getValue());
+    }
+}
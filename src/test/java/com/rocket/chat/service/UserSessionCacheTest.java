@@ -0,0 +1,63 @@
+package com.rocket.chat.service;
+
+import com.rocket.chat.dto.UserSession;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class UserSessionCacheTest {
+
+    private static final long HOUR = Duration.ofHours(1).toMillis();
+
+    private final UserSessionCache cache = new UserSessionCache(
+            Duration.ofDays(90), Duration.ofDays(1), Duration.ofHours(12), Duration.ofMinutes(1), 100);
+
+    @Test
+    void validTokenIsReusedForTheSamePassword() {
+        AtomicInteger logins = new AtomicInteger();
+        BiFunction<String, String, UserSession> server = issuing(logins, System.currentTimeMillis() + 30 * 24 * HOUR);
+
+        UserSession first = cache.login("alice", "secret", server);
+        UserSession second = cache.login("alice", "secret", server);
+
+        assertSame(first, second);
+        assertEquals(1, logins.get());
+    }
+
+    @Test
+    void tokenCloseToExpiryIsReplacedByAFreshLogin() {
+        AtomicInteger logins = new AtomicInteger();
+        BiFunction<String, String, UserSession> server = issuing(logins, System.currentTimeMillis() + HOUR);
+
+        UserSession old = cache.login("alice", "secret", server);
+        UserSession renewed = cache.login("alice", "secret", server);
+
+        assertEquals(2, logins.get());
+        assertEquals("token-2", renewed.getAuthToken());
+        assertEquals(1L, cache.snapshot().get("renewals"));
+        // Callers still holding the replaced token are moved to the new one
+        assertSame(renewed, cache.current(old));
+        assertSame(renewed, cache.resolve("user-1", old.getAuthToken()));
+    }
+
+    @Test
+    void differentPasswordDoesNotGetTheCachedToken() {
+        AtomicInteger logins = new AtomicInteger();
+        BiFunction<String, String, UserSession> server = issuing(logins, System.currentTimeMillis() + 30 * 24 * HOUR);
+
+        cache.login("alice", "secret", server);
+        cache.login("alice", "guess", server);
+
+        assertEquals(2, logins.get());
+    }
+
+    private static BiFunction<String, String, UserSession> issuing(AtomicInteger logins, long expiresAt) {
+        return (username, password) ->
+                new UserSession("user-1", "token-" + logins.incrementAndGet(), username, expiresAt);
+    }
+}